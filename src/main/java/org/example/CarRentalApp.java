@@ -2,14 +2,22 @@ package org.example;
 
 import org.example.apps.AdminApp;
 import org.example.apps.CustomerApp;
+import org.example.apps.RentalServer;
 
+import java.io.IOException;
 import java.util.Scanner;
 
 public class CarRentalApp {
     private static final CustomerApp customerApp = new CustomerApp();
     private static final AdminApp adminApp = new AdminApp();
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        // --server [port] serves the customer and admin operations over HTTP instead of the console
+        if (args.length > 0 && args[0].equals("--server")) {
+            RentalServer.serve(args.length > 1 ? Integer.parseInt(args[1]) : RentalServer.DEFAULT_PORT);
+            return;
+        }
+
         Scanner scanner = new Scanner(System.in);
         boolean exit = false;
 
@@ -2,8 +2,11 @@ package org.example.apps;
 
 import org.example.models.Billing;
 import org.example.models.Car;
+import org.example.models.Money;
 import org.example.services.*;
 
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 import java.util.Objects;
 import java.util.Scanner;
@@ -30,7 +33,8 @@ public class AdminApp {
             System.out.println("8. Return a Car");
             System.out.println("9. View All Billing Records");
             System.out.println("10. View Billing History for Customer");
-            System.out.println("11. Exit");
+            System.out.println("11. View Travel History between dates");
+            System.out.println("12. Exit");
             System.out.print("Choose an option: ");
 
             int choice = scanner.nextInt();
@@ -50,10 +54,14 @@ public class AdminApp {
                     System.out.print("Enter car category (Economy/Standard/Premium/Luxury): ");
                     String category = scanner.nextLine();
                     System.out.print("Enter hourly rate: $");
-                    double hourlyRate = scanner.nextDouble();
+                    Money hourlyRate = Money.parse(scanner.next());
                     scanner.nextLine(); // consume newline
 
-                    carServices.addCar(carId, model, category, hourlyRate);
+                    if (carServices.addCar(carId, model, category, hourlyRate)) {
+                        System.out.println("Car added successfully: " + model + " (ID: " + carId + ")");
+                    } else {
+                        System.out.println("Car with ID " + carId + " already exists.");
+                    }
                     break;
 
                 case 3:
@@ -85,17 +93,21 @@ public class AdminApp {
                     String carIdToReturn = scanner.nextLine();
 
                     // Process billing first
-                    double amountDue = billingService.processCarsReturn(carIdToReturn);
+                    Money amountDue = billingService.processCarsReturn(carIdToReturn);
 
-                    if (amountDue >= 0) {
-                        System.out.println("Remaining amount to be paid: $" + String.format("%.2f", amountDue));
+                    if (amountDue != null) {
+                        System.out.println("Remaining amount to be paid: $" + amountDue);
                         System.out.print("Confirm payment received (y/n)? ");
                         String confirm = scanner.nextLine().toLowerCase();
 
                         if (confirm.equals("y") || confirm.equals("yes")) {
                             // Now return the car
-                            carServices.returnCar(carIdToReturn);
-                            System.out.println("Payment processed and car returned successfully.");
+                            CarServices.ReturnStatus returned = carServices.returnCar(carIdToReturn);
+                            if (returned == CarServices.ReturnStatus.RETURNED) {
+                                System.out.println("Payment processed and car returned successfully.");
+                            } else {
+                                System.out.println(returned.getMessage() + ".");
+                            }
                         } else {
                             System.out.println("Payment not confirmed. Car return process canceled.");
                         }
@@ -115,6 +127,10 @@ public class AdminApp {
                     break;
 
                 case 11:
+                    viewTravelHistoryBetween(scanner);
+                    break;
+
+                case 12:
                     saveAndExit();
                     exit = true;
                     System.out.println("Exiting the admin menu.");
@@ -128,6 +144,18 @@ public class AdminApp {
         return 0;
     }
 
+    private void viewTravelHistoryBetween(Scanner scanner) {
+        try {
+            System.out.print("From date (yyyy-MM-dd): ");
+            LocalDate from = LocalDate.parse(scanner.nextLine().trim());
+            System.out.print("To date, inclusive (yyyy-MM-dd): ");
+            LocalDate to = LocalDate.parse(scanner.nextLine().trim());
+            carServices.viewTravelHistoryBetween(from.atStartOfDay(), to.plusDays(1).atStartOfDay());
+        } catch (DateTimeParseException e) {
+            System.out.println("Invalid date. Please use the format yyyy-MM-dd.");
+        }
+    }
+
     private void viewAllBillingRecords() {
         List<Billing> allBillings = billingService.getAllBillings();
 
@@ -155,15 +183,15 @@ public class AdminApp {
         System.out.println("Customer: " + customerServices.getCustomerNameByPhone(phoneNumber));
         System.out.println("Phone: " + phoneNumber);
 
-        double totalSpent = 0.0;
+        Money totalSpent = Money.ZERO;
         for (Billing billing : customerBillings) {
             printBillingDetails(billing);
             if (billing.isPaid()) {
-                totalSpent += billing.getFinalAmount();
+                totalSpent = totalSpent.plus(billing.getFinalAmount());
             }
         }
 
-        System.out.println("\nTotal amount spent: $" + String.format("%.2f", totalSpent));
+        System.out.println("\nTotal amount spent: $" + totalSpent);
         System.out.println("========================================");
     }
 
@@ -174,9 +202,9 @@ public class AdminApp {
         System.out.println("\nBill ID: " + billing.getBillId());
         System.out.println("Customer: " + customerName + " (" + billing.getCustomerId() + ")");
         System.out.println("Car: " + (car != null ? car.getModel() : "Unknown") + " (ID: " + billing.getCarId() + ")");
-        System.out.println("Hourly Rate: $" + String.format("%.2f", billing.getHourlyRate()));
-        System.out.println("Advance Payment: $" + String.format("%.2f", billing.getAdvancePayment()));
-        System.out.println("Final Amount: $" + String.format("%.2f", billing.getFinalAmount()));
+        System.out.println("Hourly Rate: $" + billing.getHourlyRate());
+        System.out.println("Advance Payment: $" + billing.getAdvancePayment());
+        System.out.println("Final Amount: $" + billing.getFinalAmount());
         System.out.println("Billing Time: " + billing.getBillingTime());
         System.out.println("Status: " + (billing.isPaid() ? "Paid" : "Pending"));
         System.out.println("----------");
@@ -187,7 +215,7 @@ public class AdminApp {
     }
 
     public void saveAndExit() {
+        // Saves cars, customers and billings, then the startup snapshot
         carServices.makeExit();
-        billingService.saveBillingsToFile();
     }
 }
\ No newline at end of file
@@ -0,0 +1,229 @@
+package org.example.apps;
+
+import org.example.models.Billing;
+import org.example.models.Car;
+import org.example.models.Customer;
+import org.example.models.Money;
+import org.example.services.*;
+import org.example.structures.ActiveRentalIndex;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Stress test of the service layer: many threads rent and return cars, mostly a few hot ones and
+ * some at random, while all of them try to register the same new phone numbers. Some rentals go
+ * through a hold first, as the console does. Afterwards it checks that no car was ever rented twice
+ * at once, that every number was registered exactly once, and that cars, rentals and billings agree.
+ * It works on the data files in the current directory and saves them at the end, so run it on a copy.
+ * Usage: ConcurrencyStressTest [threads] [operations per thread]; exits with 1 if a check fails.
+ */
+public class ConcurrencyStressTest {
+    private static final int HOT_CARS = 16;
+    private static final int REGISTER_EVERY = 50;
+
+    private final CarServices carServices = CarServices.getInstance();
+    private final CustomerServices customerServices = CustomerServices.getInstance();
+    private final BillingService billingService = BillingService.getInstance();
+
+    // Renters holding each car right now according to this test; more than one is a double rental
+    private final Map<String, AtomicInteger> holders = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> registrations = new ConcurrentHashMap<>();
+    private final AtomicLong rents = new AtomicLong();
+    private final AtomicLong returns = new AtomicLong();
+    private final AtomicLong missed = new AtomicLong();
+    private final List<String> problems = Collections.synchronizedList(new ArrayList<>());
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        boolean passed = new ConcurrencyStressTest().run(threads, operations);
+        // The services keep non-daemon state around; leave explicitly
+        System.exit(passed ? 0 : 1);
+    }
+
+    private boolean run(int threads, int operations) throws Exception {
+        // Cars free at the start; older data can mark a car available that still has an open rental
+        List<String> carIds = new ArrayList<>();
+        for (Car car : carServices.getAvailableCars()) {
+            if (customerServices.getActiveRental(car.getCarId()) == null) {
+                carIds.add(car.getCarId());
+                holders.put(car.getCarId(), new AtomicInteger());
+            }
+        }
+        List<Customer> customers = customerServices.getCustomers();
+        if (carIds.size() < HOT_CARS || customers.size() < threads) {
+            System.out.println("Need at least " + HOT_CARS + " free cars and " + threads + " customers.");
+            return false;
+        }
+        List<String> hotCars = carIds.subList(0, HOT_CARS);
+        String prefix = String.format("8%05d", System.currentTimeMillis() % 100_000);
+        int billingsBefore = billingService.getAllBillings().size();
+        System.out.println("Stress test: " + threads + " threads x " + operations + " operations on "
+                + carIds.size() + " cars (" + HOT_CARS + " hot)");
+
+        // The services report to the console; keep it quiet while the threads run
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        long start = System.nanoTime();
+        try {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            CountDownLatch go = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                Customer renter = customers.get(t);
+                Random random = new Random(t);
+                futures.add(executor.submit(() -> {
+                    go.await();
+                    for (int i = 0; i < operations; i++) {
+                        if (i % REGISTER_EVERY == 0) {
+                            register(prefix + String.format("%04d", i / REGISTER_EVERY));
+                        }
+                        String carId = random.nextInt(4) == 0
+                                ? carIds.get(random.nextInt(carIds.size()))
+                                : hotCars.get(random.nextInt(hotCars.size()));
+                        rentAndReturn(renter, carId, random.nextInt(4) == 0);
+                    }
+                    return null;
+                }));
+            }
+            go.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            executor.shutdown();
+        } finally {
+            System.setOut(console);
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        checkFinalState(carIds, prefix, (operations - 1) / REGISTER_EVERY + 1, billingsBefore);
+        System.out.printf("%d ms: %d rentals, %d returns, %d lost races, %d numbers registered%n",
+                millis, rents.get(), returns.get(), missed.get(), registrations.size());
+
+        if (!Repositories.getInstance().flush()) {
+            problems.add("The data could not be saved");
+        }
+        if (problems.isEmpty()) {
+            System.out.println("PASS");
+            return true;
+        }
+        System.out.println("FAIL: " + problems.size() + " problems");
+        problems.stream().limit(20).forEach(problem -> System.out.println("- " + problem));
+        return false;
+    }
+
+    private void register(String phoneNumber) {
+        if (customerServices.register(phoneNumber, "Stress " + phoneNumber, "x")) {
+            registrations.computeIfAbsent(phoneNumber, p -> new AtomicInteger()).incrementAndGet();
+        }
+    }
+
+    private void rentAndReturn(Customer renter, String carId, boolean holdFirst) {
+        if (holdFirst && !carServices.tryReserve(carId, renter.getPhoneNumber())) {
+            missed.incrementAndGet();
+            return;
+        }
+        Billing billing = carServices.rentCar(renter, carId, Money.ofCents(2000));
+        if (billing == null) {
+            if (holdFirst) {
+                problems.add("Rental of " + carId + " failed while holding it");
+            }
+            missed.incrementAndGet();
+            return;
+        }
+        rents.incrementAndGet();
+        if (holders.get(carId).incrementAndGet() != 1) {
+            problems.add("Car " + carId + " rented twice at once");
+        }
+        ActiveRentalIndex.Rental rental = customerServices.getActiveRental(carId);
+        if (rental == null || rental.getCustomer() != renter) {
+            problems.add("Active rental of " + carId + " does not belong to its renter");
+        }
+        Thread.yield();
+
+        // Return as the console does, under the car's lock
+        Lock lock = carServices.carLock(carId);
+        lock.lock();
+        try {
+            holders.get(carId).decrementAndGet();
+            if (billingService.processCarsReturn(carId) == null) {
+                problems.add("No open billing for rented car " + carId);
+            }
+            if (carServices.returnCar(carId) != CarServices.ReturnStatus.RETURNED) {
+                problems.add("Return of rented car " + carId + " failed");
+            }
+            billingService.markBillingAsPaid(carId);
+            returns.incrementAndGet();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void checkFinalState(List<String> carIds, String prefix, int numbers, int billingsBefore) {
+        for (String carId : carIds) {
+            Car car = carServices.getCarById(carId);
+            if (!car.isAvailable() || customerServices.getActiveRental(carId) != null) {
+                problems.add("Car " + carId + " was left rented");
+            }
+        }
+
+        // The available-car index against the cars themselves
+        int available = 0;
+        for (Car car : carServices.getCars()) {
+            if (car.isAvailable()) {
+                available++;
+            }
+        }
+        if (available != carServices.countAvailableCars()) {
+            problems.add("Available index counts " + carServices.countAvailableCars() + " cars, " + available + " are available");
+        }
+
+        // Each number registered once, and only once in the customer list
+        Map<String, Integer> listed = new HashMap<>();
+        for (Customer customer : customerServices.getCustomers()) {
+            if (customer.getPhoneNumber().startsWith(prefix)) {
+                listed.merge(customer.getPhoneNumber(), 1, Integer::sum);
+            }
+        }
+        for (int i = 0; i < numbers; i++) {
+            String phoneNumber = prefix + String.format("%04d", i);
+            AtomicInteger count = registrations.get(phoneNumber);
+            if (count == null || count.get() != 1) {
+                problems.add(phoneNumber + " registered " + (count == null ? 0 : count.get()) + " times");
+            }
+            if (listed.getOrDefault(phoneNumber, 0) != 1 || customerServices.getCustomerByPhone(phoneNumber) == null) {
+                problems.add(phoneNumber + " is listed " + listed.getOrDefault(phoneNumber, 0) + " times");
+            }
+        }
+
+        // Rental period lookups by an id that is not a car's: a renter's phone number and an unknown id
+        LocalDateTime now = LocalDateTime.now();
+        for (String notACar : List.of(customerServices.getCustomers().get(0).getPhoneNumber(), "no-such-car")) {
+            try {
+                if (!customerServices.getRentalsOfCarBetween(notACar, now.minusYears(10), now.plusDays(1)).isEmpty()) {
+                    problems.add("Rental periods found for car id " + notACar);
+                }
+            } catch (RuntimeException e) {
+                problems.add("Rental period lookup for car id " + notACar + " failed: " + e);
+            }
+        }
+
+        // One billing per rental, all of them paid
+        List<Billing> billings = billingService.getAllBillings();
+        if (billings.size() - billingsBefore != rents.get()) {
+            problems.add((billings.size() - billingsBefore) + " billings for " + rents.get() + " rentals");
+        }
+        for (Billing billing : billings.subList(billingsBefore, billings.size())) {
+            if (!billing.isPaid()) {
+                problems.add("Billing " + billing.getBillId() + " was left unpaid");
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package org.example.apps;
+
+import org.example.models.Billing;
+import org.example.models.Car;
+import org.example.models.Customer;
+import org.example.models.Money;
+import org.example.models.TravelHistory;
+import org.example.services.CSVFileService;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+/**
+ * Benchmark of loading the car, customer, travel history and billing files: rows per second of the
+ * memory-mapped loader in CSVFileService against the loader it replaced, which read lines with
+ * BufferedReader, split them on commas and parsed numbers and timestamps one field at a time. That
+ * old loader is kept here only for the comparison. It writes its own flat CSV fixtures into data/
+ * (cars half as many as customers, 20 rentals and 10 billings per customer), times both loaders on
+ * them and deletes them again, so run it in an empty directory.
+ * Usage: CsvLoadBenchmark [rounds] [customers]
+ */
+public class CsvLoadBenchmark {
+    private static final Path DATA_DIRECTORY = Paths.get("data");
+    private static final String[] FILES = {"cars.csv", "customers.csv", "travel_history.csv", "billings.csv"};
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    public static void main(String[] args) throws IOException {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int customerCount = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        if (Files.exists(DATA_DIRECTORY)) {
+            try (var entries = Files.list(DATA_DIRECTORY)) {
+                if (entries.findAny().isPresent()) {
+                    System.out.println(DATA_DIRECTORY.toAbsolutePath() + " is not empty; run this in an empty directory.");
+                    return;
+                }
+            }
+        }
+
+        long rows = writeFixtures(customerCount);
+        try {
+            CSVFileService csvFileService = CSVFileService.getInstance();
+            System.out.println("Loading " + rows + " rows of cars, customers, travel history and billings from "
+                    + DATA_DIRECTORY.toAbsolutePath());
+            for (int round = 1; round <= rounds; round++) {
+                long start = System.nanoTime();
+                long oldLoaded = loadOld();
+                long oldNanos = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                List<Customer> customers = csvFileService.loadCustomers();
+                long loaded = csvFileService.loadCars().size() + customers.size() + csvFileService.loadBillings().size();
+                for (Customer customer : customers) {
+                    loaded += customer.getTravelHistories().size();
+                }
+                long mappedNanos = System.nanoTime() - start;
+
+                System.out.printf("round %d: old loader %d ms (%.0f rows/s), mapped loader %d ms (%.0f rows/s)%n",
+                        round, oldNanos / 1_000_000, rows * 1e9 / oldNanos, mappedNanos / 1_000_000, rows * 1e9 / mappedNanos);
+                if (loaded != rows || oldLoaded != rows) {
+                    System.out.println("Not every row was loaded: " + rows + " rows, old loader kept " + oldLoaded
+                            + ", mapped loader " + loaded);
+                }
+            }
+        } finally {
+            for (String file : FILES) {
+                Files.deleteIfExists(DATA_DIRECTORY.resolve(file));
+            }
+            try (var entries = Files.list(DATA_DIRECTORY)) {
+                if (entries.findAny().isEmpty()) {
+                    Files.delete(DATA_DIRECTORY);
+                }
+            }
+        }
+    }
+
+    // Flat files in the format the services save; returns the number of rows written
+    private static long writeFixtures(int customerCount) throws IOException {
+        Files.createDirectories(DATA_DIRECTORY);
+        Random random = new Random(42);
+        int carCount = Math.max(1, customerCount / 2);
+        String[] categories = {"Economy", "Standard", "Premium", "Luxury"};
+        LocalDateTime start = LocalDateTime.of(2023, 1, 1, 0, 0);
+        long rows = 0;
+
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(DATA_DIRECTORY.resolve("cars.csv")))) {
+            writer.println("CarId,Model,Available,HourlyRate,Category");
+            for (int i = 0; i < carCount; i++) {
+                writer.println(carId(i) + ",Model " + random.nextInt(200) + "," + (random.nextInt(4) > 0) + ","
+                        + Money.ofCents(1000 + random.nextInt(40000)) + "," + categories[random.nextInt(categories.length)]);
+                rows++;
+            }
+        }
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(DATA_DIRECTORY.resolve("customers.csv")))) {
+            writer.println("PhoneNumber,Name,Password");
+            for (int i = 0; i < customerCount; i++) {
+                writer.println(phoneNumber(i) + ",Customer " + i + ",$2a$10$" + "x".repeat(53));
+                rows++;
+            }
+        }
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(DATA_DIRECTORY.resolve("travel_history.csv")))) {
+            writer.println("CustomerId,CarId,RentTime,ReturnTime");
+            for (int i = 0; i < customerCount * 20; i++) {
+                LocalDateTime rentTime = start.plusSeconds(random.nextInt(60_000_000));
+                writer.println(phoneNumber(random.nextInt(customerCount)) + "," + carId(random.nextInt(carCount)) + ","
+                        + rentTime.format(DATE_FORMATTER) + ","
+                        + (random.nextInt(50) == 0 ? "Active" : rentTime.plusHours(1 + random.nextInt(72)).format(DATE_FORMATTER)));
+                rows++;
+            }
+        }
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(DATA_DIRECTORY.resolve("billings.csv")))) {
+            writer.println("BillId,CustomerId,CarId,HourlyRate,AdvancePayment,FinalAmount,BillingTime,IsPaid");
+            for (int i = 0; i < customerCount * 10; i++) {
+                writer.println("BILL-" + i + "," + phoneNumber(random.nextInt(customerCount)) + "," + carId(random.nextInt(carCount))
+                        + "," + Money.ofCents(1000 + random.nextInt(40000)) + "," + Money.ofCents(random.nextInt(100_001))
+                        + "," + Money.ofCents(random.nextInt(1_000_001)) + ","
+                        + start.plusSeconds(random.nextInt(60_000_000)).format(DATE_FORMATTER) + "," + random.nextBoolean());
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    private static String carId(int i) {
+        return String.format("KA%06d", i);
+    }
+
+    private static String phoneNumber(int i) {
+        return String.valueOf(9_000_000_000L + i);
+    }
+
+    // The replaced loader, without journal replay; returns the records it kept
+    private static long loadOld() throws IOException {
+        long kept = 0;
+        try (BufferedReader reader = Files.newBufferedReader(DATA_DIRECTORY.resolve("cars.csv"))) {
+            reader.readLine();
+            List<Car> cars = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(",");
+                if (parts.length >= 5) {
+                    cars.add(new Car(parts[0], parts[1], Boolean.parseBoolean(parts[2]), dollars(parts[3]), parts[4]));
+                }
+            }
+            kept += cars.size();
+        }
+
+        Map<String, Customer> customers = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(DATA_DIRECTORY.resolve("customers.csv"))) {
+            reader.readLine();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(",");
+                if (parts.length >= 3) {
+                    customers.put(parts[0], new Customer(parts[0], parts[1], parts[2]));
+                    kept++;
+                }
+            }
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(DATA_DIRECTORY.resolve("travel_history.csv"))) {
+            reader.readLine();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(",");
+                if (parts.length >= 4) {
+                    LocalDateTime rentTime = LocalDateTime.parse(parts[2], DATE_FORMATTER);
+                    LocalDateTime returnTime = parts[3].equals("Active") ? null : LocalDateTime.parse(parts[3], DATE_FORMATTER);
+                    Customer customer = customers.get(parts[0]);
+                    if (customer != null) {
+                        customer.addTravelHistory(new TravelHistory(parts[0], parts[1], rentTime, returnTime));
+                        kept++;
+                    }
+                }
+            }
+        }
+
+        List<Billing> billings = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(DATA_DIRECTORY.resolve("billings.csv"))) {
+            reader.readLine();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(",");
+                if (parts.length >= 8) {
+                    billings.add(new Billing(parts[0], parts[1], parts[2], dollars(parts[3]), dollars(parts[4]),
+                            dollars(parts[5]), LocalDateTime.parse(parts[6], DATE_FORMATTER), Boolean.parseBoolean(parts[7])));
+                }
+            }
+        }
+        return kept + billings.size();
+    }
+
+    // Amounts were doubles then
+    private static Money dollars(String value) {
+        return Money.ofCents(Math.round(Double.parseDouble(value) * 100));
+    }
+}
@@ -3,11 +3,14 @@ package org.example.apps;
 import org.example.models.Billing;
 import org.example.models.Car;
 import org.example.models.Customer;
+import org.example.models.Money;
 import org.example.models.TravelHistory;
 import org.example.services.*;
+import org.example.structures.CarRegistry;
 
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.locks.Lock;
 
 public class CustomerApp {
     private final CarServices carServices = CarServices.getInstance();
@@ -15,19 +18,18 @@ public class CustomerApp {
     private final AuthServices authServices = AuthServices.getInstance();
     private final BillingService billingService = BillingService.getInstance();
     private final AdvanceService advanceService = AdvanceService.getInstance();
-
+    private final SessionManager sessionManager = SessionManager.getInstance();
+    // This console's login, null until the customer logs in or registers
+    private SessionManager.Session session;
 
     public int displayMenu() {
         Scanner scanner = new Scanner(System.in);
         boolean exit = false;
-        String name = "";
 
         while (!exit) {
-            // Update name from current customer if logged in
-            Customer currentCustomer = customerServices.getCurrentCustomer();
-            if (currentCustomer != null) {
-                name = currentCustomer.getName();
-            }
+            // Name of the logged in customer, empty once the session has ended or expired
+            Customer currentCustomer = sessionManager.customerOf(session);
+            String name = currentCustomer != null ? currentCustomer.getName() : "";
 
             String nameDisplay = name.isEmpty() ? "" : " (Logged in as: " + name + ")";
 
@@ -50,19 +52,27 @@ public class CustomerApp {
                     String pn = scanner.nextLine();
                     System.out.print("Enter the password: ");
                     String pw = scanner.nextLine();
-                    name = customerServices.login(pn, pw);
+                    sessionManager.end(session);
+                    session = customerServices.login(pn, pw);
                     break;
 
                 case 2:
                     System.out.print("Enter your Phone Number: ");
                     String phoneNumber = scanner.nextLine();
                     System.out.print("Enter your Name: ");
-                    name = scanner.nextLine();
+                    String customerName = scanner.nextLine();
                     System.out.print("Enter the password: ");
                     String password = scanner.nextLine();
-                    String hashedPassword = authServices.generateHash(password);
-                    boolean status = customerServices.register(phoneNumber, name, hashedPassword);
+                    String problem = CustomerServices.checkRegistration(phoneNumber, customerName);
+                    if (problem != null) {
+                        System.out.println("Failed to Register!! " + problem);
+                        break;
+                    }
+                    boolean status = customerServices.getCustomerByPhone(phoneNumber) == null
+                            && customerServices.register(phoneNumber, customerName, authServices.generateHash(password));
                     if (status) {
+                        sessionManager.end(session);
+                        session = sessionManager.create(customerServices.getCustomerByPhone(phoneNumber));
                         System.out.println("Successfully Registered!!");
                     } else {
                         System.out.println("Failed to Register!! User may already exist!! Try to login");
@@ -75,12 +85,12 @@ public class CustomerApp {
                     } else {
                         System.out.println("Renting Car for - " + name);
                         System.out.println();
-                        rentCarWithAdvancePayment(name);
+                        rentCarWithAdvancePayment();
                     }
                     break;
 
                 case 4:
-                    customerServices.viewTravelHistory();
+                    customerServices.viewTravelHistory(session);
                     break;
 
                 case 5:
@@ -103,6 +113,8 @@ public class CustomerApp {
                     customerServices.saveCustomersToFile();
                     carServices.saveCarsToFile();
                     billingService.saveBillingsToFile();
+                    sessionManager.end(session);
+                    session = null;
                     exit = true;
                     System.out.println("Exiting the customer menu. Goodbye!");
                     break;
@@ -115,15 +127,15 @@ public class CustomerApp {
         return 0;
     }
 
-    private void rentCarWithAdvancePayment(String customerName) {
-        Customer currentCustomer = customerServices.getCurrentCustomer();
-        if (currentCustomer == null || !currentCustomer.getName().equals(customerName)) {
+    private void rentCarWithAdvancePayment() {
+        Customer currentCustomer = sessionManager.customerOf(session);
+        if (currentCustomer == null) {
             System.out.println("Please login first.");
             return;
         }
 
         // Display available cars
-        List<Car> availableCars = carServices.getAvailableCars();
+        CarRegistry.View availableCars = carServices.getAvailableCars();
         if (availableCars.isEmpty()) {
             System.out.println("No cars available for rent.");
             return;
@@ -136,71 +148,68 @@ public class CustomerApp {
 
         System.out.println("\nAvailable Cars:");
         System.out.println("----------------");
-        for (int i = 0; i < availableCars.size(); i++) {
-            Car car = availableCars.get(i);
-            System.out.println((i + 1) + ". " + car.getModel() +
+        int shown = 0;
+        for (Car car : availableCars) {
+            System.out.println(++shown + ". " + car.getModel() +
                     " (ID: " + car.getCarId() + ") - Category: " + car.getCategory() +
-                    " - Hourly Rate: $" + String.format("%.2f", car.getHourlyRate()));
+                    " - Hourly Rate: $" + car.getHourlyRate());
         }
 
         // Get user selection
         Scanner scanner = new Scanner(System.in);
-        System.out.print("\nSelect a car (1-" + availableCars.size() + "): ");
+        System.out.print("\nSelect a car (1-" + shown + "): ");
         int selection = scanner.nextInt();
         scanner.nextLine(); // consume newline
 
-        if (selection < 1 || selection > availableCars.size()) {
+        if (selection < 1 || selection > shown) {
             System.out.println("Invalid selection.");
             return;
         }
 
-        // Get selected car
+        // Get selected car and hold it while the customer enters the payment; if they walk away
+        // the hold lapses on its own
         Car selectedCar = availableCars.get(selection - 1);
-        double hourlyRate = selectedCar.getHourlyRate();
+        if (selectedCar == null || !carServices.tryReserve(selectedCar.getCarId(), currentCustomer.getPhoneNumber())) {
+            System.out.println("That car is no longer available.");
+            return;
+        }
+        Money hourlyRate = selectedCar.getHourlyRate();
 
         // Calculate minimum advance payment (1 hour)
-        double minimumAdvance = hourlyRate;
+        Money minimumAdvance = hourlyRate;
 
         // Get advance payment from user
         System.out.println("\nCar details:");
         System.out.println("Model: " + selectedCar.getModel());
         System.out.println("Category: " + selectedCar.getCategory());
-        System.out.println("Hourly Rate: $" + String.format("%.2f", hourlyRate));
-        System.out.println("Minimum Advance Payment (1 hour): $" + String.format("%.2f", minimumAdvance));
+        System.out.println("Hourly Rate: $" + hourlyRate);
+        System.out.println("Minimum Advance Payment (1 hour): $" + minimumAdvance);
 
-        System.out.print("\nEnter advance payment amount (minimum $" + String.format("%.2f", minimumAdvance) + "): $");
-        double advancePayment = scanner.nextDouble();
+        System.out.print("\nEnter advance payment amount (minimum $" + minimumAdvance + "): $");
+        Money advancePayment = Money.parse(scanner.next());
         scanner.nextLine(); // consume newline
 
-        if (advancePayment < minimumAdvance) {
-            System.out.println("Advance payment must be at least $" + String.format("%.2f", minimumAdvance));
+        if (advancePayment.compareTo(minimumAdvance) < 0) {
+            System.out.println("Advance payment must be at least $" + minimumAdvance);
+            carServices.releaseReservation(selectedCar.getCarId(), currentCustomer.getPhoneNumber());
             return;
         }
 
-        // Create billing record
-        Billing billing = new Billing(currentCustomer.getPhoneNumber(), selectedCar.getCarId(), hourlyRate, advancePayment);
-        billingService.addBilling(billing);
-
-        // Create travel history
-        TravelHistory travelHistory = new TravelHistory(currentCustomer.getPhoneNumber(), selectedCar.getCarId());
-        currentCustomer.addTravelHistory(travelHistory);
-
-        // Mark car as unavailable
-        selectedCar.setAvailability(false);
-
-        // Save changes
-        billingService.saveBillingsToFile();
-        customerServices.saveCustomersToFile();
-        carServices.saveCarsToFile();
+        // Rent the car and create its billing record; fails only if the hold lapsed and someone else took it
+        Billing billing = carServices.rentCar(currentCustomer, selectedCar.getCarId(), advancePayment);
+        if (billing == null) {
+            System.out.println("That car is no longer available.");
+            return;
+        }
 
         System.out.println("\nCar rented successfully!");
         System.out.println("Bill ID: " + billing.getBillId());
-        System.out.println("Advance Payment: $" + String.format("%.2f", advancePayment));
-        System.out.println("You will be charged $" + String.format("%.2f", hourlyRate) + " per hour when you return the car.");
+        System.out.println("Advance Payment: $" + advancePayment);
+        System.out.println("You will be charged $" + hourlyRate + " per hour when you return the car.");
     }
 
     private void returnCarWithBilling() {
-        Customer currentCustomer = customerServices.getCurrentCustomer();
+        Customer currentCustomer = sessionManager.customerOf(session);
         if (currentCustomer == null) {
             System.out.println("Please login first.");
             return;
@@ -246,31 +255,42 @@ public class CustomerApp {
         String carId = selectedRental.getCarId();
 
         // Process billing
-        double amountDue = billingService.processCarsReturn(carId);
+        Money amountDue = billingService.processCarsReturn(carId);
 
-        if (amountDue >= 0) {
+        if (amountDue != null) {
             Car car = carServices.getCarById(carId);
 
             System.out.println("\nReturn Summary:");
             System.out.println("--------------");
             if (car != null) {
                 System.out.println("Car: " + car.getModel() + " (ID: " + carId + ")");
-                System.out.println("Hourly Rate: $" + String.format("%.2f", car.getHourlyRate()));
+                System.out.println("Hourly Rate: $" + car.getHourlyRate());
             }
             System.out.println("Rental Duration: From " + selectedRental.getRentTime() + " to now");
-            System.out.println("Remaining amount to be paid: $" + String.format("%.2f", amountDue));
+            System.out.println("Remaining amount to be paid: $" + amountDue);
 
             System.out.print("\nConfirm payment (y/n)? ");
             String confirm = scanner.nextLine().toLowerCase();
 
             if (confirm.equals("y") || confirm.equals("yes")) {
-                // Return the car
-                carServices.returnCar(carId);
-                System.out.println("Payment processed and car returned successfully.");
-
-                // Mark the billing as paid
-                billingService.markBillingAsPaid(carId);
-                billingService.saveBillingsToFile();
+                // Return the car and mark the billing as paid under the car's lock, so it can't be
+                // rented again in between
+                CarServices.ReturnStatus returned;
+                Lock lock = carServices.carLock(carId);
+                lock.lock();
+                try {
+                    returned = carServices.returnCar(carId);
+                    if (returned == CarServices.ReturnStatus.RETURNED) {
+                        billingService.markBillingAsPaid(carId);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                if (returned == CarServices.ReturnStatus.RETURNED) {
+                    System.out.println("Payment processed and car returned successfully.");
+                } else {
+                    System.out.println(returned.getMessage() + ".");
+                }
             } else {
                 System.out.println("Payment not confirmed. Car return process canceled.");
             }
@@ -280,14 +300,12 @@ public class CustomerApp {
     }
 
     private void viewMyBillingHistory() {
-        Customer currentCustomer = customerServices.getCurrentCustomer();
-        if (currentCustomer == null) {
+        if (sessionManager.customerOf(session) == null) {
             System.out.println("Please login first.");
             return;
         }
 
-        String phoneNumber = currentCustomer.getPhoneNumber();
-        List<Billing> billings = billingService.getBillingHistoryForCustomer(phoneNumber);
+        List<Billing> billings = billingService.getBillingHistory(session);
 
         if (billings.isEmpty()) {
             System.out.println("You don't have any billing history.");
@@ -297,25 +315,25 @@ public class CustomerApp {
         System.out.println("\nYour Billing History:");
         System.out.println("--------------------");
 
-        double totalSpent = 0.0;
+        Money totalSpent = Money.ZERO;
         for (Billing billing : billings) {
             Car car = carServices.getCarById(billing.getCarId());
             String carModel = car != null ? car.getModel() : "Unknown";
 
             System.out.println("Bill ID: " + billing.getBillId());
             System.out.println("Car: " + carModel + " (ID: " + billing.getCarId() + ")");
-            System.out.println("Hourly Rate: $" + String.format("%.2f", billing.getHourlyRate()));
-            System.out.println("Advance Payment: $" + String.format("%.2f", billing.getAdvancePayment()));
-            System.out.println("Final Amount: $" + String.format("%.2f", billing.getFinalAmount()));
+            System.out.println("Hourly Rate: $" + billing.getHourlyRate());
+            System.out.println("Advance Payment: $" + billing.getAdvancePayment());
+            System.out.println("Final Amount: $" + billing.getFinalAmount());
             System.out.println("Billing Time: " + billing.getBillingTime());
             System.out.println("Status: " + (billing.isPaid() ? "Paid" : "Pending"));
             System.out.println("----------");
 
             if (billing.isPaid()) {
-                totalSpent += billing.getFinalAmount();
+                totalSpent = totalSpent.plus(billing.getFinalAmount());
             }
         }
 
-        System.out.println("\nTotal Amount Spent: $" + String.format("%.2f", totalSpent));
+        System.out.println("\nTotal Amount Spent: $" + totalSpent);
     }
 }
\ No newline at end of file
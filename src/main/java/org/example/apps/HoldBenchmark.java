@@ -0,0 +1,130 @@
+package org.example.apps;
+
+import org.example.models.Car;
+import org.example.services.CarServices;
+
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Benchmark of car holds: threads hold and release random available cars, once through
+ * CarServices.tryReserve and releaseReservation, which look the car up without a lock and
+ * compare-and-set its reservation word, and once with the same rules kept in maps behind one lock,
+ * as holds would be without it. Prints nanoseconds per hold-and-release for each thread count, over
+ * several rounds so the first ones can be read as warm-up. It loads the data files in the current
+ * directory but takes no rentals and saves nothing.
+ * Usage: HoldBenchmark [operations per round] [cars] [rounds] [thread counts...]
+ */
+public class HoldBenchmark {
+    // CarServices' default hold
+    private static final long HOLD_MILLIS = 5 * 60 * 1000L;
+
+    // The baseline: one lock around a holder and an expiry per car
+    private static final class LockedHolds {
+        private final Map<String, String> holders = new HashMap<>();
+        private final Map<String, Long> expiries = new HashMap<>();
+
+        synchronized boolean tryHold(String carId, String customerId, long now, long holdMillis) {
+            String holder = holders.get(carId);
+            if (holder != null && !holder.equals(customerId) && expiries.get(carId) > now) {
+                return false;
+            }
+            holders.put(carId, customerId);
+            expiries.put(carId, now + holdMillis);
+            return true;
+        }
+
+        synchronized void releaseHold(String carId, String customerId) {
+            if (customerId.equals(holders.get(carId))) {
+                holders.remove(carId);
+                expiries.remove(carId);
+            }
+        }
+    }
+
+    private interface Worker {
+        void run(int thread) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int carCount = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        int[] threadCounts = {1, 4, 16};
+        if (args.length > 3) {
+            threadCounts = new int[args.length - 3];
+            for (int i = 3; i < args.length; i++) {
+                threadCounts[i - 3] = Integer.parseInt(args[i]);
+            }
+        }
+
+        CarServices carServices = CarServices.getInstance();
+        List<String> carIds = new ArrayList<>();
+        for (Car car : carServices.getAvailableCars()) {
+            if (carIds.size() == carCount) {
+                break;
+            }
+            carIds.add(car.getCarId());
+        }
+        if (carIds.isEmpty()) {
+            System.out.println("No available cars in " + Paths.get("data").toAbsolutePath());
+            return;
+        }
+        LockedHolds lockedHolds = new LockedHolds();
+        System.out.println("Hold benchmark: " + operations + " holds per round on " + carIds.size() + " cars, "
+                + Runtime.getRuntime().availableProcessors() + " cores");
+
+        for (int round = 1; round <= rounds; round++) {
+            for (int threads : threadCounts) {
+                int perThread = operations / threads;
+                long cas = time(threads, thread -> {
+                    Random random = new Random(thread);
+                    String customerId = "c" + thread;
+                    for (int i = 0; i < perThread; i++) {
+                        String carId = carIds.get(random.nextInt(carIds.size()));
+                        if (carServices.tryReserve(carId, customerId)) {
+                            carServices.releaseReservation(carId, customerId);
+                        }
+                    }
+                });
+                long locked = time(threads, thread -> {
+                    Random random = new Random(thread);
+                    String customerId = "c" + thread;
+                    for (int i = 0; i < perThread; i++) {
+                        String carId = carIds.get(random.nextInt(carIds.size()));
+                        if (lockedHolds.tryHold(carId, customerId, System.currentTimeMillis(), HOLD_MILLIS)) {
+                            lockedHolds.releaseHold(carId, customerId);
+                        }
+                    }
+                });
+                long total = (long) perThread * threads;
+                System.out.printf("round %d, %2d threads: compare-and-set %.0f ns/op, synchronized %.0f ns/op%n",
+                        round, threads, (double) cas / total, (double) locked / total);
+            }
+        }
+    }
+
+    // Nanoseconds for all threads to finish, started together
+    private static long time(int threads, Worker worker) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                go.await();
+                worker.run(thread);
+                return null;
+            }));
+        }
+        long start = System.nanoTime();
+        go.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        return elapsed;
+    }
+}
@@ -0,0 +1,126 @@
+package org.example.apps;
+
+import org.example.models.Money;
+
+/**
+ * Minimal JSON writer for the server's responses
+ * Values are appended in order; commas between members and elements are added as needed.
+ */
+final class Json {
+    private final StringBuilder out = new StringBuilder();
+    private boolean needsComma;
+
+    Json beginObject() {
+        separate();
+        out.append('{');
+        needsComma = false;
+        return this;
+    }
+
+    Json endObject() {
+        out.append('}');
+        needsComma = true;
+        return this;
+    }
+
+    Json beginArray() {
+        separate();
+        out.append('[');
+        needsComma = false;
+        return this;
+    }
+
+    Json endArray() {
+        out.append(']');
+        needsComma = true;
+        return this;
+    }
+
+    Json name(String name) {
+        separate();
+        quote(name);
+        out.append(':');
+        needsComma = false;
+        return this;
+    }
+
+    Json value(String value) {
+        separate();
+        if (value == null) {
+            out.append("null");
+        } else {
+            quote(value);
+        }
+        needsComma = true;
+        return this;
+    }
+
+    Json value(long value) {
+        separate();
+        out.append(value);
+        needsComma = true;
+        return this;
+    }
+
+    Json value(boolean value) {
+        separate();
+        out.append(value);
+        needsComma = true;
+        return this;
+    }
+
+    // Amounts are written as plain decimal numbers, e.g. 12.50
+    Json value(Money value) {
+        separate();
+        out.append(value != null ? value.toString() : "null");
+        needsComma = true;
+        return this;
+    }
+
+    Json field(String name, String value) {
+        return name(name).value(value);
+    }
+
+    Json field(String name, long value) {
+        return name(name).value(value);
+    }
+
+    Json field(String name, boolean value) {
+        return name(name).value(value);
+    }
+
+    Json field(String name, Money value) {
+        return name(name).value(value);
+    }
+
+    // A one-member object {"error": message}
+    static String error(String message) {
+        return new Json().beginObject().field("error", message).endObject().toString();
+    }
+
+    @Override
+    public String toString() {
+        return out.toString();
+    }
+
+    private void separate() {
+        if (needsComma) {
+            out.append(',');
+        }
+    }
+
+    private void quote(String text) {
+        out.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+}
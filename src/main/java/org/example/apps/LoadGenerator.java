@@ -0,0 +1,197 @@
+package org.example.apps;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Load generator for the HTTP server: simulated customers on virtual threads browse, search, look
+ * at their billings and rent and return cars as fast as the server answers, then throughput and
+ * latency percentiles are printed per operation.
+ * Each simulated customer registers first, so run it against a copy of the data.
+ * Usage: LoadGenerator [baseUrl] [customers] [seconds]
+ */
+public class LoadGenerator {
+    private static final Pattern CAR = Pattern.compile("\"carId\":\"([^\"]*)\".*?\"hourlyRate\":([0-9.]+)");
+    private static final Pattern NEXT_CURSOR = Pattern.compile("\"nextCursor\":\"([^\"]*)\"");
+    private static final Pattern TOKEN = Pattern.compile("\"token\":\"([^\"]*)\"");
+    private static final String[] QUERIES = {"m", "mo", "model 1", "sta", "prem", "eco", "model 2 st"};
+
+    private final String baseUrl;
+    private final HttpClient client;
+    // Latencies in nanoseconds per operation, and the count of unexpected statuses
+    private final Map<String, List<Long>> latencies = new ConcurrentHashMap<>();
+    private final Map<String, Integer> failures = new ConcurrentHashMap<>();
+
+    private LoadGenerator(String baseUrl) {
+        this.baseUrl = baseUrl;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:" + RentalServer.DEFAULT_PORT;
+        int customers = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        new LoadGenerator(baseUrl).run(customers, seconds);
+    }
+
+    private void run(int customers, int seconds) throws Exception {
+        // Cars to rent, with the hourly rate as the advance payment
+        Map<String, String> rates = new LinkedHashMap<>();
+        String cursor = null;
+        for (int page = 0; page < 20; page++) {
+            String body = send("GET", "/cars?limit=100" + (cursor != null ? "&cursor=" + encode(cursor) : ""), null, null).body();
+            Matcher matcher = CAR.matcher(body);
+            while (matcher.find()) {
+                rates.put(matcher.group(1), matcher.group(2));
+            }
+            Matcher next = NEXT_CURSOR.matcher(body);
+            if (!next.find()) {
+                break;
+            }
+            cursor = next.group(1);
+        }
+        List<String> carIds = new ArrayList<>(rates.keySet());
+        if (carIds.isEmpty()) {
+            System.out.println("No available cars to rent.");
+            return;
+        }
+        System.out.println("Renting from " + carIds.size() + " available cars with " + customers + " customers for " + seconds + "s");
+
+        long runId = System.currentTimeMillis() % 100_000;
+        CountDownLatch registered = new CountDownLatch(customers);
+        // Start and end of the measured run, which begins once every customer has registered
+        long[] window = new long[2];
+        List<Future<?>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < customers; i++) {
+                int customer = i;
+                futures.add(executor.submit(() -> {
+                    String phone = String.format("5%05d%04d", runId, customer);
+                    HttpResponse<String> response = send("POST", "/register",
+                            "phone=" + phone + "&name=Load+" + customer + "&password=load", null);
+                    registered.countDown();
+                    Matcher token = TOKEN.matcher(response.body());
+                    if (!token.find()) {
+                        throw new IllegalStateException("Register failed: " + response.body());
+                    }
+                    registered.await();
+                    long deadline;
+                    synchronized (window) {
+                        if (window[0] == 0) {
+                            window[0] = System.nanoTime();
+                            window[1] = window[0] + TimeUnit.SECONDS.toNanos(seconds);
+                        }
+                        deadline = window[1];
+                    }
+                    simulate(token.group(1), carIds, rates, new Random(customer), deadline);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        report((System.nanoTime() - window[0]) / 1e9);
+    }
+
+    // One customer's mix: mostly browsing and searching, some billing lookups and rentals
+    private void simulate(String token, List<String> carIds, Map<String, String> rates, Random random, long deadline)
+            throws Exception {
+        while (System.nanoTime() < deadline) {
+            int choice = random.nextInt(100);
+            if (choice < 50) {
+                timed("list cars", "GET", "/cars?limit=20" + (random.nextBoolean() ? "&sort=model" : ""), null, token, 200);
+            } else if (choice < 70) {
+                timed("suggest", "GET", "/cars/suggest?limit=10&q=" + encode(QUERIES[random.nextInt(QUERIES.length)]),
+                        null, token, 200);
+            } else if (choice < 85) {
+                timed("billings", "GET", "/billings?limit=10", null, token, 200);
+            } else {
+                String carId = carIds.get(random.nextInt(carIds.size()));
+                int status = timed("rent", "POST", "/rent", "carId=" + encode(carId) + "&advance=" + rates.get(carId),
+                        token, 200, 409);
+                if (status == 200) {
+                    timed("return", "POST", "/return", "carId=" + encode(carId), token, 200);
+                }
+            }
+        }
+    }
+
+    private int timed(String operation, String method, String path, String form, String token, int... expected)
+            throws Exception {
+        long start = System.nanoTime();
+        int status = send(method, path, form, token).statusCode();
+        long elapsed = System.nanoTime() - start;
+
+        List<Long> samples = latencies.computeIfAbsent(operation, o -> Collections.synchronizedList(new ArrayList<>()));
+        samples.add(elapsed);
+        if (Arrays.stream(expected).noneMatch(s -> s == status)) {
+            failures.merge(operation + " " + status, 1, Integer::sum);
+        }
+        return status;
+    }
+
+    private HttpResponse<String> send(String method, String path, String form, String token) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(Duration.ofSeconds(30));
+        if (token != null) {
+            request.header("Authorization", "Bearer " + token);
+        }
+        if (form != null) {
+            request.header("Content-Type", "application/x-www-form-urlencoded")
+                    .method(method, HttpRequest.BodyPublishers.ofString(form));
+        } else {
+            request.method(method, HttpRequest.BodyPublishers.noBody());
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void report(double seconds) {
+        long total = 0;
+        System.out.printf("%-10s %9s %10s %9s %9s %9s%n", "operation", "requests", "req/s", "p50 ms", "p99 ms", "max ms");
+        for (Map.Entry<String, List<Long>> entry : new TreeMap<>(latencies).entrySet()) {
+            long[] sorted;
+            synchronized (entry.getValue()) {
+                sorted = entry.getValue().stream().mapToLong(Long::longValue).sorted().toArray();
+            }
+            total += sorted.length;
+            System.out.printf("%-10s %9d %10.0f %9.2f %9.2f %9.2f%n", entry.getKey(), sorted.length,
+                    sorted.length / seconds, percentile(sorted, 50), percentile(sorted, 99), sorted[sorted.length - 1] / 1e6);
+        }
+        long[] all = latencies.values().stream()
+                .flatMap(samples -> {
+                    synchronized (samples) {
+                        return new ArrayList<>(samples).stream();
+                    }
+                })
+                .mapToLong(Long::longValue).sorted().toArray();
+        System.out.printf("%-10s %9d %10.0f %9.2f %9.2f%n", "all", total, total / seconds, percentile(all, 50), percentile(all, 99));
+        if (!failures.isEmpty()) {
+            System.out.println("Unexpected statuses: " + failures);
+        }
+    }
+
+    private static double percentile(long[] sorted, int percent) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,80 @@
+package org.example.apps;
+
+import org.example.models.Billing;
+import org.example.models.Money;
+import org.example.services.CSVFileService;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmark of writing billing rows: the row writer saveBillings uses now, CSVFileService's
+ * formatBillingRow with Money.appendTo, against the one it replaced, which printed the amounts as
+ * doubles with printf("%.2f") and formatted the time with DateTimeFormatter.format. Both write the
+ * same random billings made in memory into a PrintWriter over a StringWriter, as saveBillings does
+ * over a file, so the disk is left out (CSVFileService only creates an empty data/ if there is
+ * none). Each round prints nanoseconds per row and checks that both wrote the same text.
+ * Usage: MoneyBenchmark [billings] [rounds]
+ */
+public class MoneyBenchmark {
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        Random random = new Random(42);
+        LocalDateTime start = LocalDateTime.of(2023, 1, 1, 0, 0);
+        List<Billing> billings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String customerId = String.valueOf(9_000_000_000L + random.nextInt(1_000_000_000));
+            String carId = "C" + random.nextInt(5000);
+            billings.add(new Billing("BILL-" + customerId.substring(6) + "-" + carId + "-" + random.nextInt(10000),
+                    customerId, carId, Money.ofCents(500 + random.nextInt(20000)), Money.ofCents(random.nextInt(100_001)),
+                    Money.ofCents(random.nextInt(1_000_001)), start.plusSeconds(random.nextInt(60_000_000)), random.nextBoolean()));
+        }
+        CSVFileService csvFileService = CSVFileService.getInstance();
+        System.out.println("Writing " + count + " billing rows, " + rounds + " rounds");
+
+        StringWriter oldText = new StringWriter(count * 80);
+        StringWriter newText = new StringWriter(count * 80);
+        for (int round = 1; round <= rounds; round++) {
+            oldText.getBuffer().setLength(0);
+            long begin = System.nanoTime();
+            PrintWriter writer = new PrintWriter(oldText);
+            for (Billing billing : billings) {
+                writer.printf("%s,%s,%s,%.2f,%.2f,%.2f,%s,%s%n",
+                        billing.getBillId(),
+                        billing.getCustomerId(),
+                        billing.getCarId(),
+                        billing.getHourlyRate().getCents() / 100.0,
+                        billing.getAdvancePayment().getCents() / 100.0,
+                        billing.getFinalAmount().getCents() / 100.0,
+                        billing.getBillingTime().format(DATE_FORMATTER),
+                        billing.isPaid());
+            }
+            writer.flush();
+            long oldNanos = System.nanoTime() - begin;
+
+            newText.getBuffer().setLength(0);
+            begin = System.nanoTime();
+            writer = new PrintWriter(newText);
+            for (Billing billing : billings) {
+                writer.println(csvFileService.formatBillingRow(billing));
+            }
+            writer.flush();
+            long newNanos = System.nanoTime() - begin;
+
+            System.out.printf("round %d: double + printf %.0f ns/row, formatBillingRow %.0f ns/row%n",
+                    round, (double) oldNanos / count, (double) newNanos / count);
+            if (!oldText.toString().equals(newText.toString())) {
+                System.out.println("The two writers wrote different text");
+            }
+        }
+    }
+}
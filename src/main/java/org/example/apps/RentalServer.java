@@ -0,0 +1,457 @@
+package org.example.apps;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.example.models.Billing;
+import org.example.models.Car;
+import org.example.models.Customer;
+import org.example.models.Money;
+import org.example.models.TravelHistory;
+import org.example.services.*;
+import org.example.services.SessionManager.Session;
+import org.example.structures.ActiveRentalIndex;
+import org.example.structures.CarPage;
+import org.example.structures.CarRegistry;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * HTTP front end for the customer and admin operations, so one JVM can serve many sessions
+ * Every request runs on its own virtual thread. Parameters come from the query string or a
+ * form-encoded body and every response is JSON. Logging in returns a token that later requests
+ * send as "Authorization: Bearer token". The server only listens on the loopback address.
+ */
+public class RentalServer {
+    public static final int DEFAULT_PORT = 8080;
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 100;
+
+    static {
+        // Send small responses right away; with Nagle's algorithm each one waits for the client's
+        // delayed ACK, which put a 40 ms floor under every request
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final HttpServer server;
+    private final CarServices carServices = CarServices.getInstance();
+    private final CustomerServices customerServices = CustomerServices.getInstance();
+    private final BillingService billingService = BillingService.getInstance();
+    private final AdminServices adminServices = AdminServices.getInstance();
+    private final AuthServices authServices = AuthServices.getInstance();
+    private final SessionManager sessionManager = SessionManager.getInstance();
+    private final AdminApp adminApp = new AdminApp();
+
+    private interface Endpoint {
+        // Writes the response body and returns the HTTP status
+        int handle(Map<String, String> params, Session session, Json json);
+    }
+
+    // Who may call an endpoint; SESSION is any logged in customer or admin
+    private enum Access { PUBLIC, SESSION, CUSTOMER, ADMIN }
+
+    public RentalServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+
+        route("POST", "/login", Access.PUBLIC, this::login);
+        route("POST", "/register", Access.PUBLIC, this::register);
+        route("POST", "/logout", Access.SESSION, this::logout);
+        route("GET", "/cars", Access.PUBLIC, this::listCars);
+        route("GET", "/cars/suggest", Access.PUBLIC, this::suggestCars);
+        route("POST", "/reserve", Access.CUSTOMER, this::reserve);
+        route("POST", "/rent", Access.CUSTOMER, this::rent);
+        route("POST", "/return", Access.CUSTOMER, this::returnCar);
+        route("GET", "/history", Access.CUSTOMER, this::history);
+        route("GET", "/billings", Access.CUSTOMER, this::billings);
+        route("POST", "/admin/login", Access.PUBLIC, this::adminLogin);
+        route("GET", "/admin/stats", Access.ADMIN, this::stats);
+        route("GET", "/admin/billings", Access.ADMIN, this::customerBillings);
+
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    public void start() {
+        server.start();
+        System.out.println("Car rental server listening on http://localhost:" + getPort());
+    }
+
+    // Stop accepting requests, giving those under way up to delaySeconds to finish
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // Serve until the JVM is stopped, then save everything as the console's exit does
+    public static void serve(int port) throws IOException {
+        RentalServer rentalServer = new RentalServer(port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            rentalServer.stop(1);
+            rentalServer.adminApp.saveAndExit();
+        }));
+        rentalServer.start();
+    }
+
+    // Customer endpoints
+
+    private int login(Map<String, String> params, Session session, Json json) {
+        Customer customer = customerServices.authenticate(required(params, "phone"), required(params, "password"));
+        if (customer == null) {
+            json.beginObject().field("error", "Invalid credentials").endObject();
+            return 401;
+        }
+        return startSession(customer, json);
+    }
+
+    private int register(Map<String, String> params, Session session, Json json) {
+        String phone = required(params, "phone");
+        String name = required(params, "name");
+        String password = required(params, "password");
+        String problem = CustomerServices.checkRegistration(phone, name);
+        if (problem != null) {
+            json.beginObject().field("error", problem).endObject();
+            return 400;
+        }
+        // Hashing is the expensive part, so a taken number is turned away before it; register checks
+        // again in case someone else took the number in the meantime
+        if (customerServices.getCustomerByPhone(phone) != null
+                || !customerServices.register(phone, name, authServices.generateHash(password))) {
+            json.beginObject().field("error", "A customer with this phone number already exists").endObject();
+            return 409;
+        }
+        return startSession(customerServices.getCustomerByPhone(phone), json);
+    }
+
+    private int logout(Map<String, String> params, Session session, Json json) {
+        sessionManager.end(session);
+        json.beginObject().field("loggedOut", true).endObject();
+        return 200;
+    }
+
+    // Available cars, filtered by categories (comma separated) and rate range, sorted by rate or model
+    private int listCars(Map<String, String> params, Session session, Json json) {
+        String categories = params.get("category");
+        Money minRate = params.containsKey("minRate") ? Money.parse(params.get("minRate")) : null;
+        Money maxRate = params.containsKey("maxRate") ? Money.parse(params.get("maxRate")) : null;
+        CarRegistry.SortOrder order = "model".equalsIgnoreCase(params.get("sort"))
+                ? CarRegistry.SortOrder.MODEL : CarRegistry.SortOrder.RATE;
+
+        CarPage page = carServices.searchAvailableCars(
+                categories != null ? Arrays.asList(categories.split(",")) : null,
+                minRate, maxRate, order, params.get("cursor"), pageSize(params));
+
+        json.beginObject().name("cars").beginArray();
+        for (Car car : page.getCars()) {
+            writeCar(car, json);
+        }
+        json.endArray().field("nextCursor", page.getNextCursor()).endObject();
+        return 200;
+    }
+
+    private int suggestCars(Map<String, String> params, Session session, Json json) {
+        List<Car> cars = CarSearchService.getInstance().suggest(required(params, "q"), pageSize(params));
+        json.beginObject().name("cars").beginArray();
+        for (Car car : cars) {
+            writeCar(car, json);
+        }
+        json.endArray().endObject();
+        return 200;
+    }
+
+    private int reserve(Map<String, String> params, Session session, Json json) {
+        String carId = required(params, "carId");
+        if (!carServices.tryReserve(carId, session.getCustomer().getPhoneNumber())) {
+            json.beginObject().field("error", "That car is no longer available").endObject();
+            return 409;
+        }
+        json.beginObject().field("carId", carId).field("reserved", true).endObject();
+        return 200;
+    }
+
+    private int rent(Map<String, String> params, Session session, Json json) {
+        String carId = required(params, "carId");
+        Money advancePayment = Money.parse(required(params, "advance"));
+        Car car = carServices.getCarById(carId);
+        if (car == null) {
+            json.beginObject().field("error", "Car not found").endObject();
+            return 404;
+        }
+
+        // Minimum advance payment is one hour
+        if (advancePayment.compareTo(car.getHourlyRate()) < 0) {
+            json.beginObject().field("error", "Advance payment must be at least " + car.getHourlyRate()).endObject();
+            return 400;
+        }
+
+        Billing billing = carServices.rentCar(session.getCustomer(), carId, advancePayment);
+        if (billing == null) {
+            json.beginObject().field("error", "That car is no longer available").endObject();
+            return 409;
+        }
+        json.beginObject()
+                .field("billId", billing.getBillId())
+                .field("carId", carId)
+                .field("hourlyRate", billing.getHourlyRate())
+                .field("advancePayment", billing.getAdvancePayment())
+                .endObject();
+        return 200;
+    }
+
+    // Return one of the customer's cars and pay what is still due, as the console's return does
+    private int returnCar(Map<String, String> params, Session session, Json json) {
+        String carId = required(params, "carId");
+        Lock lock = carServices.carLock(carId);
+        lock.lock();
+        try {
+            ActiveRentalIndex.Rental rental = customerServices.getActiveRental(carId);
+            if (rental == null || rental.getCustomer() != session.getCustomer()) {
+                json.beginObject().field("error", "You have not rented this car").endObject();
+                return 404;
+            }
+            Money amountDue = billingService.processCarsReturn(carId);
+            if (amountDue == null) {
+                json.beginObject().field("error", "No active billing found for this car").endObject();
+                return 409;
+            }
+            CarServices.ReturnStatus returned = carServices.returnCar(carId);
+            if (returned != CarServices.ReturnStatus.RETURNED) {
+                json.beginObject().field("error", returned.getMessage()).endObject();
+                return 409;
+            }
+            billingService.markBillingAsPaid(carId);
+            json.beginObject().field("carId", carId).field("amountPaid", amountDue).endObject();
+            return 200;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int history(Map<String, String> params, Session session, Json json) {
+        json.beginObject().name("rentals").beginArray();
+        for (TravelHistory history : session.getCustomer().getTravelHistories()) {
+            json.beginObject()
+                    .field("carId", history.getCarId())
+                    .field("rentTime", history.getRentTime().toString())
+                    .field("returnTime", history.getReturnTime() != null ? history.getReturnTime().toString() : null)
+                    .endObject();
+        }
+        json.endArray().endObject();
+        return 200;
+    }
+
+    private int billings(Map<String, String> params, Session session, Json json) {
+        String phoneNumber = session.getCustomer().getPhoneNumber();
+        writeBillings(billingService.getBillingHistory(session, offset(params), pageSize(params)),
+                billingService.countBillingsForCustomer(phoneNumber), json);
+        return 200;
+    }
+
+    // Admin endpoints
+
+    private int adminLogin(Map<String, String> params, Session session, Json json) {
+        if (!adminApp.login(required(params, "username"), required(params, "password"))) {
+            json.beginObject().field("error", "Invalid admin credentials").endObject();
+            return 401;
+        }
+        return startSession(null, json);
+    }
+
+    private int stats(Map<String, String> params, Session session, Json json) {
+        AdminServices.Stats stats = adminServices.getStats();
+        json.beginObject()
+                .field("totalCars", stats.getTotalCars())
+                .field("availableCars", stats.getAvailableCars())
+                .field("rentedCars", stats.getRentedCars())
+                .field("totalCustomers", stats.getTotalCustomers())
+                .field("totalRentals", stats.getTotalRentals())
+                .field("activeRentals", stats.getActiveRentals())
+                .name("popularModels").beginArray();
+        for (Map.Entry<String, Integer> entry : stats.getPopularModels()) {
+            json.beginObject().field("model", entry.getKey()).field("rentals", entry.getValue()).endObject();
+        }
+        json.endArray();
+
+        // Times are in microseconds, the writer has no fractions
+        AuthServices.Metrics auth = authServices.getMetrics();
+        json.name("auth").beginObject()
+                .field("hashes", auth.getHashes())
+                .field("meanHashMicros", Math.round(auth.getMeanHashMillis() * 1000))
+                .field("maxHashMicros", Math.round(auth.getMaxHashMillis() * 1000))
+                .field("activeThreads", auth.getActiveThreads())
+                .field("threads", auth.getThreads())
+                .field("queueDepth", auth.getQueueDepth())
+                .field("peakQueueDepth", auth.getPeakQueueDepth())
+                .field("queueLength", auth.getQueueLength())
+                .field("rejected", auth.getRejected())
+                .field("rehashed", auth.getRehashed())
+                .endObject();
+        json.field("sessions", sessionManager.count()).endObject();
+        return 200;
+    }
+
+    private int customerBillings(Map<String, String> params, Session session, Json json) {
+        String phoneNumber = required(params, "phone");
+        writeBillings(billingService.getBillingHistoryForCustomer(phoneNumber, offset(params), pageSize(params)),
+                billingService.countBillingsForCustomer(phoneNumber), json);
+        return 200;
+    }
+
+    // Helpers
+
+    private int startSession(Customer customer, Json json) {
+        Session session = sessionManager.create(customer);
+        json.beginObject().field("token", session.getToken());
+        if (customer != null) {
+            json.field("name", customer.getName());
+        }
+        json.endObject();
+        return 200;
+    }
+
+    // One page of a customer's billings, newest first, and how many they have in all
+    private static void writeBillings(List<Billing> billings, int total, Json json) {
+        json.beginObject().field("total", total).name("billings").beginArray();
+        for (Billing billing : billings) {
+            json.beginObject()
+                    .field("billId", billing.getBillId())
+                    .field("carId", billing.getCarId())
+                    .field("hourlyRate", billing.getHourlyRate())
+                    .field("advancePayment", billing.getAdvancePayment())
+                    .field("finalAmount", billing.getFinalAmount())
+                    .field("billingTime", billing.getBillingTime().toString())
+                    .field("paid", billing.isPaid())
+                    .endObject();
+        }
+        json.endArray().endObject();
+    }
+
+    private static void writeCar(Car car, Json json) {
+        json.beginObject()
+                .field("carId", car.getCarId())
+                .field("model", car.getModel())
+                .field("category", car.getCategory())
+                .field("hourlyRate", car.getHourlyRate())
+                .field("available", car.isAvailable())
+                .endObject();
+    }
+
+    private static int offset(Map<String, String> params) {
+        String offset = params.get("offset");
+        return offset != null ? Math.max(0, Integer.parseInt(offset)) : 0;
+    }
+
+    private static int pageSize(Map<String, String> params) {
+        String limit = params.get("limit");
+        if (limit == null) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        return Math.max(1, Math.min(MAX_PAGE_SIZE, Integer.parseInt(limit)));
+    }
+
+    private static String required(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Missing parameter: " + name);
+        }
+        return value;
+    }
+
+    private void route(String method, String path, Access access, Endpoint endpoint) {
+        server.createContext(path, exchange -> {
+            try (exchange) {
+                // Contexts match by prefix, only the exact path is served here
+                if (!exchange.getRequestURI().getPath().equals(path)) {
+                    respond(exchange, 404, Json.error("Not found"));
+                    return;
+                }
+                if (!exchange.getRequestMethod().equalsIgnoreCase(method)) {
+                    exchange.getResponseHeaders().set("Allow", method);
+                    respond(exchange, 405, Json.error("Use " + method));
+                    return;
+                }
+
+                Session session = session(exchange);
+                if (access != Access.PUBLIC && session == null) {
+                    respond(exchange, 401, Json.error("Log in first"));
+                    return;
+                }
+                if (access == Access.CUSTOMER && session.isAdmin() || access == Access.ADMIN && !session.isAdmin()) {
+                    respond(exchange, 403, Json.error(access == Access.ADMIN ? "Admins only" : "Customers only"));
+                    return;
+                }
+
+                Json json = new Json();
+                int status;
+                try {
+                    status = endpoint.handle(params(exchange), session, json);
+                } catch (RejectedExecutionException e) {
+                    // Password checks are backed up; logins are turned away rather than queued without end
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    respond(exchange, 503, Json.error("Too many logins at the moment, try again shortly"));
+                    return;
+                } catch (IllegalArgumentException e) {
+                    // Missing or malformed parameters, including bad numbers and cursors
+                    respond(exchange, 400, Json.error(e.getMessage()));
+                    return;
+                } catch (RuntimeException e) {
+                    System.err.println("Error handling " + method + " " + path + ": " + e);
+                    respond(exchange, 500, Json.error("Internal error"));
+                    return;
+                }
+                respond(exchange, status, json.toString());
+            }
+        });
+    }
+
+    private Session session(HttpExchange exchange) {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (authorization == null || !authorization.startsWith("Bearer ")) {
+            return null;
+        }
+        return sessionManager.get(authorization.substring("Bearer ".length()).trim());
+    }
+
+    // Query string parameters, then form-encoded body parameters
+    private static Map<String, String> params(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        parseForm(exchange.getRequestURI().getRawQuery(), params);
+        try (InputStream body = exchange.getRequestBody()) {
+            parseForm(new String(body.readAllBytes(), StandardCharsets.UTF_8), params);
+        }
+        return params;
+    }
+
+    private static void parseForm(String form, Map<String, String> params) {
+        if (form == null || form.isEmpty()) {
+            return;
+        }
+        for (String pair : form.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals >= 0 ? pair.substring(0, equals) : pair;
+            String value = equals >= 0 ? pair.substring(equals + 1) : "";
+            params.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -7,27 +7,27 @@ public class Billing {
     private String billId;
     private String customerId;
     private String carId;
-    private double hourlyRate;
-    private double advancePayment;
-    private double finalAmount;
+    private Money hourlyRate;
+    private Money advancePayment;
+    private Money finalAmount;
     private LocalDateTime billingTime;
     private boolean isPaid;
 
     // Constructor for creating a new billing record when renting
-    public Billing(String customerId, String carId, double hourlyRate, double advancePayment) {
+    public Billing(String customerId, String carId, Money hourlyRate, Money advancePayment) {
         this.billId = generateBillId(customerId, carId);
         this.customerId = customerId;
         this.carId = carId;
         this.hourlyRate = hourlyRate;
         this.advancePayment = advancePayment;
-        this.finalAmount = 0.0; // Will be calculated on return
+        this.finalAmount = Money.ZERO; // Will be calculated on return
         this.billingTime = LocalDateTime.now();
         this.isPaid = false;
     }
 
     // Constructor for loading from CSV
-    public Billing(String billId, String customerId, String carId, double hourlyRate,
-                   double advancePayment, double finalAmount, LocalDateTime billingTime, boolean isPaid) {
+    public Billing(String billId, String customerId, String carId, Money hourlyRate,
+                   Money advancePayment, Money finalAmount, LocalDateTime billingTime, boolean isPaid) {
         this.billId = billId;
         this.customerId = customerId;
         this.carId = carId;
@@ -45,7 +45,7 @@ public class Billing {
     }
 
     // Calculate the final bill amount based on rental duration
-    public double calculateFinalBill(LocalDateTime rentTime, LocalDateTime returnTime) {
+    public Money calculateFinalBill(LocalDateTime rentTime, LocalDateTime returnTime) {
         if (returnTime == null) {
             returnTime = LocalDateTime.now();
         }
@@ -61,10 +61,10 @@ public class Billing {
         hours = Math.max(1, hours);
 
         // Calculate total amount
-        finalAmount = hourlyRate * hours;
+        finalAmount = hourlyRate.times(hours);
 
         // Deduct advance payment
-        double remainingAmount = finalAmount - advancePayment;
+        Money remainingAmount = finalAmount.minus(advancePayment);
 
         return remainingAmount;
     }
@@ -87,19 +87,19 @@ public class Billing {
         return carId;
     }
 
-    public double getHourlyRate() {
+    public Money getHourlyRate() {
         return hourlyRate;
     }
 
-    public double getAdvancePayment() {
+    public Money getAdvancePayment() {
         return advancePayment;
     }
 
-    public double getFinalAmount() {
+    public Money getFinalAmount() {
         return finalAmount;
     }
 
-    public void setFinalAmount(double finalAmount) {
+    public void setFinalAmount(Money finalAmount) {
         this.finalAmount = finalAmount;
     }
 
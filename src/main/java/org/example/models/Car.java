@@ -1,17 +1,56 @@
 package org.example.models;
 
+import java.util.concurrent.atomic.AtomicReference;
+
 public class Car {
+    public static final Money DEFAULT_HOURLY_RATE = Money.ofCents(1000);
+
     private String carId;
     private String model;
-    private boolean availability;
-    private double hourlyRate; // Added hourly rate field
+    private volatile boolean availability;
+    private Money hourlyRate; // Added hourly rate field
     private String category;   // Economy, Standard, Premium, etc.
+    private ChangeListener changeListener;
+    // Reservation word, changed only by compare-and-set once the car is shared (the constructors set
+    // it first): null while free, RENTED while rented, otherwise the hold of a customer who is part
+    // way through renting it
+    private final AtomicReference<Hold> reservation = new AtomicReference<>();
+
+    // A customer's claim on a car until expiresAt (epoch millis)
+    public static final class Hold {
+        private final String customerId;
+        private final long expiresAt;
+
+        Hold(String customerId, long expiresAt) {
+            this.customerId = customerId;
+            this.expiresAt = expiresAt;
+        }
+
+        public String getCustomerId() {
+            return customerId;
+        }
+
+        public long getExpiresAt() {
+            return expiresAt;
+        }
+
+        boolean isLiveFor(long now) {
+            return this == RENTED || expiresAt > now;
+        }
+    }
+
+    private static final Hold RENTED = new Hold(null, Long.MAX_VALUE);
+
+    // Told after an indexed field (id, model, availability, hourly rate, category) changes, so indexes can follow
+    public interface ChangeListener {
+        void carChanged(Car car);
+    }
 
     public Car(String carId, String model) {
         this.carId = carId;
         this.model = model;
         this.availability = true;
-        this.hourlyRate = 10.0; // Default hourly rate
+        this.hourlyRate = DEFAULT_HOURLY_RATE;
         this.category = "Standard"; // Default category
     }
 
@@ -19,15 +58,17 @@ public class Car {
         this.carId = carId;
         this.model = model;
         this.availability = availability;
-        this.hourlyRate = 10.0; // Default hourly rate
+        this.reservation.set(availability ? null : RENTED);
+        this.hourlyRate = DEFAULT_HOURLY_RATE;
         this.category = "Standard"; // Default category
     }
 
     // Full constructor with all fields
-    public Car(String carId, String model, boolean availability, double hourlyRate, String category) {
+    public Car(String carId, String model, boolean availability, Money hourlyRate, String category) {
         this.carId = carId;
         this.model = model;
         this.availability = availability;
+        this.reservation.set(availability ? null : RENTED);
         this.hourlyRate = hourlyRate;
         this.category = category;
     }
@@ -38,6 +79,7 @@ public class Car {
 
     public void setCarId(String carId) {
         this.carId = carId;
+        notifyChanged();
     }
 
     public String getModel() {
@@ -46,6 +88,7 @@ public class Car {
 
     public void setModel(String model) {
         this.model = model;
+        notifyChanged();
     }
 
     public boolean isAvailable() {
@@ -53,15 +96,81 @@ public class Car {
     }
 
     public void setAvailability(boolean availability) {
-        this.availability = availability;
+        if (this.availability != availability) {
+            this.availability = availability;
+            if (availability) {
+                // Only a rented car is freed; a hold taken in the meantime stays
+                reservation.compareAndSet(RENTED, null);
+            } else {
+                // Rented or taken out of service, e.g. by journal replay: this wins over a hold, whose
+                // holder then fails to claim the car instead of renting it unnoticed
+                Hold current;
+                do {
+                    current = reservation.get();
+                } while (current != RENTED && !reservation.compareAndSet(current, RENTED));
+            }
+            notifyChanged();
+        }
     }
 
-    public double getHourlyRate() {
+    /**
+     * Hold the car for a customer until now + holdMillis, unless it is rented or someone else holds it.
+     * Lock-free: a holder renewing their own hold or taking over an expired one races only on the
+     * reservation word. Returns the hold, or null if the car could not be held.
+     */
+    public Hold tryHold(String customerId, long now, long holdMillis) {
+        Hold hold = new Hold(customerId, now + holdMillis);
+        while (true) {
+            Hold current = reservation.get();
+            if (current != null && current.isLiveFor(now) && !customerId.equals(current.customerId)) {
+                return null;
+            }
+            if (reservation.compareAndSet(current, hold)) {
+                return hold;
+            }
+        }
+    }
+
+    // Give up a customer's hold; false if they did not hold the car
+    public boolean releaseHold(String customerId) {
+        while (true) {
+            Hold current = reservation.get();
+            if (current == null || current == RENTED || !customerId.equals(current.customerId)) {
+                return false;
+            }
+            if (reservation.compareAndSet(current, null)) {
+                return true;
+            }
+        }
+    }
+
+    // Move a free car, or one held by this customer or by an expired hold, to rented. The caller still
+    // marks the car unavailable and records the rental; false if the car is rented or held by someone else
+    public boolean claimForRental(String customerId, long now) {
+        while (true) {
+            Hold current = reservation.get();
+            if (current != null && current.isLiveFor(now) && !customerId.equals(current.customerId)) {
+                return false;
+            }
+            if (reservation.compareAndSet(current, RENTED)) {
+                return true;
+            }
+        }
+    }
+
+    // The customer holding the car right now, or null if it is free or rented
+    public String getHolder(long now) {
+        Hold current = reservation.get();
+        return current != null && current != RENTED && current.expiresAt > now ? current.customerId : null;
+    }
+
+    public Money getHourlyRate() {
         return hourlyRate;
     }
 
-    public void setHourlyRate(double hourlyRate) {
+    public void setHourlyRate(Money hourlyRate) {
         this.hourlyRate = hourlyRate;
+        notifyChanged();
     }
 
     public String getCategory() {
@@ -70,6 +179,17 @@ public class Car {
 
     public void setCategory(String category) {
         this.category = category;
+        notifyChanged();
+    }
+
+    public void setChangeListener(ChangeListener changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    private void notifyChanged() {
+        if (changeListener != null) {
+            changeListener.carChanged(this);
+        }
     }
 
     @Override
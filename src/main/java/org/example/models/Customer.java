@@ -1,19 +1,27 @@
 package org.example.models;
 
-import java.util.ArrayList;
+import java.lang.ref.SoftReference;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
 
 public class Customer {
     private String phoneNumber;
     private String name;
     private String password;
+    // Copy-on-write, so other sessions can walk a customer's history while a rental is added
     private List<TravelHistory> travelHistories;
+    // Lazy history: the list is fetched on first access and only held softly while it has no
+    // unsaved changes, so the GC can drop it under memory pressure
+    private Function<Customer, List<TravelHistory>> historyLoader;
+    private SoftReference<List<TravelHistory>> releasedHistories;
 
     public Customer(String phoneNumber, String name, String password) {
         this.phoneNumber = phoneNumber;
         this.name = name;
         this.password = password;
-        this.travelHistories = new ArrayList<>();
+        this.travelHistories = new CopyOnWriteArrayList<>();
     }
 
     public String getPhoneNumber() {
@@ -40,12 +48,69 @@ public class Customer {
         this.password = password;
     }
 
-    public List<TravelHistory> getTravelHistories() {
-        return travelHistories;
+    public synchronized List<TravelHistory> getTravelHistories() {
+        if (travelHistories != null) {
+            return travelHistories;
+        }
+
+        List<TravelHistory> histories = releasedHistories != null ? releasedHistories.get() : null;
+        if (histories == null) {
+            histories = new CopyOnWriteArrayList<>(historyLoader.apply(this));
+            // Active rentals will still change, keep the list until it is saved
+            if (hasActiveRental(histories)) {
+                travelHistories = histories;
+            } else {
+                releasedHistories = new SoftReference<>(histories);
+            }
+        }
+        return histories;
+    }
+
+    public synchronized void addTravelHistory(TravelHistory travelHistory) {
+        List<TravelHistory> histories = getTravelHistories();
+        histories.add(travelHistory);
+        travelHistories = histories; // unsaved change, keep the list
+    }
+
+    // Add several at once, e.g. when loading, copying the list once rather than per entry
+    public synchronized void addTravelHistories(Collection<TravelHistory> histories) {
+        List<TravelHistory> loaded = getTravelHistories();
+        loaded.addAll(histories);
+        travelHistories = loaded;
+    }
+
+    // Switch to lazy history; the loader is called whenever the list is needed and not in memory
+    public synchronized void setHistoryLoader(Function<Customer, List<TravelHistory>> historyLoader) {
+        this.historyLoader = historyLoader;
+        this.travelHistories = null;
+        this.releasedHistories = null;
+    }
+
+    // The history list if it is in memory right now, without loading it
+    public synchronized List<TravelHistory> getLoadedTravelHistories() {
+        if (travelHistories != null) {
+            return travelHistories;
+        }
+        return releasedHistories != null ? releasedHistories.get() : null;
+    }
+
+    // Called after the list was saved with savedSize entries and no active rental; it may be
+    // dropped again unless it changed in the meantime
+    public synchronized void releaseTravelHistories(int savedSize) {
+        if (historyLoader != null && travelHistories != null
+                && travelHistories.size() == savedSize && !hasActiveRental(travelHistories)) {
+            releasedHistories = new SoftReference<>(travelHistories);
+            travelHistories = null;
+        }
     }
 
-    public void addTravelHistory(TravelHistory travelHistory) {
-        this.travelHistories.add(travelHistory);
+    private static boolean hasActiveRental(List<TravelHistory> histories) {
+        for (TravelHistory history : histories) {
+            if (history.isActive()) {
+                return true;
+            }
+        }
+        return false;
     }
 
     @Override
@@ -0,0 +1,130 @@
+package org.example.models;
+
+// Amount of money as a whole number of cents.
+// Parsing and formatting are done by hand so the CSV and display paths need no Formatter,
+// BigDecimal or double arithmetic, and totals never pick up floating point drift.
+public final class Money implements Comparable<Money> {
+    public static final Money ZERO = new Money(0);
+
+    private final long cents;
+
+    private Money(long cents) {
+        this.cents = cents;
+    }
+
+    public static Money ofCents(long cents) {
+        return cents == 0 ? ZERO : new Money(cents);
+    }
+
+    // Parse "12", "12.5", "-3.25" or "+0.125"; digits past the cents are rounded half up
+    public static Money parse(CharSequence text) {
+        return ofCents(parseCents(text, 0, text.length()));
+    }
+
+    public static long parseCents(CharSequence text, int start, int end) {
+        int i = start;
+        if (i == end) {
+            throw new NumberFormatException("Empty amount");
+        }
+
+        boolean negative = text.charAt(i) == '-';
+        if (negative || text.charAt(i) == '+') {
+            i++;
+        }
+
+        long units = 0;
+        int digits = 0;
+        for (; i < end && text.charAt(i) != '.'; i++) {
+            units = units * 10 + digit(text, i);
+            if (++digits > 16) {
+                throw new NumberFormatException("Amount too large: " + text.subSequence(start, end));
+            }
+        }
+
+        long fraction = 0;
+        int fractionDigits = 0;
+        boolean roundUp = false;
+        if (i < end) {
+            for (i++; i < end; i++) {
+                int d = digit(text, i);
+                if (fractionDigits < 2) {
+                    fraction = fraction * 10 + d;
+                } else if (fractionDigits == 2) {
+                    roundUp = d >= 5;
+                }
+                fractionDigits++;
+            }
+            digits += fractionDigits;
+        }
+        if (digits == 0) {
+            throw new NumberFormatException("Not an amount: " + text.subSequence(start, end));
+        }
+        if (fractionDigits == 1) {
+            fraction *= 10;
+        }
+
+        long cents = units * 100 + fraction + (roundUp ? 1 : 0);
+        return negative ? -cents : cents;
+    }
+
+    public long getCents() {
+        return cents;
+    }
+
+    public Money plus(Money other) {
+        return ofCents(Math.addExact(cents, other.cents));
+    }
+
+    public Money minus(Money other) {
+        return ofCents(Math.subtractExact(cents, other.cents));
+    }
+
+    public Money times(long factor) {
+        return ofCents(Math.multiplyExact(cents, factor));
+    }
+
+    public boolean isNegative() {
+        return cents < 0;
+    }
+
+    // Append as "-12.05" without creating intermediate strings
+    public StringBuilder appendTo(StringBuilder out) {
+        long value = cents;
+        if (value < 0) {
+            out.append('-');
+            value = -value;
+        }
+        out.append(value / 100).append('.');
+        int fraction = (int) (value % 100);
+        out.append((char) ('0' + fraction / 10)).append((char) ('0' + fraction % 10));
+        return out;
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(cents, other.cents);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Money && ((Money) o).cents == cents;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(cents);
+    }
+
+    @Override
+    public String toString() {
+        return appendTo(new StringBuilder(24)).toString();
+    }
+
+    private static int digit(CharSequence text, int i) {
+        char c = text.charAt(i);
+        if (c < '0' || c > '9') {
+            throw new NumberFormatException("Not an amount: " + text);
+        }
+        return c - '0';
+    }
+}
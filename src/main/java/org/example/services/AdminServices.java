@@ -8,9 +8,10 @@ import org.example.models.TravelHistory;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 public class AdminServices {
-    private static AdminServices instance;
+    private static volatile AdminServices instance;
     private final CarServices carServices;
     private final CustomerServices customerServices;
 
@@ -20,20 +21,74 @@ public class AdminServices {
     }
 
     public static AdminServices getInstance() {
-        if (instance == null) {
-            instance = new AdminServices();
+        AdminServices result = instance;
+        if (result == null) {
+            synchronized (AdminServices.class) {
+                result = instance;
+                if (result == null) {
+                    instance = result = new AdminServices();
+                }
+            }
         }
-        return instance;
+        return result;
     }
 
-    public void viewStats() {
+    // Fleet and rental figures, as shown by viewStats
+    public static class Stats {
+        private final int totalCars;
+        private final int availableCars;
+        private final int totalCustomers;
+        private final int totalRentals;
+        private final int activeRentals;
+        private final List<Map.Entry<String, Integer>> popularModels;
+
+        Stats(int totalCars, int availableCars, int totalCustomers, int totalRentals, int activeRentals,
+              List<Map.Entry<String, Integer>> popularModels) {
+            this.totalCars = totalCars;
+            this.availableCars = availableCars;
+            this.totalCustomers = totalCustomers;
+            this.totalRentals = totalRentals;
+            this.activeRentals = activeRentals;
+            this.popularModels = popularModels;
+        }
+
+        public int getTotalCars() {
+            return totalCars;
+        }
+
+        public int getAvailableCars() {
+            return availableCars;
+        }
+
+        public int getRentedCars() {
+            return totalCars - availableCars;
+        }
+
+        public int getTotalCustomers() {
+            return totalCustomers;
+        }
+
+        public int getTotalRentals() {
+            return totalRentals;
+        }
+
+        public int getActiveRentals() {
+            return activeRentals;
+        }
+
+        // Up to five models with the most rentals, most first
+        public List<Map.Entry<String, Integer>> getPopularModels() {
+            return popularModels;
+        }
+    }
+
+    public Stats getStats() {
         List<Car> cars = carServices.getCars();
         List<Customer> customers = customerServices.getCustomers();
 
         // Calculate stats
         int totalCars = cars.size();
-        int availableCars = (int) cars.stream().filter(Car::isAvailable).count();
-        int rentedCars = totalCars - availableCars;
+        int availableCars = carServices.countAvailableCars();
 
         int totalCustomers = customers.size();
 
@@ -61,24 +116,45 @@ public class AdminServices {
                 }
             }
         }
+        List<Map.Entry<String, Integer>> popularModels = carModelRentals.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                .limit(5)
+                .collect(Collectors.toList());
+
+        return new Stats(totalCars, availableCars, totalCustomers, totalRentals, activeRentals, popularModels);
+    }
+
+    public void viewStats() {
+        Stats stats = getStats();
 
         // Print statistics
         System.out.println("\n===== SYSTEM STATISTICS =====");
-        System.out.println("Total Cars: " + totalCars);
-        System.out.println("Available Cars: " + availableCars);
-        System.out.println("Currently Rented Cars: " + rentedCars);
-        System.out.println("Total Customers: " + totalCustomers);
-        System.out.println("Total Rentals (all time): " + totalRentals);
-        System.out.println("Active Rentals: " + activeRentals);
-
-        if (!carModelRentals.isEmpty()) {
+        System.out.println("Total Cars: " + stats.getTotalCars());
+        System.out.println("Available Cars: " + stats.getAvailableCars());
+        System.out.println("Currently Rented Cars: " + stats.getRentedCars());
+        System.out.println("Total Customers: " + stats.getTotalCustomers());
+        System.out.println("Total Rentals (all time): " + stats.getTotalRentals());
+        System.out.println("Active Rentals: " + stats.getActiveRentals());
+
+        if (!stats.getPopularModels().isEmpty()) {
             System.out.println("\nPopular Car Models:");
-            carModelRentals.entrySet().stream()
-                    .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
-                    .limit(5)
+            stats.getPopularModels()
                     .forEach(entry -> System.out.println("- " + entry.getKey() + ": " + entry.getValue() + " rentals"));
         }
 
+        AuthServices.Metrics auth = AuthServices.getInstance().getMetrics();
+        System.out.println("\nPassword Hashing:");
+        System.out.printf("- Hashes: %d (mean %.1f ms, max %.1f ms)%n",
+                auth.getHashes(), auth.getMeanHashMillis(), auth.getMaxHashMillis());
+        System.out.println("- Queue: " + auth.getQueueDepth() + " waiting (peak " + auth.getPeakQueueDepth()
+                + " of " + auth.getQueueLength() + "), " + auth.getActiveThreads() + "/" + auth.getThreads() + " threads busy");
+        System.out.println("- Turned away: " + auth.getRejected() + ", rehashed: " + auth.getRehashed());
+
+        AdvanceService advanceService = AdvanceService.getInstance();
+        System.out.println("\nRecommendation Caches:");
+        System.out.println("- Cars: " + advanceService.getCarCacheStats());
+        System.out.println("- Customers: " + advanceService.getCustomerCacheStats());
+
         System.out.println("=============================");
     }
 }
@@ -9,10 +9,11 @@ import org.example.structures.RentalGraph;
 import java.util.*;
 
 public class AdvanceService {
-    private static AdvanceService instance;
-    private RentalGraph rentalGraph;
-    private DataCache<String, Car> carCache;
-    private DataCache<String, Customer> customerCache;
+    private static volatile AdvanceService instance;
+    // Built once at startup and only read afterwards
+    private final RentalGraph rentalGraph;
+    private final DataCache<String, Car> carCache;
+    private final DataCache<String, Customer> customerCache;
     
     private AdvanceService() {
         this.rentalGraph = new RentalGraph();
@@ -22,10 +23,16 @@ public class AdvanceService {
     }
 
     public static AdvanceService getInstance() {
-        if (instance == null) {
-            instance = new AdvanceService();
+        AdvanceService result = instance;
+        if (result == null) {
+            synchronized (AdvanceService.class) {
+                result = instance;
+                if (result == null) {
+                    instance = result = new AdvanceService();
+                }
+            }
         }
-        return instance;
+        return result;
     }
 
     public void buildRentalGraphFromHistory() {
@@ -56,6 +63,18 @@ public class AdvanceService {
         }
     }
 
+    public RentalGraph getRentalGraph() {
+        return rentalGraph;
+    }
+
+    public DataCache.Stats getCarCacheStats() {
+        return carCache.getStats();
+    }
+
+    public DataCache.Stats getCustomerCacheStats() {
+        return customerCache.getStats();
+    }
+
     public void displayCarRecommendationsForCustomer(String customerId) {
         Set<String> recommendedCarIds = rentalGraph.recommendCarsForCustomer(customerId);
         System.out.println("Your Recommended Cars - ");
@@ -63,13 +82,7 @@ public class AdvanceService {
 
 
         for (String carId : recommendedCarIds) {
-            Car car = carCache.get(carId);
-            if (car == null) {
-                car = CarServices.getInstance().getCarById(carId);
-                if (car != null) {
-                    carCache.put(carId, car);
-                }
-            }
+            Car car = carCache.get(carId, CarServices.getInstance()::getCarById);
             if (car != null  ) {
                 System.out.println("Car ID: " + car.getCarId() + " | Model: " + car.getModel() + " | Category: " + car.getCategory());
                 System.out.println();
@@ -84,13 +97,7 @@ public class AdvanceService {
 
         for (Map.Entry<String, Integer> entry : popularCarIds) {
             String carId = entry.getKey();
-            Car car = carCache.get(carId);
-            if (car == null) {
-                car = CarServices.getInstance().getCarById(carId);
-                if (car != null) {
-                    carCache.put(carId, car);
-                }
-            }
+            Car car = carCache.get(carId, CarServices.getInstance()::getCarById);
 
             if (car != null) {
                 System.out.println("Car ID: " + car.getCarId() + " | Model: " + car.getModel() + " | Category: " + car.getCategory() +
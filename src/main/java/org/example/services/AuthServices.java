@@ -2,23 +2,222 @@ package org.example.services;
 
 import org.springframework.security.crypto.bcrypt.BCrypt;
 
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Password hashing and checking
+ * BCrypt costs tens of milliseconds of CPU per call, so it runs on a fixed pool of auth threads
+ * with a bounded queue instead of on the caller's thread. A burst of logins then waits in that
+ * queue, or is turned away with a RejectedExecutionException once the queue is full, while the
+ * request threads stay free for rentals and returns.
+ * Pool size, queue length and BCrypt cost can be set with -Dcarrental.auth.threads (default: the
+ * number of cores), -Dcarrental.auth.queue (default 16 per thread) and -Dcarrental.auth.bcryptCost
+ * (default 10). Hashes made with another cost are redone on the customer's next login.
+ */
 public class AuthServices {
+    private static final int THREADS = Integer.getInteger("carrental.auth.threads", Runtime.getRuntime().availableProcessors());
+    private static final int QUEUE_LENGTH = Integer.getInteger("carrental.auth.queue", 16 * THREADS);
+    private static final int BCRYPT_COST = Integer.getInteger("carrental.auth.bcryptCost", 10);
+
+    private static volatile AuthServices instance;
+
+    private final ThreadPoolExecutor executor;
+    private final LongAdder hashes = new LongAdder();
+    private final LongAdder hashNanos = new LongAdder();
+    private final AtomicLong maxHashNanos = new AtomicLong();
+    private final AtomicInteger peakQueueDepth = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder rehashed = new LongAdder();
+
+    // A snapshot of how busy hashing is
+    public static class Metrics {
+        private final long hashes;
+        private final double meanHashMillis;
+        private final double maxHashMillis;
+        private final int activeThreads;
+        private final int threads;
+        private final int queueDepth;
+        private final int peakQueueDepth;
+        private final int queueLength;
+        private final long rejected;
+        private final long rehashed;
+
+        Metrics(long hashes, double meanHashMillis, double maxHashMillis, int activeThreads, int threads,
+                int queueDepth, int peakQueueDepth, int queueLength, long rejected, long rehashed) {
+            this.hashes = hashes;
+            this.meanHashMillis = meanHashMillis;
+            this.maxHashMillis = maxHashMillis;
+            this.activeThreads = activeThreads;
+            this.threads = threads;
+            this.queueDepth = queueDepth;
+            this.peakQueueDepth = peakQueueDepth;
+            this.queueLength = queueLength;
+            this.rejected = rejected;
+            this.rehashed = rehashed;
+        }
+
+        public long getHashes() {
+            return hashes;
+        }
+
+        public double getMeanHashMillis() {
+            return meanHashMillis;
+        }
+
+        public double getMaxHashMillis() {
+            return maxHashMillis;
+        }
 
-    private static AuthServices instance;
+        public int getActiveThreads() {
+            return activeThreads;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        public int getPeakQueueDepth() {
+            return peakQueueDepth;
+        }
+
+        public int getQueueLength() {
+            return queueLength;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
 
-    public static AuthServices getInstance(){
-        if(instance==null){
-            instance = new AuthServices();
+        public long getRehashed() {
+            return rehashed;
         }
-        return instance;
     }
 
+    private AuthServices() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(THREADS, THREADS, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_LENGTH),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "auth-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public static AuthServices getInstance() {
+        AuthServices result = instance;
+        if (result == null) {
+            synchronized (AuthServices.class) {
+                result = instance;
+                if (result == null) {
+                    instance = result = new AuthServices();
+                }
+            }
+        }
+        return result;
+    }
+
+    // Throws RejectedExecutionException when too many hashes are already waiting
     public String generateHash(String data){
-        String hashedPassword = BCrypt.hashpw(data, BCrypt.gensalt());
-        return hashedPassword;
+        try {
+            return await(submit(() -> BCrypt.hashpw(data, BCrypt.gensalt(BCRYPT_COST))));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while hashing");
+        }
     }
 
+    // Throws RejectedExecutionException when too many hashes are already waiting
     public boolean verifyHash(String data,String originalPasswordHash){
-        return BCrypt.checkpw(data, originalPasswordHash);
+        try {
+            return await(submit(() -> BCrypt.checkpw(data, originalPasswordHash)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // True if the hash was made with another cost than the configured one
+    public boolean needsRehash(String passwordHash) {
+        // BCrypt hashes start with $2a$10$, the two digits being the cost
+        if (passwordHash == null || passwordHash.length() < 7 || passwordHash.charAt(0) != '$'
+                || passwordHash.charAt(6) != '$') {
+            return false;
+        }
+        try {
+            return Integer.parseInt(passwordHash.substring(4, 6)) != BCRYPT_COST;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    // Hash a just verified password again in the background and hand the new hash to onHashed.
+    // Skipped while the pool is saturated; the next login tries again
+    public void rehashLater(String data, Consumer<String> onHashed) {
+        try {
+            submit(() -> {
+                onHashed.accept(BCrypt.hashpw(data, BCrypt.gensalt(BCRYPT_COST)));
+                rehashed.increment();
+                return null;
+            });
+        } catch (RejectedExecutionException e) {
+            // Logins come first
+        }
+    }
+
+    public Metrics getMetrics() {
+        long count = hashes.sum();
+        return new Metrics(count,
+                count > 0 ? hashNanos.sum() / 1e6 / count : 0,
+                maxHashNanos.get() / 1e6,
+                executor.getActiveCount(),
+                THREADS,
+                executor.getQueue().size(),
+                peakQueueDepth.get(),
+                QUEUE_LENGTH,
+                rejected.sum(),
+                rehashed.sum());
+    }
+
+    private <T> Future<T> submit(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                long start = System.nanoTime();
+                try {
+                    return task.call();
+                } finally {
+                    long elapsed = System.nanoTime() - start;
+                    hashes.increment();
+                    hashNanos.add(elapsed);
+                    maxHashNanos.accumulateAndGet(elapsed, Math::max);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw e;
+        }
+        peakQueueDepth.accumulateAndGet(executor.getQueue().size(), Math::max);
+        return future;
+    }
+
+    private static <T> T await(Future<T> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
     }
 }
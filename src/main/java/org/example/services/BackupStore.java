@@ -0,0 +1,238 @@
+package org.example.services;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed backup store.
+ * Files are cut into content-defined chunks (a gear rolling hash picks the cut points, so an edit
+ * only changes the chunks around it) and each chunk is stored once under its SHA-256.
+ * A backup is a manifest listing, per file (by path relative to the data directory), its size,
+ * mtime and chunk hashes. A file whose size and
+ * mtime match the previous manifest reuses that chunk list without being read at all.
+ */
+class BackupStore {
+    private static final int MIN_CHUNK = 16 * 1024;
+    private static final int MAX_CHUNK = 256 * 1024;
+    private static final long CUT_MASK = (1L << 16) - 1; // ~64 KB average chunk
+    private static final long[] GEAR = new long[256];
+
+    static {
+        // Fixed pseudo-random table so chunk boundaries are stable between runs
+        long seed = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < GEAR.length; i++) {
+            seed ^= seed << 13;
+            seed ^= seed >>> 7;
+            seed ^= seed << 17;
+            GEAR[i] = seed;
+        }
+    }
+
+    private final Path dataDirectory;
+    private final Path chunkDirectory;
+    private final Path manifestDirectory;
+
+    BackupStore(Path dataDirectory, Path backupDirectory) {
+        this.dataDirectory = dataDirectory;
+        this.chunkDirectory = backupDirectory.resolve("chunks");
+        this.manifestDirectory = backupDirectory.resolve("manifests");
+    }
+
+    // Back up the given files and return the manifest path
+    Path backup(String manifestName, List<Path> files) throws IOException {
+        Files.createDirectories(chunkDirectory);
+        Files.createDirectories(manifestDirectory);
+
+        Map<String, FileEntry> previous = readLatestManifest();
+        List<FileEntry> entries = new ArrayList<>();
+
+        for (Path file : files) {
+            if (!Files.exists(file)) {
+                continue;
+            }
+            String name = dataDirectory.relativize(file).toString().replace(File.separatorChar, '/');
+            long size = Files.size(file);
+            long mtime = Files.getLastModifiedTime(file).toMillis();
+
+            FileEntry unchanged = previous.get(name);
+            if (unchanged != null && unchanged.size == size && unchanged.mtime == mtime) {
+                entries.add(unchanged); // no read, no new chunks
+            } else {
+                entries.add(storeFile(file, name, size, mtime));
+            }
+        }
+
+        Path manifest = manifestDirectory.resolve(manifestName + ".manifest");
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(manifest))) {
+            for (FileEntry entry : entries) {
+                writer.printf("file %s %d %d%n", entry.name, entry.size, entry.mtime);
+                for (String hash : entry.chunks) {
+                    writer.println(hash);
+                }
+            }
+        }
+        return manifest;
+    }
+
+    // Rebuild every file in the manifest into the data directory and return the restored paths
+    List<Path> restore(Path manifest) throws IOException {
+        List<Path> restored = new ArrayList<>();
+        for (FileEntry entry : readManifest(manifest).values()) {
+            Path target = dataDirectory.resolve(entry.name);
+            Files.createDirectories(target.getParent());
+            Path tempFile = target.resolveSibling(target.getFileName() + ".restore");
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tempFile))) {
+                for (String hash : entry.chunks) {
+                    Files.copy(chunkPath(hash), out);
+                }
+            }
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+            restored.add(target);
+        }
+        return restored;
+    }
+
+    // Check that every chunk exists and still hashes to its name, and that file sizes add up
+    List<String> verify(Path manifest) throws IOException {
+        List<String> problems = new ArrayList<>();
+        for (FileEntry entry : readManifest(manifest).values()) {
+            long total = 0;
+            for (String hash : entry.chunks) {
+                Path chunk = chunkPath(hash);
+                if (!Files.exists(chunk)) {
+                    problems.add(entry.name + ": missing chunk " + hash);
+                    continue;
+                }
+                byte[] data = Files.readAllBytes(chunk);
+                if (!sha256(data, data.length).equals(hash)) {
+                    problems.add(entry.name + ": corrupt chunk " + hash);
+                }
+                total += data.length;
+            }
+            if (total != entry.size) {
+                problems.add(entry.name + ": expected " + entry.size + " bytes, chunks hold " + total);
+            }
+        }
+        return problems;
+    }
+
+    Path manifestPath(String manifestName) {
+        return manifestDirectory.resolve(manifestName.endsWith(".manifest") ? manifestName : manifestName + ".manifest");
+    }
+
+    private FileEntry storeFile(Path file, String name, long size, long mtime) throws IOException {
+        FileEntry entry = new FileEntry(name, size, mtime);
+        byte[] chunk = new byte[MAX_CHUNK];
+        int length = 0;
+        long hash = 0;
+
+        byte[] buffer = new byte[1 << 16];
+
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    byte b = buffer[i];
+                    chunk[length++] = b;
+                    hash = (hash << 1) + GEAR[b & 0xFF];
+
+                    if ((length >= MIN_CHUNK && (hash & CUT_MASK) == 0) || length == MAX_CHUNK) {
+                        entry.chunks.add(storeChunk(chunk, length));
+                        length = 0;
+                        hash = 0;
+                    }
+                }
+            }
+        }
+        if (length > 0) {
+            entry.chunks.add(storeChunk(chunk, length));
+        }
+        return entry;
+    }
+
+    // Only chunks not already in the store are written
+    private String storeChunk(byte[] data, int length) throws IOException {
+        String hash = sha256(data, length);
+        Path chunkFile = chunkPath(hash);
+        if (!Files.exists(chunkFile)) {
+            Files.createDirectories(chunkFile.getParent());
+            Path tempFile = chunkFile.resolveSibling(hash + ".tmp");
+            try (OutputStream out = Files.newOutputStream(tempFile)) {
+                out.write(data, 0, length);
+            }
+            Files.move(tempFile, chunkFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return hash;
+    }
+
+    private Path chunkPath(String hash) {
+        return chunkDirectory.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private Map<String, FileEntry> readLatestManifest() throws IOException {
+        Path latest = null;
+        long latestTime = Long.MIN_VALUE;
+        try (Stream<Path> manifests = Files.list(manifestDirectory)) {
+            for (Path manifest : (Iterable<Path>) manifests::iterator) {
+                long time = Files.getLastModifiedTime(manifest).toMillis();
+                if (manifest.toString().endsWith(".manifest") && time >= latestTime) {
+                    latest = manifest;
+                    latestTime = time;
+                }
+            }
+        }
+        return latest != null ? readManifest(latest) : new HashMap<>();
+    }
+
+    private Map<String, FileEntry> readManifest(Path manifest) throws IOException {
+        Map<String, FileEntry> entries = new LinkedHashMap<>();
+        FileEntry current = null;
+        for (String line : Files.readAllLines(manifest)) {
+            if (line.startsWith("file ")) {
+                String[] parts = line.split(" ");
+                current = new FileEntry(parts[1], Long.parseLong(parts[2]), Long.parseLong(parts[3]));
+                entries.put(current.name, current);
+            } else if (!line.isEmpty() && current != null) {
+                current.chunks.add(line);
+            }
+        }
+        return entries;
+    }
+
+    private static String sha256(byte[] data, int length) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(data, 0, length);
+            StringBuilder hex = new StringBuilder(64);
+            for (byte b : digest.digest()) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static class FileEntry {
+        private final String name;
+        private final long size;
+        private final long mtime;
+        private final List<String> chunks = new ArrayList<>();
+
+        FileEntry(String name, long size, long mtime) {
+            this.name = name;
+            this.size = size;
+            this.mtime = mtime;
+        }
+    }
+}
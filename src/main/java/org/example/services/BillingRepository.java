@@ -0,0 +1,18 @@
+package org.example.services;
+
+import org.example.models.Billing;
+
+import java.util.List;
+
+// Storage of billing records, see Repositories for the implementations
+public interface BillingRepository {
+    List<Billing> findAll();
+
+    Billing findById(String billId);
+
+    // Insert or update one billing record
+    void save(Billing billing);
+
+    // Replace every stored billing record with the given list
+    void saveAll(List<Billing> billings);
+}
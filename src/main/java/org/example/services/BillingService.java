@@ -3,119 +3,165 @@ package org.example.services;
 import org.example.models.Billing;
 import org.example.models.Car;
 import org.example.models.Customer;
-import org.example.models.TravelHistory;
+import org.example.models.Money;
+import org.example.structures.ActiveRentalIndex;
+import org.example.structures.BillingIndex;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.locks.Lock;
 
 public class BillingService {
-    private static BillingService instance;
+    private static volatile BillingService instance;
     private final List<Billing> billings;
+    private final BillingIndex billingIndex = new BillingIndex();
     private final CSVFileService csvFileService;
     private final CarServices carServices;
     private final CustomerServices customerServices;
+    private final BillingRepository billingRepository;
+    private final SessionManager sessionManager;
 
     private BillingService() {
         csvFileService = CSVFileService.getInstance();
-        billings = csvFileService.loadBillings();
+        billingRepository = Repositories.getInstance().billings();
+        billings = billingRepository.findAll();
+        for (Billing billing : billings) {
+            billingIndex.add(billing);
+        }
         carServices = CarServices.getInstance();
         customerServices = CustomerServices.getInstance();
+        sessionManager = SessionManager.getInstance();
     }
 
     public static BillingService getInstance() {
-        if (instance == null) {
-            instance = new BillingService();
+        BillingService result = instance;
+        if (result == null) {
+            synchronized (BillingService.class) {
+                result = instance;
+                if (result == null) {
+                    instance = result = new BillingService();
+                }
+            }
         }
-        return instance;
+        return result;
     }
 
     public void addBilling(Billing billing) {
         billings.add(billing);
+        billingIndex.add(billing);
+
+        if (csvFileService.isJournalMode()) {
+            csvFileService.journalBillingCreated(billing);
+            carServices.checkpointIfDue();
+        } else {
+            billingRepository.save(billing);
+        }
+    }
+
+    // Returns the amount still to be paid, or null if the car has no active rental
+    public Money processCarsReturn(String carId) {
+        Lock lock = carServices.carLock(carId);
+        lock.lock();
+        try {
+            return processCarsReturnLocked(carId);
+        } finally {
+            lock.unlock();
+        }
     }
 
-    public double processCarsReturn(String carId) {
+    private Money processCarsReturnLocked(String carId) {
         Car car = carServices.getCarById(carId);
         if (car == null || car.isAvailable()) {
-            return -1; // Car not found or not rented
+            return null; // Car not found or not rented
         }
 
         // Find the active billing for this car
-        Billing activeBilling = null;
-        for (Billing billing : billings) {
-            if (billing.getCarId().equals(carId) && !billing.isPaid()) {
-                activeBilling = billing;
-                break;
-            }
-        }
-
+        Billing activeBilling = billingIndex.getUnpaid(carId);
         if (activeBilling == null) {
-            return -1; // No active billing found
+            return null; // No active billing found
         }
 
-        // Find the rental start time from travel history
-        LocalDateTime rentTime = null;
-        Customer customer = null;
-
-        for (Customer c : customerServices.getCustomers()) {
-            for (TravelHistory history : c.getTravelHistories()) {
-                if (history.getCarId().equals(carId) && history.isActive()) {
-                    rentTime = history.getRentTime();
-                    customer = c;
-                    break;
-                }
-            }
-            if (rentTime != null) break;
-        }
-
-        if (rentTime == null) {
-            return -1; // No active rental found
+        // Find the rental start time from the open rental
+        ActiveRentalIndex.Rental rental = customerServices.getActiveRental(carId);
+        if (rental == null) {
+            return null; // No active rental found
         }
+        LocalDateTime rentTime = rental.getHistory().getRentTime();
 
         // Calculate the final bill amount
-        double remainingAmount = activeBilling.calculateFinalBill(rentTime, LocalDateTime.now());
+        Money remainingAmount = activeBilling.calculateFinalBill(rentTime, LocalDateTime.now());
 
         // Update the final amount in the billing
-        activeBilling.setFinalAmount(activeBilling.getAdvancePayment() + remainingAmount);
+        activeBilling.setFinalAmount(activeBilling.getAdvancePayment().plus(remainingAmount));
 
-        // Save the updated billing
-        saveBillingsToFile();
+        // Save the updated billing; in journal mode the final amount is recorded when it is paid
+        if (!csvFileService.isJournalMode()) {
+            billingRepository.save(activeBilling);
+        }
 
         return remainingAmount;
     }
 
     public void markBillingAsPaid(String carId) {
-        for (Billing billing : billings) {
-            if (billing.getCarId().equals(carId) && !billing.isPaid()) {
-                billing.markAsPaid();
-                break;
+        Lock lock = carServices.carLock(carId);
+        lock.lock();
+        try {
+            Billing billing = billingIndex.getUnpaid(carId);
+            if (billing == null) {
+                return;
+            }
+            billing.markAsPaid();
+            billingIndex.paid(billing);
+
+            if (csvFileService.isJournalMode()) {
+                csvFileService.journalBillingPaid(billing);
+                carServices.checkpointIfDue();
+            } else {
+                billingRepository.save(billing);
             }
+        } finally {
+            lock.unlock();
         }
     }
 
     public List<Billing> getBillingHistoryForCustomer(String phoneNumber) {
-        List<Billing> customerBillings = new ArrayList<>();
-        for (Billing billing : billings) {
-            if (billing.getCustomerId().equals(phoneNumber)) {
-                customerBillings.add(billing);
-            }
-        }
-        return customerBillings;
+        return billingIndex.getByCustomer(phoneNumber);
+    }
+
+    // The session's own billings; empty unless it is a live customer session
+    public List<Billing> getBillingHistory(SessionManager.Session session) {
+        Customer customer = sessionManager.customerOf(session);
+        return customer != null ? billingIndex.getByCustomer(customer.getPhoneNumber()) : List.of();
+    }
+
+    public List<Billing> getBillingHistory(SessionManager.Session session, int offset, int limit) {
+        Customer customer = sessionManager.customerOf(session);
+        return customer != null ? billingIndex.getByCustomerNewestFirst(customer.getPhoneNumber(), offset, limit) : List.of();
+    }
+
+    // One page of a customer's billings, newest first
+    public List<Billing> getBillingHistoryForCustomer(String phoneNumber, int offset, int limit) {
+        return billingIndex.getByCustomerNewestFirst(phoneNumber, offset, limit);
+    }
+
+    public int countBillingsForCustomer(String phoneNumber) {
+        return billingIndex.countByCustomer(phoneNumber);
     }
 
+    // A copy, so it can be walked while other sessions add billings
     public List<Billing> getAllBillings() {
-        return billings;
+        synchronized (billings) {
+            return new ArrayList<>(billings);
+        }
     }
 
+    // Written by the persistence thread, changes within the max staleness are coalesced
     public void saveBillingsToFile() {
-        csvFileService.saveBillings(billings);
+        PersistenceScheduler.getInstance().markDirty(PersistenceScheduler.Target.BILLINGS);
     }
 
     public String getCustomerNameByPhone(String phoneNumber) {
-        Customer customer = customerServices.getCustomers().stream()
-                .filter(c -> c.getPhoneNumber().equals(phoneNumber))
-                .findFirst()
-                .orElse(null);
-        return customer != null ? customer.getName() : "Unknown";
+        return customerServices.getCustomerNameByPhone(phoneNumber);
     }
 }
\ No newline at end of file
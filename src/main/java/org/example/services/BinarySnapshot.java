@@ -0,0 +1,243 @@
+package org.example.services;
+
+import org.example.models.Billing;
+import org.example.models.Car;
+import org.example.models.Customer;
+import org.example.models.Money;
+import org.example.models.TravelHistory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary image of all entities, written on clean shutdown and read before the CSV files.
+ *
+ * Layout: magic, version, the size and mtime of every CSV file at write time, a dictionary of
+ * customer ids, car ids and categories, then the car, customer (with travel history) and billing
+ * sections. Counts and strings are length-prefixed, dictionary references are varints,
+ * timestamps are epoch seconds and money is stored as cents in a long.
+ */
+class BinarySnapshot {
+    private static final int MAGIC = 0x43525331; // "CRS1"
+    private static final int VERSION = 1;
+    private static final long ACTIVE = Long.MIN_VALUE; // return time of an active rental
+
+    final List<Car> cars;
+    final List<Customer> customers;
+    final List<Billing> billings;
+
+    private BinarySnapshot(List<Car> cars, List<Customer> customers, List<Billing> billings) {
+        this.cars = cars;
+        this.customers = customers;
+        this.billings = billings;
+    }
+
+    // Write to a temp file and move it into place so a crash never leaves a half-written snapshot
+    static void write(Path snapshotFile, List<Path> csvFiles,
+                      List<Car> cars, List<Customer> customers, List<Billing> billings) throws IOException {
+        Path tempFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tempFile), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            out.writeInt(csvFiles.size());
+            for (Path csvFile : csvFiles) {
+                out.writeLong(fileSize(csvFile));
+                out.writeLong(lastModified(csvFile));
+            }
+
+            // Build the dictionary of repeated ids
+            Map<String, Integer> dictionary = new HashMap<>();
+            List<String> entries = new ArrayList<>();
+            for (Car car : cars) {
+                intern(dictionary, entries, car.getCarId());
+                intern(dictionary, entries, car.getCategory());
+            }
+            for (Customer customer : customers) {
+                intern(dictionary, entries, customer.getPhoneNumber());
+                for (TravelHistory history : customer.getTravelHistories()) {
+                    intern(dictionary, entries, history.getCarId());
+                }
+            }
+            for (Billing billing : billings) {
+                intern(dictionary, entries, billing.getCustomerId());
+                intern(dictionary, entries, billing.getCarId());
+            }
+
+            writeVarInt(out, entries.size());
+            for (String entry : entries) {
+                out.writeUTF(entry);
+            }
+
+            writeVarInt(out, cars.size());
+            for (Car car : cars) {
+                writeVarInt(out, dictionary.get(car.getCarId()));
+                out.writeUTF(car.getModel());
+                out.writeBoolean(car.isAvailable());
+                out.writeLong(car.getHourlyRate().getCents());
+                writeVarInt(out, dictionary.get(car.getCategory()));
+            }
+
+            writeVarInt(out, customers.size());
+            for (Customer customer : customers) {
+                writeVarInt(out, dictionary.get(customer.getPhoneNumber()));
+                out.writeUTF(customer.getName());
+                out.writeUTF(customer.getPassword());
+
+                List<TravelHistory> histories = customer.getTravelHistories();
+                writeVarInt(out, histories.size());
+                for (TravelHistory history : histories) {
+                    writeVarInt(out, dictionary.get(history.getCarId()));
+                    out.writeLong(toEpochSecond(history.getRentTime()));
+                    out.writeLong(history.getReturnTime() != null ? toEpochSecond(history.getReturnTime()) : ACTIVE);
+                }
+            }
+
+            writeVarInt(out, billings.size());
+            for (Billing billing : billings) {
+                out.writeUTF(billing.getBillId());
+                writeVarInt(out, dictionary.get(billing.getCustomerId()));
+                writeVarInt(out, dictionary.get(billing.getCarId()));
+                out.writeLong(billing.getHourlyRate().getCents());
+                out.writeLong(billing.getAdvancePayment().getCents());
+                out.writeLong(billing.getFinalAmount().getCents());
+                out.writeLong(toEpochSecond(billing.getBillingTime()));
+                out.writeBoolean(billing.isPaid());
+            }
+        }
+
+        Files.move(tempFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Read the snapshot, or return null if it is missing, unreadable or older than any CSV file
+    static BinarySnapshot read(Path snapshotFile, List<Path> csvFiles) {
+        if (!Files.exists(snapshotFile)) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(snapshotFile), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+
+            // Stale if any CSV file changed since the snapshot was written
+            if (in.readInt() != csvFiles.size()) {
+                return null;
+            }
+            for (Path csvFile : csvFiles) {
+                if (in.readLong() != fileSize(csvFile) || in.readLong() != lastModified(csvFile)) {
+                    return null;
+                }
+            }
+
+            String[] dictionary = new String[readVarInt(in)];
+            for (int i = 0; i < dictionary.length; i++) {
+                dictionary[i] = in.readUTF();
+            }
+
+            int carCount = readVarInt(in);
+            List<Car> cars = new ArrayList<>(carCount);
+            for (int i = 0; i < carCount; i++) {
+                String carId = dictionary[readVarInt(in)];
+                String model = in.readUTF();
+                boolean availability = in.readBoolean();
+                Money hourlyRate = Money.ofCents(in.readLong());
+                String category = dictionary[readVarInt(in)];
+                cars.add(new Car(carId, model, availability, hourlyRate, category));
+            }
+
+            int customerCount = readVarInt(in);
+            List<Customer> customers = new ArrayList<>(customerCount);
+            for (int i = 0; i < customerCount; i++) {
+                String phoneNumber = dictionary[readVarInt(in)];
+                Customer customer = new Customer(phoneNumber, in.readUTF(), in.readUTF());
+
+                int historyCount = readVarInt(in);
+                List<TravelHistory> histories = new ArrayList<>(historyCount);
+                for (int j = 0; j < historyCount; j++) {
+                    String carId = dictionary[readVarInt(in)];
+                    LocalDateTime rentTime = fromEpochSecond(in.readLong());
+                    long returnSecond = in.readLong();
+                    LocalDateTime returnTime = returnSecond == ACTIVE ? null : fromEpochSecond(returnSecond);
+                    histories.add(new TravelHistory(phoneNumber, carId, rentTime, returnTime));
+                }
+                customer.addTravelHistories(histories);
+                customers.add(customer);
+            }
+
+            int billingCount = readVarInt(in);
+            List<Billing> billings = new ArrayList<>(billingCount);
+            for (int i = 0; i < billingCount; i++) {
+                String billId = in.readUTF();
+                String customerId = dictionary[readVarInt(in)];
+                String carId = dictionary[readVarInt(in)];
+                Money hourlyRate = Money.ofCents(in.readLong());
+                Money advancePayment = Money.ofCents(in.readLong());
+                Money finalAmount = Money.ofCents(in.readLong());
+                LocalDateTime billingTime = fromEpochSecond(in.readLong());
+                boolean isPaid = in.readBoolean();
+                billings.add(new Billing(billId, customerId, carId, hourlyRate,
+                        advancePayment, finalAmount, billingTime, isPaid));
+            }
+
+            return new BinarySnapshot(cars, customers, billings);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring unreadable snapshot: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void intern(Map<String, Integer> dictionary, List<String> entries, String value) {
+        if (!dictionary.containsKey(value)) {
+            dictionary.put(value, entries.size());
+            entries.add(value);
+        }
+    }
+
+    private static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in snapshot");
+    }
+
+    private static long toEpochSecond(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static LocalDateTime fromEpochSecond(long second) {
+        return LocalDateTime.ofEpochSecond(second, 0, ZoneOffset.UTC);
+    }
+
+    private static long fileSize(Path file) throws IOException {
+        return Files.exists(file) ? Files.size(file) : -1;
+    }
+
+    private static long lastModified(Path file) throws IOException {
+        return Files.exists(file) ? Files.getLastModifiedTime(file).toMillis() : -1;
+    }
+}
@@ -3,14 +3,25 @@ package org.example.services;
 import org.example.models.*;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class CSVFileService {
     private static final String DATA_DIRECTORY = "data";
@@ -18,9 +29,43 @@ public class CSVFileService {
     private static final String CARS_FILE = "cars.csv";
     private static final String TRAVEL_HISTORY_FILE = "travel_history.csv";
     private static final String BILLINGS_FILE = "billings.csv"; // New file for billings
+    private static final String TRAVEL_HISTORY_SEGMENTS = "travel_history";
+    private static final String BILLING_SEGMENTS = "billings";
+    private static final String JOURNAL_FILE = "journal.log";
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+    private static final long MIN_CHUNK_BYTES = 4L << 20; // smallest history range parsed as one task
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
-    private static CSVFileService instance;
+    // Journal mode: mutations are appended to journal.log instead of rewriting the CSV files.
+    // Enable with -Dcarrental.journal=true
+    private static final boolean JOURNAL_MODE = Boolean.getBoolean("carrental.journal");
+    private static final int CHECKPOINT_THRESHOLD = 1000; // journal records before the CSVs are rewritten
+    // Gzip closed monthly segments, enable with -Dcarrental.segments.gzip=true
+    private static final boolean COMPRESS_CLOSED_SEGMENTS = Boolean.getBoolean("carrental.segments.gzip");
+    // Lazy travel history: only row offsets are loaded at startup, each customer's list is read on
+    // first access. Needs the history in segments; enable with -Dcarrental.lazyHistory=true
+    private static final boolean LAZY_HISTORY = Boolean.getBoolean("carrental.lazyHistory");
+
+    // Journal record types
+    private static final String CUSTOMER_REGISTERED = "REG";
+    private static final String PASSWORD_CHANGED = "PWD";
+    private static final String CAR_RENTED = "RENT";
+    private static final String CAR_RETURNED = "RET";
+    private static final String BILLING_CREATED = "BILL";
+    private static final String BILLING_PAID = "PAID";
+
+    private static volatile CSVFileService instance;
+    private SegmentStore historyStore;
+    private SegmentStore billingStore;
+    private LazyTravelHistoryStore lazyHistory; // set once customers are switched to lazy history
+    private BinarySnapshot snapshot; // read once, used instead of the CSV files when still fresh
+    private boolean snapshotChecked;
+    private WriteAheadJournal journal;
+    private List<String[]> journalRecords; // records to replay, read once at startup
+    // Journal sequence each CSV file was last rewritten at
+    private long carsSavedSeq;
+    private long customersSavedSeq;
+    private long billingsSavedSeq;
 
     private CSVFileService() {
         // Create data directory if it doesn't exist
@@ -33,43 +78,81 @@ public class CSVFileService {
             System.err.println("Error creating data directory: " + e.getMessage());
             e.printStackTrace();
         }
+
+        openSegmentStores();
+
+        // Open the journal in journal mode, or when a previous run left records behind
+        Path journalFile = Paths.get(DATA_DIRECTORY, JOURNAL_FILE);
+        if (JOURNAL_MODE || Files.exists(journalFile)) {
+            try {
+                journal = new WriteAheadJournal(journalFile);
+            } catch (IOException e) {
+                System.err.println("Error opening journal: " + e.getMessage());
+            }
+        }
+    }
+
+    private void openSegmentStores() {
+        historyStore = new SegmentStore(Paths.get(DATA_DIRECTORY, TRAVEL_HISTORY_SEGMENTS),
+                "CustomerId,CarId,RentTime,ReturnTime", COMPRESS_CLOSED_SEGMENTS);
+        billingStore = new SegmentStore(Paths.get(DATA_DIRECTORY, BILLING_SEGMENTS),
+                "BillId,CustomerId,CarId,HourlyRate,AdvancePayment,FinalAmount,BillingTime,IsPaid",
+                COMPRESS_CLOSED_SEGMENTS);
+        lazyHistory = null;
     }
 
     public static CSVFileService getInstance() {
-        if (instance == null) {
-            instance = new CSVFileService();
+        CSVFileService result = instance;
+        if (result == null) {
+            synchronized (CSVFileService.class) {
+                result = instance;
+                if (result == null) {
+                    instance = result = new CSVFileService();
+                }
+            }
         }
-        return instance;
+        return result;
     }
 
     // Load customers from CSV file
     public List<Customer> loadCustomers() {
         // Existing code remains the same
+        BinarySnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            replayJournalOnCustomers(snapshot.customers);
+            return snapshot.customers;
+        }
+
         List<Customer> customers = new ArrayList<>();
         Path customerFile = Paths.get(DATA_DIRECTORY, CUSTOMERS_FILE);
 
         if (!Files.exists(customerFile)) {
+            replayJournalOnCustomers(customers);
             return customers;
         }
 
-        try (BufferedReader reader = Files.newBufferedReader(customerFile)) {
+        try (MappedCsvReader reader = MappedCsvReader.open(customerFile)) {
             // Skip header line
-            reader.readLine();
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts.length >= 3) {
-                    String phoneNumber = parts[0];
-                    String name = parts[1];
-                    String password = parts[2];
+            reader.skipLine();
+
+            while (reader.nextRow()) {
+                if (reader.fieldCount() >= 3) {
+                    String phoneNumber = reader.getString(0);
+                    String name = reader.getString(1);
+                    String password = reader.getString(2);
                     customers.add(new Customer(phoneNumber, name, password));
                 }
             }
 
-            // Load travel histories for each customer
-            loadTravelHistories(customers);
+            // Load travel histories for each customer, or just their offsets in lazy mode
+            if (isLazyHistory()) {
+                lazyHistory = new LazyTravelHistoryStore(historyStore, this::formatTravelHistoryRow);
+                lazyHistory.attach(customers);
+            } else {
+                loadTravelHistories(customers);
+            }
 
+            replayJournalOnCustomers(customers);
             return customers;
         } catch (IOException e) {
             System.err.println("Error loading customers from CSV: " + e.getMessage());
@@ -79,44 +162,50 @@ public class CSVFileService {
 
     // Load cars from CSV file - updated to include hourly rate and category
     public List<Car> loadCars() {
+        BinarySnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            replayJournalOnCars(snapshot.cars);
+            return snapshot.cars;
+        }
+
         List<Car> cars = new ArrayList<>();
         Path carFile = Paths.get(DATA_DIRECTORY, CARS_FILE);
 
         if (!Files.exists(carFile)) {
+            replayJournalOnCars(cars);
             return cars;
         }
 
-        try (BufferedReader reader = Files.newBufferedReader(carFile)) {
+        try (MappedCsvReader reader = MappedCsvReader.open(carFile)) {
             // Skip header line
-            reader.readLine();
+            reader.skipLine();
 
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts.length >= 3) {
-                    String carId = parts[0];
-                    String model = parts[1];
-                    boolean availability = Boolean.parseBoolean(parts[2]);
+            while (reader.nextRow()) {
+                if (reader.fieldCount() >= 3) {
+                    String carId = reader.getString(0);
+                    String model = reader.getString(1);
+                    boolean availability = reader.getBoolean(2);
 
                     // Check if we have hourly rate and category in the file
-                    double hourlyRate = 10.0; // Default
+                    Money hourlyRate = Car.DEFAULT_HOURLY_RATE; // Default
                     String category = "Standard"; // Default
 
-                    if (parts.length >= 4) {
+                    if (reader.fieldCount() >= 4) {
                         try {
-                            hourlyRate = Double.parseDouble(parts[3]);
+                            hourlyRate = reader.getMoney(3);
                         } catch (NumberFormatException e) {
-                            System.err.println("Invalid hourly rate for car " + carId + ": " + parts[3]);
+                            System.err.println("Invalid hourly rate for car " + carId + ": " + reader.getString(3));
                         }
                     }
 
-                    if (parts.length >= 5) {
-                        category = parts[4];
+                    if (reader.fieldCount() >= 5) {
+                        category = reader.getString(4);
                     }
 
                     cars.add(new Car(carId, model, availability, hourlyRate, category));
                 }
             }
+            replayJournalOnCars(cars);
             return cars;
         } catch (IOException e) {
             System.err.println("Error loading cars from CSV: " + e.getMessage());
@@ -124,135 +213,430 @@ public class CSVFileService {
         }
     }
 
-    // Load billings from CSV file
+    // Load billings from the monthly segments, or from the single legacy file before the first save
     public List<Billing> loadBillings() {
-        List<Billing> billings = new ArrayList<>();
-        Path billingFile = Paths.get(DATA_DIRECTORY, BILLINGS_FILE);
+        BinarySnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            replayJournalOnBillings(snapshot.billings);
+            return snapshot.billings;
+        }
 
-        if (!Files.exists(billingFile)) {
-            return billings;
+        List<Billing> billings = new ArrayList<>();
+        try {
+            if (billingStore.exists()) {
+                for (SegmentStore.Segment segment : billingStore.segments()) {
+                    try (MappedCsvReader reader = billingStore.openReader(segment)) {
+                        readBillings(reader, billings, null, null);
+                    }
+                }
+            } else {
+                Path billingFile = Paths.get(DATA_DIRECTORY, BILLINGS_FILE);
+                if (Files.exists(billingFile)) {
+                    try (MappedCsvReader reader = MappedCsvReader.open(billingFile)) {
+                        readBillings(reader, billings, null, null);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error loading billings from CSV: " + e.getMessage());
         }
 
-        try (BufferedReader reader = Files.newBufferedReader(billingFile)) {
-            // Skip header line
-            reader.readLine();
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts.length >= 8) {
-                    try {
-                        String billId = parts[0];
-                        String customerId = parts[1];
-                        String carId = parts[2];
-                        double hourlyRate = Double.parseDouble(parts[3]);
-                        double advancePayment = Double.parseDouble(parts[4]);
-                        double finalAmount = Double.parseDouble(parts[5]);
-                        LocalDateTime billingTime = LocalDateTime.parse(parts[6], DATE_FORMATTER);
-                        boolean isPaid = Boolean.parseBoolean(parts[7]);
-
-                        Billing billing = new Billing(billId, customerId, carId, hourlyRate,
-                                advancePayment, finalAmount, billingTime, isPaid);
-                        billings.add(billing);
-                    } catch (NumberFormatException | DateTimeParseException e) {
-                        System.err.println("Error parsing billing record: " + line);
+        replayJournalOnBillings(billings);
+        return billings;
+    }
+
+    // Saved billings with a billing time in [from, to); only the segments overlapping the range are
+    // read. Billings still waiting for the persistence thread or only in the journal are not seen;
+    // the running services keep every billing in memory and filter that instead
+    public List<Billing> loadBillingsBetween(LocalDateTime from, LocalDateTime to) {
+        List<Billing> billings = new ArrayList<>();
+        try {
+            if (billingStore.exists()) {
+                for (SegmentStore.Segment segment : billingStore.segmentsOverlapping(from, to)) {
+                    try (MappedCsvReader reader = billingStore.openReader(segment)) {
+                        readBillings(reader, billings, from, to);
+                    }
+                }
+            } else {
+                Path billingFile = Paths.get(DATA_DIRECTORY, BILLINGS_FILE);
+                if (Files.exists(billingFile)) {
+                    try (MappedCsvReader reader = MappedCsvReader.open(billingFile)) {
+                        readBillings(reader, billings, from, to);
                     }
                 }
             }
-            return billings;
         } catch (IOException e) {
             System.err.println("Error loading billings from CSV: " + e.getMessage());
-            return billings;
         }
+        return billings;
     }
 
-    // Save cars to CSV file - updated to include hourly rate and category
-    public void saveCars(List<Car> cars) {
+    // Read billing rows, keeping those with a billing time in [from, to) when a range is given
+    private void readBillings(MappedCsvReader reader, List<Billing> billings,
+                              LocalDateTime from, LocalDateTime to) throws IOException {
+        // Skip header line
+        reader.skipLine();
+
+        while (reader.nextRow()) {
+            if (reader.fieldCount() >= 8) {
+                try {
+                    LocalDateTime billingTime = reader.getDateTime(6);
+                    if (from != null && (billingTime.isBefore(from) || !billingTime.isBefore(to))) {
+                        continue;
+                    }
+
+                    String billId = reader.getString(0);
+                    String customerId = reader.getString(1);
+                    String carId = reader.getString(2);
+                    Money hourlyRate = reader.getMoney(3);
+                    Money advancePayment = reader.getMoney(4);
+                    Money finalAmount = reader.getMoney(5);
+                    boolean isPaid = reader.getBoolean(7);
+
+                    Billing billing = new Billing(billId, customerId, carId, hourlyRate,
+                            advancePayment, finalAmount, billingTime, isPaid);
+                    billings.add(billing);
+                } catch (NumberFormatException | DateTimeParseException e) {
+                    System.err.println("Error parsing billing record: " + reader.currentLine());
+                }
+            }
+        }
+    }
+
+    // Save cars to CSV file - updated to include hourly rate and category; false if it could not be written
+    public boolean saveCars(List<Car> cars) {
         Path carFile = Paths.get(DATA_DIRECTORY, CARS_FILE);
+        long seq = journalSeq();
+        cars = snapshot(cars);
 
         try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(carFile))) {
             // Write header
             writer.println("CarId,Model,Available,HourlyRate,Category");
 
             // Write car data
+            StringBuilder row = new StringBuilder(128);
             for (Car car : cars) {
-                writer.printf("%s,%s,%s,%.2f,%s%n",
-                        car.getCarId(),
-                        car.getModel(),
-                        car.isAvailable(),
-                        car.getHourlyRate(),
-                        car.getCategory());
+                row.setLength(0);
+                row.append(car.getCarId()).append(',')
+                        .append(escapeCsv(car.getModel())).append(',')
+                        .append(car.isAvailable()).append(',');
+                car.getHourlyRate().appendTo(row).append(',')
+                        .append(escapeCsv(car.getCategory()));
+                writer.println(row);
+            }
+            // PrintWriter keeps write errors to itself
+            if (writer.checkError()) {
+                throw new IOException("could not write " + carFile);
             }
         } catch (IOException e) {
             System.err.println("Error saving cars to CSV: " + e.getMessage());
+            return false;
         }
+        carsSavedSeq = seq;
+        truncateJournalIfCheckpointed();
+        return true;
     }
 
-    // Save billings to CSV file
-    public void saveBillings(List<Billing> billings) {
-        Path billingFile = Paths.get(DATA_DIRECTORY, BILLINGS_FILE);
+    // Save billings into monthly segments by billing time.
+    // Closed months are left untouched; a past month closes once all of its bills are paid.
+    // False if they could not be written.
+    public boolean saveBillings(List<Billing> billings) {
+        long seq = journalSeq();
+        billings = snapshot(billings);
 
-        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(billingFile))) {
-            // Write header
-            writer.println("BillId,CustomerId,CarId,HourlyRate,AdvancePayment,FinalAmount,BillingTime,IsPaid");
-
-            // Write billing data
-            for (Billing billing : billings) {
-                writer.printf("%s,%s,%s,%.2f,%.2f,%.2f,%s,%s%n",
-                        billing.getBillId(),
-                        billing.getCustomerId(),
-                        billing.getCarId(),
-                        billing.getHourlyRate(),
-                        billing.getAdvancePayment(),
-                        billing.getFinalAmount(),
-                        billing.getBillingTime().format(DATE_FORMATTER),
-                        billing.isPaid());
-            }
+        try {
+            saveSegments(billingStore, billings, Billing::getBillingTime, this::formatBillingRow,
+                    billing -> !billing.isPaid());
+            Files.deleteIfExists(Paths.get(DATA_DIRECTORY, BILLINGS_FILE)); // migrated to segments
         } catch (IOException e) {
             System.err.println("Error saving billings to CSV: " + e.getMessage());
+            return false;
         }
+        billingsSavedSeq = seq;
+        truncateJournalIfCheckpointed();
+        return true;
     }
 
-    // Load travel histories from CSV file
+    // One row of the billings file, without the line break
+    public String formatBillingRow(Billing billing) {
+        StringBuilder row = new StringBuilder(96);
+        row.append(billing.getBillId()).append(',')
+                .append(billing.getCustomerId()).append(',')
+                .append(billing.getCarId()).append(',');
+        billing.getHourlyRate().appendTo(row).append(',');
+        billing.getAdvancePayment().appendTo(row).append(',');
+        billing.getFinalAmount().appendTo(row).append(',');
+        DATE_FORMATTER.formatTo(billing.getBillingTime(), row);
+        return row.append(',').append(billing.isPaid()).toString();
+    }
+
+    // Group items by month, rewrite every month that is not closed yet and close past months
+    // that no longer hold anything that can change
+    private <T> void saveSegments(SegmentStore store, List<T> items, Function<T, LocalDateTime> timeOf,
+                                  Function<T, String> formatRow, Predicate<T> canChange) throws IOException {
+        Map<YearMonth, List<T>> itemsByMonth = new TreeMap<>();
+        for (T item : items) {
+            itemsByMonth.computeIfAbsent(YearMonth.from(timeOf.apply(item)), month -> new ArrayList<>()).add(item);
+        }
+
+        YearMonth currentMonth = YearMonth.now();
+        for (Map.Entry<YearMonth, List<T>> entry : itemsByMonth.entrySet()) {
+            YearMonth month = entry.getKey();
+            if (store.isClosed(month)) {
+                continue;
+            }
+
+            List<String> rows = new ArrayList<>(entry.getValue().size());
+            LocalDateTime minTime = null;
+            LocalDateTime maxTime = null;
+            boolean settled = true;
+            for (T item : entry.getValue()) {
+                rows.add(formatRow.apply(item));
+                LocalDateTime time = timeOf.apply(item);
+                minTime = minTime == null || time.isBefore(minTime) ? time : minTime;
+                maxTime = maxTime == null || time.isAfter(maxTime) ? time : maxTime;
+                settled &= !canChange.test(item);
+            }
+
+            store.writeSegment(month, rows, minTime, maxTime);
+            if (settled && month.isBefore(currentMonth)) {
+                store.closeSegment(month);
+            }
+        }
+        store.saveIndex();
+    }
+
+    // Load travel histories from the monthly segments, or from the single legacy file before the
+    // first save. Plain files are split into newline-aligned byte ranges that are parsed in
+    // parallel on the common fork-join pool; chunks are then merged in file order, so each
+    // customer's list keeps the original row order.
     private void loadTravelHistories(List<Customer> customers) {
-        Path historyFile = Paths.get(DATA_DIRECTORY, TRAVEL_HISTORY_FILE);
+        Map<String, Customer> customerMap = customers.stream()
+                .collect(Collectors.toMap(Customer::getPhoneNumber, c -> c));
 
-        if (!Files.exists(historyFile)) {
-            return;
+        for (Map<String, List<TravelHistory>> chunk : readTravelHistoryChunks(historyStore.segments())) {
+            for (Map.Entry<String, List<TravelHistory>> entry : chunk.entrySet()) {
+                Customer customer = customerMap.get(entry.getKey());
+                if (customer != null) {
+                    customer.addTravelHistories(entry.getValue());
+                }
+            }
+        }
+    }
+
+    // Saved travel history rented in [from, to), optionally for one customer; only the segments
+    // overlapping the range are read. Unsaved rows are only in the customers' lists in memory, see
+    // CustomerServices.getTravelHistoriesBetween
+    public List<TravelHistory> loadTravelHistoriesBetween(String customerId, LocalDateTime from, LocalDateTime to) {
+        List<TravelHistory> histories = new ArrayList<>();
+        for (Map<String, List<TravelHistory>> chunk : readTravelHistoryChunks(historyStore.segmentsOverlapping(from, to))) {
+            for (Map.Entry<String, List<TravelHistory>> entry : chunk.entrySet()) {
+                if (customerId != null && !customerId.equals(entry.getKey())) {
+                    continue;
+                }
+                for (TravelHistory history : entry.getValue()) {
+                    if (!history.getRentTime().isBefore(from) && history.getRentTime().isBefore(to)) {
+                        histories.add(history);
+                    }
+                }
+            }
         }
+        return histories;
+    }
+
+    // Parse the given segments (or the legacy file) in parallel, returning chunks in file order
+    private List<Map<String, List<TravelHistory>>> readTravelHistoryChunks(List<SegmentStore.Segment> segments) {
+        List<FileChannel> channels = new ArrayList<>();
+        try {
+            List<Supplier<Map<String, List<TravelHistory>>>> tasks = new ArrayList<>();
 
-        try (BufferedReader reader = Files.newBufferedReader(historyFile)) {
+            if (historyStore.exists()) {
+                for (SegmentStore.Segment segment : segments) {
+                    if (segment.compressed) {
+                        tasks.add(() -> parseCompressedTravelHistory(segment));
+                    } else {
+                        addTravelHistoryTasks(historyStore.path(segment), channels, tasks);
+                    }
+                }
+            } else {
+                Path historyFile = Paths.get(DATA_DIRECTORY, TRAVEL_HISTORY_FILE);
+                if (Files.exists(historyFile)) {
+                    addTravelHistoryTasks(historyFile, channels, tasks);
+                }
+            }
+
+            return tasks.parallelStream()
+                    .map(Supplier::get)
+                    .collect(Collectors.toList());
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Error loading travel histories from CSV: " + e.getMessage());
+            return new ArrayList<>();
+        } finally {
+            for (FileChannel channel : channels) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    System.err.println("Error closing travel history file: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void addTravelHistoryTasks(Path file, List<FileChannel> channels,
+                                       List<Supplier<Map<String, List<TravelHistory>>>> tasks) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        channels.add(channel);
+        for (long[] range : splitIntoRowRanges(channel)) {
+            tasks.add(() -> parseTravelHistoryChunk(channel, range[0], range[1]));
+        }
+    }
+
+    private Map<String, List<TravelHistory>> parseCompressedTravelHistory(SegmentStore.Segment segment) {
+        try (MappedCsvReader reader = historyStore.openReader(segment)) {
             // Skip header line
-            reader.readLine();
-
-            Map<String, Customer> customerMap = customers.stream()
-                    .collect(Collectors.toMap(Customer::getPhoneNumber, c -> c));
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts.length >= 4) {
-                    String customerId = parts[0];
-                    String carId = parts[1];
-                    LocalDateTime rentTime = LocalDateTime.parse(parts[2], DATE_FORMATTER);
-                    LocalDateTime returnTime = parts[3].equals("Active") ?
-                            null : LocalDateTime.parse(parts[3], DATE_FORMATTER);
-
-                    Customer customer = customerMap.get(customerId);
-                    if (customer != null) {
-                        TravelHistory history = new TravelHistory(customerId, carId, rentTime, returnTime);
-                        customer.addTravelHistory(history);
+            reader.skipLine();
+            return parseTravelHistoryRows(reader);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Parse one byte range of the history file, grouping rows by customer in file order
+    private Map<String, List<TravelHistory>> parseTravelHistoryChunk(FileChannel channel, long start, long end) {
+        try (MappedCsvReader reader = new MappedCsvReader(channel, start, end)) {
+            return parseTravelHistoryRows(reader);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Map<String, List<TravelHistory>> parseTravelHistoryRows(MappedCsvReader reader) throws IOException {
+        Map<String, List<TravelHistory>> historiesByCustomer = new HashMap<>();
+        while (reader.nextRow()) {
+            if (reader.fieldCount() >= 4) {
+                String customerId = reader.getString(0);
+                String carId = reader.getString(1);
+                LocalDateTime rentTime = reader.getDateTime(2);
+                LocalDateTime returnTime = reader.fieldEquals(3, "Active") ?
+                        null : reader.getDateTime(3);
+
+                historiesByCustomer.computeIfAbsent(customerId, id -> new ArrayList<>())
+                        .add(new TravelHistory(customerId, carId, rentTime, returnTime));
+            }
+        }
+        return historiesByCustomer;
+    }
+
+    // Split the rows after the header into ranges that each start right after a newline. The file
+    // is cut into pieces that are scanned in parallel for the first newline after their start. A
+    // newline inside a quoted field does not end a row, so if any piece holds a quote byte the cuts
+    // can't be trusted and the file is scanned serially, tracking quotes, instead. History rows
+    // are ids and times and are never quoted, so that only happens to hand-edited files
+    private List<long[]> splitIntoRowRanges(FileChannel channel) throws IOException {
+        long size = channel.size();
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        long chunkSize = Math.max(MIN_CHUNK_BYTES, size / (parallelism * 4L) + 1);
+        int pieces = (int) ((size + chunkSize - 1) / chunkSize);
+
+        long[] rowStarts;
+        try {
+            rowStarts = IntStream.range(0, pieces).parallel()
+                    .mapToLong(piece -> firstRowStart(channel, piece * chunkSize, Math.min(size, (piece + 1) * chunkSize)))
+                    .toArray();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        List<long[]> ranges = new ArrayList<>();
+        for (int piece = 0; piece < pieces; piece++) {
+            if (rowStarts[piece] < 0) {
+                return splitIntoQuotedRowRanges(channel, chunkSize);
+            }
+            // A row longer than a piece makes two pieces find the same row start
+            if (rowStarts[piece] < size && (ranges.isEmpty() || rowStarts[piece] > ranges.get(ranges.size() - 1)[0])) {
+                if (!ranges.isEmpty()) {
+                    ranges.get(ranges.size() - 1)[1] = rowStarts[piece];
+                }
+                ranges.add(new long[]{rowStarts[piece], size});
+            }
+        }
+        return ranges;
+    }
+
+    // Offset just after the first newline at or after start (size if there is none), or -1 if the
+    // bytes in [start, end) hold a quote
+    private static long firstRowStart(FileChannel channel, long start, long end) {
+        try {
+            long size = channel.size();
+            long rowStart = -1;
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            for (long position = start; position < size && (position < end || rowStart < 0); ) {
+                buffer.clear();
+                int read = channel.read(buffer, position);
+                if (read <= 0) {
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    byte b = buffer.get(i);
+                    if (b == '"' && position + i < end) {
+                        return -1;
+                    }
+                    if (b == '\n' && rowStart < 0) {
+                        rowStart = position + i + 1;
+                        if (position + i >= end) {
+                            return rowStart;
+                        }
                     }
                 }
+                position += read;
             }
+            return rowStart < 0 ? size : rowStart;
         } catch (IOException e) {
-            System.err.println("Error loading travel histories from CSV: " + e.getMessage());
+            throw new UncheckedIOException(e);
         }
     }
 
-    // Save customers to CSV file
-    public void saveCustomers(List<Customer> customers) {
+    // The serial split: one pass from the start that knows which newlines are inside quotes
+    private List<long[]> splitIntoQuotedRowRanges(FileChannel channel, long chunkSize) throws IOException {
+        long size = channel.size();
+        List<long[]> ranges = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        boolean quoted = false;
+        long start = -1; // start of the current range, -1 until the header has ended
+        long position = 0;
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = buffer.get(i);
+                // An escaped quote ("") flips the state twice
+                if (b == '"') {
+                    quoted = !quoted;
+                } else if (b == '\n' && !quoted) {
+                    long lineStart = position + i + 1;
+                    if (start < 0) {
+                        start = lineStart;
+                    } else if (lineStart - start >= chunkSize) {
+                        ranges.add(new long[]{start, lineStart});
+                        start = lineStart;
+                    }
+                }
+            }
+            position += read;
+        }
+        if (start >= 0 && start < size) {
+            ranges.add(new long[]{start, size});
+        }
+        return ranges;
+    }
+
+    // Save customers to CSV file; false if it could not be written
+    public boolean saveCustomers(List<Customer> customers) {
         Path customerFile = Paths.get(DATA_DIRECTORY, CUSTOMERS_FILE);
+        long seq = journalSeq();
+        customers = snapshot(customers);
 
         try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(customerFile))) {
             // Write header
@@ -262,16 +646,23 @@ public class CSVFileService {
             for (Customer customer : customers) {
                 writer.printf("%s,%s,%s%n",
                         customer.getPhoneNumber(),
-                        customer.getName(),
+                        escapeCsv(customer.getName()),
                         customer.getPassword());
             }
+            if (writer.checkError()) {
+                throw new IOException("could not write " + customerFile);
+            }
 
             // Save travel histories
             saveTravelHistories(customers);
 
         } catch (IOException e) {
             System.err.println("Error saving customers to CSV: " + e.getMessage());
+            return false;
         }
+        customersSavedSeq = seq;
+        truncateJournalIfCheckpointed();
+        return true;
     }
 
     // Save cars to CSV file
@@ -294,66 +685,386 @@ public class CSVFileService {
 //        }
 //    }
 
-    // Save travel histories to CSV file
-    private void saveTravelHistories(List<Customer> customers) {
-        Path historyFile = Paths.get(DATA_DIRECTORY, TRAVEL_HISTORY_FILE);
+    // Save travel histories into monthly segments by rent time.
+    // Closed months are left untouched; a past month closes once all of its rentals are returned.
+    private void saveTravelHistories(List<Customer> customers) throws IOException {
+        if (lazyHistory != null) {
+            lazyHistory.save(customers); // only the lists in memory are written
+            return;
+        }
 
-        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(historyFile))) {
-            // Write header
-            writer.println("CustomerId,CarId,RentTime,ReturnTime");
+        List<TravelHistory> histories = new ArrayList<>();
+        for (Customer customer : customers) {
+            histories.addAll(customer.getTravelHistories());
+        }
 
-            // Write travel history data
-            for (Customer customer : customers) {
-                for (TravelHistory history : customer.getTravelHistories()) {
-                    writer.printf("%s,%s,%s,%s%n",
-                            history.getCustomerId(),
-                            history.getCarId(),
-                            history.getRentTime().format(DATE_FORMATTER),
-                            history.getReturnTime() != null ?
-                                    history.getReturnTime().format(DATE_FORMATTER) : "Active");
-                }
+        saveSegments(historyStore, histories, TravelHistory::getRentTime, this::formatTravelHistoryRow,
+                TravelHistory::isActive);
+        Files.deleteIfExists(Paths.get(DATA_DIRECTORY, TRAVEL_HISTORY_FILE)); // migrated to segments
+    }
+
+    private String formatTravelHistoryRow(TravelHistory history) {
+        StringBuilder row = new StringBuilder(64);
+        row.append(history.getCustomerId()).append(',')
+                .append(history.getCarId()).append(',');
+        DATE_FORMATTER.formatTo(history.getRentTime(), row);
+        row.append(',');
+        if (history.getReturnTime() != null) {
+            DATE_FORMATTER.formatTo(history.getReturnTime(), row);
+        } else {
+            row.append("Active");
+        }
+        return row.toString();
+    }
+
+    // Write the binary snapshot; call after the CSV files are saved so it matches their mtimes
+    public void saveSnapshot(List<Car> cars, List<Customer> customers, List<Billing> billings) {
+        if (lazyHistory != null) {
+            return; // would load every customer's history
+        }
+        try {
+            BinarySnapshot.write(Paths.get(DATA_DIRECTORY, SNAPSHOT_FILE), csvFiles(), cars, customers, billings);
+        } catch (IOException e) {
+            System.err.println("Error saving snapshot: " + e.getMessage());
+        }
+    }
+
+    // The snapshot is only used if no CSV file changed since it was written
+    private BinarySnapshot getSnapshot() {
+        if (isLazyHistory()) {
+            return null;
+        }
+        if (!snapshotChecked) {
+            snapshotChecked = true;
+            snapshot = BinarySnapshot.read(Paths.get(DATA_DIRECTORY, SNAPSHOT_FILE), csvFiles());
+        }
+        return snapshot;
+    }
+
+    // Every data file: customers, cars, then history and billings as segments or legacy files
+    private List<Path> csvFiles() {
+        List<Path> files = new ArrayList<>();
+        files.add(Paths.get(DATA_DIRECTORY, CUSTOMERS_FILE));
+        files.add(Paths.get(DATA_DIRECTORY, CARS_FILE));
+        files.add(Paths.get(DATA_DIRECTORY, TRAVEL_HISTORY_FILE));
+        files.add(Paths.get(DATA_DIRECTORY, BILLINGS_FILE));
+        files.addAll(historyStore.files());
+        files.addAll(billingStore.files());
+        return files;
+    }
+
+    // With lazy history, the ids of customers that had an active rental at load; null when every
+    // history is in memory anyway
+    public Set<String> getCustomersWithActiveRentals() {
+        return lazyHistory != null ? lazyHistory.getCustomersWithActiveRentals() : null;
+    }
+
+    // With lazy history, stream every stored travel history row and return true; false when every
+    // history is in memory anyway
+    public boolean forEachStoredTravelHistory(Consumer<TravelHistory> action) {
+        if (lazyHistory == null) {
+            return false;
+        }
+        lazyHistory.forEachRow(action);
+        return true;
+    }
+
+    private boolean isLazyHistory() {
+        return LAZY_HISTORY && historyStore.exists();
+    }
+
+    public boolean isJournalMode() {
+        return JOURNAL_MODE && journal != null && !Repositories.usesPageStore();
+    }
+
+    // True once the journal is long enough that the CSV files should be rewritten
+    public boolean isCheckpointDue() {
+        return isJournalMode() && journal.lastSeq() >= CHECKPOINT_THRESHOLD;
+    }
+
+    public void journalCustomerRegistered(Customer customer) {
+        appendJournal(CUSTOMER_REGISTERED,
+                customer.getPhoneNumber(),
+                customer.getName(),
+                customer.getPassword());
+    }
+
+    public void journalPasswordChanged(Customer customer) {
+        appendJournal(PASSWORD_CHANGED,
+                customer.getPhoneNumber(),
+                customer.getPassword());
+    }
+
+    public void journalCarRented(TravelHistory history) {
+        appendJournal(CAR_RENTED,
+                history.getCustomerId(),
+                history.getCarId(),
+                history.getRentTime().format(DATE_FORMATTER));
+    }
+
+    public void journalCarReturned(TravelHistory history) {
+        appendJournal(CAR_RETURNED,
+                history.getCustomerId(),
+                history.getCarId(),
+                history.getRentTime().format(DATE_FORMATTER),
+                history.getReturnTime().format(DATE_FORMATTER));
+    }
+
+    public void journalBillingCreated(Billing billing) {
+        appendJournal(BILLING_CREATED,
+                billing.getBillId(),
+                billing.getCustomerId(),
+                billing.getCarId(),
+                billing.getHourlyRate().toString(),
+                billing.getAdvancePayment().toString(),
+                billing.getBillingTime().format(DATE_FORMATTER));
+    }
+
+    public void journalBillingPaid(Billing billing) {
+        appendJournal(BILLING_PAID,
+                billing.getBillId(),
+                billing.getFinalAmount().toString());
+    }
+
+    // Records are one line of tab-separated fields, the record type first
+    private void appendJournal(String type, String... fields) {
+        StringBuilder record = new StringBuilder(type);
+        for (String field : fields) {
+            record.append('\t').append(field.replace('\t', ' ').replace('\n', ' '));
+        }
+
+        try {
+            journal.append(record.toString());
+        } catch (IOException e) {
+            System.err.println("Error appending to journal: " + e.getMessage());
+        }
+    }
+
+    private long journalSeq() {
+        return journal != null ? journal.lastSeq() : 0;
+    }
+
+    // Sessions keep adding to the shared lists while a file is written, so it is written from a copy
+    // taken under the list's lock. Taken after the journal sequence is read, so every change journaled
+    // up to that sequence is in the copy
+    static <T> List<T> snapshot(List<T> list) {
+        synchronized (list) {
+            return new ArrayList<>(list);
+        }
+    }
+
+    // Once every CSV file has been rewritten past the last record, the journal holds nothing new
+    private void truncateJournalIfCheckpointed() {
+        if (journal == null) {
+            return;
+        }
+        long seq = journal.lastSeq();
+        if (seq == 0 || carsSavedSeq < seq || customersSavedSeq < seq || billingsSavedSeq < seq) {
+            return;
+        }
+
+        try {
+            if (!journal.truncateAt(seq)) {
+                return;
             }
+            carsSavedSeq = 0;
+            customersSavedSeq = 0;
+            billingsSavedSeq = 0;
+            journalRecords = null;
         } catch (IOException e) {
-            System.err.println("Error saving travel histories to CSV: " + e.getMessage());
+            System.err.println("Error truncating journal: " + e.getMessage());
         }
     }
 
-    // Create backup of all data
+    private List<String[]> getJournalRecords() {
+        if (journalRecords == null) {
+            journalRecords = new ArrayList<>();
+            if (journal != null) {
+                try {
+                    for (String record : journal.readRecords()) {
+                        journalRecords.add(record.split("\t", -1));
+                    }
+                } catch (IOException e) {
+                    System.err.println("Error reading journal: " + e.getMessage());
+                }
+            }
+        }
+        return journalRecords;
+    }
+
+    // Replay rentals and returns on car availability, in journal order
+    private void replayJournalOnCars(List<Car> cars) {
+        Map<String, Car> carMap = new HashMap<>();
+        for (Car car : cars) {
+            carMap.put(car.getCarId(), car);
+        }
+
+        for (String[] record : getJournalRecords()) {
+            if (record[0].equals(CAR_RENTED) || record[0].equals(CAR_RETURNED)) {
+                Car car = carMap.get(record[2]);
+                if (car != null) {
+                    car.setAvailability(record[0].equals(CAR_RETURNED));
+                }
+            }
+        }
+    }
+
+    // Replay registrations, password changes, rentals and returns; records already in the CSV files are skipped
+    private void replayJournalOnCustomers(List<Customer> customers) {
+        Map<String, Customer> customerMap = new HashMap<>();
+        for (Customer customer : customers) {
+            customerMap.put(customer.getPhoneNumber(), customer);
+        }
+
+        for (String[] record : getJournalRecords()) {
+            try {
+                switch (record[0]) {
+                    case CUSTOMER_REGISTERED:
+                        if (!customerMap.containsKey(record[1])) {
+                            Customer customer = new Customer(record[1], record[2], record[3]);
+                            customers.add(customer);
+                            customerMap.put(customer.getPhoneNumber(), customer);
+                        }
+                        break;
+
+                    case PASSWORD_CHANGED: {
+                        Customer customer = customerMap.get(record[1]);
+                        if (customer != null) {
+                            customer.setPassword(record[2]);
+                        }
+                        break;
+                    }
+
+                    case CAR_RENTED: {
+                        Customer customer = customerMap.get(record[1]);
+                        LocalDateTime rentTime = LocalDateTime.parse(record[3], DATE_FORMATTER);
+                        if (customer != null && findHistory(customer, record[2], rentTime) == null) {
+                            customer.addTravelHistory(new TravelHistory(record[1], record[2], rentTime, null));
+                        }
+                        break;
+                    }
+
+                    case CAR_RETURNED: {
+                        Customer customer = customerMap.get(record[1]);
+                        LocalDateTime rentTime = LocalDateTime.parse(record[3], DATE_FORMATTER);
+                        TravelHistory history = customer != null ? findHistory(customer, record[2], rentTime) : null;
+                        if (history != null && history.isActive()) {
+                            history.setReturnTime(LocalDateTime.parse(record[4], DATE_FORMATTER));
+                        }
+                        break;
+                    }
+
+                    default:
+                        break;
+                }
+            } catch (ArrayIndexOutOfBoundsException | DateTimeParseException e) {
+                System.err.println("Skipping malformed journal record: " + String.join(" ", record));
+            }
+        }
+    }
+
+    // Replay created and paid billings; records already in the CSV file are skipped
+    private void replayJournalOnBillings(List<Billing> billings) {
+        Map<String, Billing> billingMap = new HashMap<>();
+        for (Billing billing : billings) {
+            billingMap.put(billing.getBillId(), billing);
+        }
+
+        for (String[] record : getJournalRecords()) {
+            try {
+                switch (record[0]) {
+                    case BILLING_CREATED:
+                        if (!billingMap.containsKey(record[1])) {
+                            Billing billing = new Billing(record[1], record[2], record[3],
+                                    Money.parse(record[4]), Money.parse(record[5]), Money.ZERO,
+                                    LocalDateTime.parse(record[6], DATE_FORMATTER), false);
+                            billings.add(billing);
+                            billingMap.put(billing.getBillId(), billing);
+                        }
+                        break;
+
+                    case BILLING_PAID: {
+                        Billing billing = billingMap.get(record[1]);
+                        if (billing != null) {
+                            billing.setFinalAmount(Money.parse(record[2]));
+                            billing.markAsPaid();
+                        }
+                        break;
+                    }
+
+                    default:
+                        break;
+                }
+            } catch (ArrayIndexOutOfBoundsException | NumberFormatException | DateTimeParseException e) {
+                System.err.println("Skipping malformed journal record: " + String.join(" ", record));
+            }
+        }
+    }
+
+    // Journal and CSV timestamps are stored to the second
+    private TravelHistory findHistory(Customer customer, String carId, LocalDateTime rentTime) {
+        for (TravelHistory history : customer.getTravelHistories()) {
+            if (history.getCarId().equals(carId)
+                    && history.getRentTime().truncatedTo(ChronoUnit.SECONDS).equals(rentTime)) {
+                return history;
+            }
+        }
+        return null;
+    }
+
+    // Create an incremental backup of all data files, billings included.
+    // Chunks already in the store are not written again and unchanged files are not even read.
     public void createBackup(String backupName) {
-        String backupDir = DATA_DIRECTORY + "/backups/" + backupName + "_" +
+        String manifestName = backupName + "_" +
                 LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
 
+        // Make sure pending background writes are on disk first
+        if (!PersistenceScheduler.getInstance().flush()) {
+            System.err.println("Backup not created: pending changes could not be saved");
+            return;
+        }
+
         try {
-            // Create backup directory
-            Files.createDirectories(Paths.get(backupDir));
-
-            // Copy all data files to backup directory
-            Files.copy(Paths.get(DATA_DIRECTORY, CUSTOMERS_FILE),
-                    Paths.get(backupDir, CUSTOMERS_FILE));
-            Files.copy(Paths.get(DATA_DIRECTORY, CARS_FILE),
-                    Paths.get(backupDir, CARS_FILE));
-            Files.copy(Paths.get(DATA_DIRECTORY, TRAVEL_HISTORY_FILE),
-                    Paths.get(backupDir, TRAVEL_HISTORY_FILE));
-
-            System.out.println("Backup created successfully at: " + backupDir);
+            Path manifest = getBackupStore().backup(manifestName, csvFiles());
+            System.out.println("Backup created successfully at: " + manifest);
         } catch (IOException e) {
             System.err.println("Error creating backup: " + e.getMessage());
         }
     }
 
-    // Restore from backup
+    // Restore from backup: a manifest name or path, or a legacy backup directory of full copies
     public boolean restoreFromBackup(String backupPath) {
         try {
-            // Copy all backup files to main data directory
-            Files.copy(Paths.get(backupPath, CUSTOMERS_FILE),
-                    Paths.get(DATA_DIRECTORY, CUSTOMERS_FILE),
-                    java.nio.file.StandardCopyOption.REPLACE_EXISTING);
-            Files.copy(Paths.get(backupPath, CARS_FILE),
-                    Paths.get(DATA_DIRECTORY, CARS_FILE),
-                    java.nio.file.StandardCopyOption.REPLACE_EXISTING);
-            Files.copy(Paths.get(backupPath, TRAVEL_HISTORY_FILE),
-                    Paths.get(DATA_DIRECTORY, TRAVEL_HISTORY_FILE),
-                    java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+            List<Path> currentFiles = csvFiles();
+            List<Path> restored = new ArrayList<>();
+
+            Path legacyDirectory = Paths.get(backupPath);
+            if (Files.isDirectory(legacyDirectory)) {
+                // Copy all backup files to main data directory
+                for (String fileName : List.of(CUSTOMERS_FILE, CARS_FILE, TRAVEL_HISTORY_FILE, BILLINGS_FILE)) {
+                    Path backupFile = legacyDirectory.resolve(fileName);
+                    if (Files.exists(backupFile)) {
+                        Path csvFile = Paths.get(DATA_DIRECTORY, fileName);
+                        Files.copy(backupFile, csvFile, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+                        restored.add(csvFile);
+                    }
+                }
+            } else {
+                restored = getBackupStore().restore(resolveManifest(backupPath));
+            }
+
+            // Drop data files the backup does not have, such as newer monthly segments
+            for (Path file : currentFiles) {
+                if (!restored.contains(file)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            openSegmentStores();
+
+            // The restored files are the new truth, earlier journal records no longer apply
+            if (journal != null) {
+                journal.truncate();
+            }
 
             System.out.println("Restore completed successfully from: " + backupPath);
             return true;
@@ -363,13 +1074,42 @@ public class CSVFileService {
         }
     }
 
+    // Check that a backup can rebuild all of its files
+    public boolean verifyBackup(String backupPath) {
+        try {
+            List<String> problems = getBackupStore().verify(resolveManifest(backupPath));
+            if (problems.isEmpty()) {
+                System.out.println("Backup verified successfully: " + backupPath);
+                return true;
+            }
+
+            System.err.println("Backup verification failed for " + backupPath + ":");
+            for (String problem : problems) {
+                System.err.println("- " + problem);
+            }
+            return false;
+        } catch (IOException e) {
+            System.err.println("Error verifying backup: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private BackupStore getBackupStore() {
+        return new BackupStore(Paths.get(DATA_DIRECTORY), Paths.get(DATA_DIRECTORY, "backups"));
+    }
+
+    private Path resolveManifest(String backupPath) {
+        Path path = Paths.get(backupPath);
+        return Files.exists(path) ? path : getBackupStore().manifestPath(backupPath);
+    }
+
     // Helper method to escape CSV values properly
     private String escapeCsv(String value) {
         if (value == null) {
             return "";
         }
 
-        boolean needsQuoting = value.contains(",") || value.contains("\"") || value.contains("\n");
+        boolean needsQuoting = value.contains(",") || value.contains("\"") || value.contains("\n") || value.contains("\r");
         if (needsQuoting) {
             return "\"" + value.replace("\"", "\"\"") + "\"";
         }
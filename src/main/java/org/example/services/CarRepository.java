@@ -0,0 +1,18 @@
+package org.example.services;
+
+import org.example.models.Car;
+
+import java.util.List;
+
+// Storage of cars, see Repositories for the implementations
+public interface CarRepository {
+    List<Car> findAll();
+
+    Car findById(String carId);
+
+    // Insert or update one car
+    void save(Car car);
+
+    // Replace every stored car with the given list
+    void saveAll(List<Car> cars);
+}
@@ -0,0 +1,54 @@
+package org.example.services;
+
+import org.example.models.Car;
+import org.example.structures.CarSearchIndex;
+
+import java.util.List;
+
+public class CarSearchService {
+    private static volatile CarSearchService instance;
+    private final CarSearchIndex searchIndex;
+
+    private CarSearchService() {
+        CarServices carServices = CarServices.getInstance();
+        // Rental counts kept up to date by CarServices, so popularity follows new rentals
+        searchIndex = new CarSearchIndex(carServices::getRentalCount);
+        // Listen first so cars added while the index is built are not missed
+        carServices.addCarListener(searchIndex);
+        for (Car car : carServices.getCars()) {
+            searchIndex.carIndexed(car);
+        }
+    }
+
+    public static CarSearchService getInstance() {
+        CarSearchService result = instance;
+        if (result == null) {
+            synchronized (CarSearchService.class) {
+                result = instance;
+                if (result == null) {
+                    instance = result = new CarSearchService();
+                }
+            }
+        }
+        return result;
+    }
+
+    // Cars whose model or category words start with each word typed, available and popular cars first
+    public List<Car> suggest(String query, int limit) {
+        return searchIndex.search(query, limit);
+    }
+
+    public void searchCars(String query) {
+        List<Car> cars = suggest(query, 10);
+        if (cars.isEmpty()) {
+            System.out.println("No cars match \"" + query + "\".");
+            return;
+        }
+
+        System.out.println("\nCars matching \"" + query + "\":");
+        for (Car car : cars) {
+            System.out.println("ID: " + car.getCarId() + " | Model: " + car.getModel() + " | Category: " + car.getCategory() +
+                    " | " + (car.isAvailable() ? "Available" : "Rented") + " | Hourly Rate: $" + car.getHourlyRate());
+        }
+    }
+}
@@ -1,61 +1,100 @@
 package org.example.services;
 
 
+import org.example.models.Billing;
 import org.example.models.Car;
 import org.example.models.Customer;
+import org.example.models.Money;
 import org.example.models.TravelHistory;
+import org.example.structures.ActiveRentalIndex;
+import org.example.structures.CarPage;
+import org.example.structures.CarRegistry;
+import org.example.structures.StripedLock;
 
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
 
 public class CarServices {
-    private static CarServices instance;
+    private static volatile CarServices instance;
     private final List<Car> cars;
+    private final CarRegistry carRegistry = new CarRegistry();
+    // Renting, returning and billing a car run under its stripe, so a car can't be rented twice
+    // while sessions working on other cars don't wait for each other
+    private final StripedLock carLocks = new StripedLock(64);
+    // How long a car stays held for a customer who picked it but has not finished renting it
+    private static final long HOLD_MILLIS = Long.getLong("carrental.holdMillis", 5 * 60 * 1000L);
     private final CSVFileService csvFileService;
+    private final PersistenceScheduler persistenceScheduler;
+    private final CarRepository carRepository;
+    // Rentals per car, counted from the stored rental periods on first use and kept up by startRental
+    private volatile Map<String, AtomicInteger> rentalCounts;
+
+    // What returnCar did; the front end reports it to the customer
+    public enum ReturnStatus {
+        RETURNED("Car returned"),
+        CAR_NOT_FOUND("Car not found"),
+        NOT_RENTED("This car is not currently rented"),
+        NO_ACTIVE_RENTAL("No active rental found for this car");
+
+        private final String message;
+
+        ReturnStatus(String message) {
+            this.message = message;
+        }
 
-    private CarServices() {
-        csvFileService = CSVFileService.getInstance();
-        cars = csvFileService.loadCars();
+        public String getMessage() {
+            return message;
+        }
     }
 
-    public static CarServices getInstance() {
-        if (instance == null) {
-            instance = new CarServices();
+    private CarServices() {
+        csvFileService = CSVFileService.getInstance();
+        carRepository = Repositories.getInstance().cars();
+        cars = carRepository.findAll();
+        for (Car car : cars) {
+            carRegistry.add(car);
         }
-        return instance;
+        persistenceScheduler = PersistenceScheduler.getInstance();
     }
 
-    public void addCar(String carId, String model,String category,double hourlyRate) {
-        // Check if car already exists
-        for (Car car : cars) {
-            if (car.getCarId().equals(carId)) {
-                System.out.println("Car with ID " + carId + " already exists.");
-                return;
+    public static CarServices getInstance() {
+        // Double-checked so sessions on other threads see a fully built instance without locking each call
+        CarServices result = instance;
+        if (result == null) {
+            synchronized (CarServices.class) {
+                result = instance;
+                if (result == null) {
+                    instance = result = new CarServices();
+                }
             }
         }
+        return result;
+    }
 
-        // Add new car
+    // Add a new car; false if a car with this id already exists
+    public boolean addCar(String carId, String model,String category,Money hourlyRate) {
         Car newCar = new Car(carId, model,true, hourlyRate, category);
+        if (!carRegistry.add(newCar)) {
+            return false;
+        }
         cars.add(newCar);
-        System.out.println("Car added successfully: " + model + " (ID: " + carId + ")");
-        saveCarsToFile();
+        carRepository.save(newCar);
+        return true;
     }
 
     public void viewAllCars() {
-        if (cars.isEmpty()) {
+        Collection<Car> catalogue = carRegistry.getCatalogue();
+        if (catalogue.isEmpty()) {
             System.out.println("No cars available.");
             return;
         }
 
-        // Create a copy of the cars list to sort
-        List<Car> sortedCars = new ArrayList<>(cars);
-
-        // Sort cars by model name using custom merge sort
-        mergeSort(sortedCars, 0, sortedCars.size() - 1);
-
+        // The catalogue is kept sorted by model, so it is printed as it is walked
         System.out.println("\nAll Cars (Sorted by Model):");
-        for (Car car : sortedCars) {
+        for (Car car : catalogue) {
             System.out.println("ID: " + car.getCarId());
             System.out.println("Model: " + car.getModel());
             System.out.println("Category: " + car.getCategory());
@@ -65,87 +104,55 @@ public class CarServices {
         }
     }
 
-    // Custom Merge Sort implementation to sort cars by model name
-    private void mergeSort(List<Car> cars, int left, int right) {
-        if (left < right) {
-            // Find the middle point
-            int middle = left + (right - left) / 2;
-
-            // Sort first and second halves
-            mergeSort(cars, left, middle);
-            mergeSort(cars, middle + 1, right);
-
-            // Merge the sorted halves
-            merge(cars, left, middle, right);
-        }
+    // One page of all cars sorted by model; pass the returned cursor to get the next page
+    public CarPage listCarsByModel(String cursor, int pageSize) {
+        return carRegistry.listByModel(cursor, pageSize);
     }
 
-    // Merge two subarrays of cars
-    private void merge(List<Car> cars, int left, int middle, int right) {
-        // Calculate sizes of two subarrays to be merged
-        int n1 = middle - left + 1;
-        int n2 = right - middle;
-
-        // Create temp arrays
-        List<Car> leftArray = new ArrayList<>(n1);
-        List<Car> rightArray = new ArrayList<>(n2);
+    // Live view of the available cars, in fleet order
+    public CarRegistry.View getAvailableCars() {
+        return carRegistry.getAvailable();
+    }
 
-        // Copy data to temp arrays
-        for (int i = 0; i < n1; i++) {
-            leftArray.add(cars.get(left + i));
+    // Available cars, optionally narrowed to a category and a maximum hourly rate (null for any)
+    public CarRegistry.View getAvailableCars(String category, Money maxHourlyRate) {
+        CarRegistry.View view = carRegistry.getAvailable();
+        if (category != null) {
+            view = view.inCategory(category);
         }
-        for (int j = 0; j < n2; j++) {
-            rightArray.add(cars.get(middle + 1 + j));
+        if (maxHourlyRate != null) {
+            view = view.withMaxRate(maxHourlyRate);
         }
+        return view;
+    }
 
-        // Merge the temp arrays
-
-        // Initial indexes of first and second subarrays
-        int i = 0, j = 0;
-
-        // Initial index of merged subarray
-        int k = left;
-
-        while (i < n1 && j < n2) {
-            // Compare car models for sorting
-            if (leftArray.get(i).getModel().compareToIgnoreCase(rightArray.get(j).getModel()) <= 0) {
-                cars.set(k, leftArray.get(i));
-                i++;
-            } else {
-                cars.set(k, rightArray.get(j));
-                j++;
-            }
-            k++;
-        }
+    /**
+     * Search the available cars by category and hourly rate range, sorted by rate or model.
+     * categories, minRate, maxRate and cursor may be null for no restriction; pass the returned page's
+     * cursor to get the next page.
+     */
+    public CarPage searchAvailableCars(Collection<String> categories, Money minRate, Money maxRate,
+                                       CarRegistry.SortOrder order, String cursor, int pageSize) {
+        long minCents = minRate != null ? minRate.getCents() : Long.MIN_VALUE;
+        long maxCents = maxRate != null ? maxRate.getCents() : Long.MAX_VALUE;
+        return carRegistry.search(categories, minCents, maxCents, order, cursor, pageSize);
+    }
 
-        // Copy remaining elements of leftArray[] if any
-        while (i < n1) {
-            cars.set(k, leftArray.get(i));
-            i++;
-            k++;
-        }
+    // Keep a listener informed of every car added, changed or removed
+    public void addCarListener(CarRegistry.Listener listener) {
+        carRegistry.addListener(listener);
+    }
 
-        // Copy remaining elements of rightArray[] if any
-        while (j < n2) {
-            cars.set(k, rightArray.get(j));
-            j++;
-            k++;
-        }
+    public CarRegistry.View getCarsByCategory(String category) {
+        return carRegistry.getByCategory(category);
     }
 
-    public List<Car> getAvailableCars() {
-        return cars.stream()
-                .filter(Car::isAvailable)
-                .collect(Collectors.toList());
+    public int countAvailableCars() {
+        return carRegistry.countAvailable();
     }
 
     public Car getCarById(String carId) {
-        for (Car car : cars) {
-            if (car.getCarId().equals(carId)) {
-                return car;
-            }
-        }
-        return null;
+        return carRegistry.get(carId);
     }
 
     public void viewAllTravelHistory() {
@@ -164,35 +171,41 @@ public class CarServices {
 
         System.out.println("\nAll Travel History:");
         for (TravelHistory history : allHistories) {
-            Customer customer = null;
-            for (Customer c : customers) {
-                if (c.getPhoneNumber().equals(history.getCustomerId())) {
-                    customer = c;
-                    break;
-                }
-            }
+            printTravelHistory(history, customerServices);
+        }
+    }
 
-            Car car = getCarById(history.getCarId());
+    // Rentals started in [from, to); with lazy history only the months in the range are read
+    public void viewTravelHistoryBetween(LocalDateTime from, LocalDateTime to) {
+        CustomerServices customerServices = CustomerServices.getInstance();
+        List<TravelHistory> histories = customerServices.getTravelHistoriesBetween(from, to);
 
-            System.out.println("Customer: " + (customer != null ? customer.getName() : "Unknown"));
-            System.out.println("Phone: " + history.getCustomerId());
-            System.out.println("Car: " + (car != null ? car.getModel() : "Unknown") + " (ID: " + history.getCarId() + ")");
-            System.out.println("Rent Time: " + history.getRentTime());
-            System.out.println("Return Time: " + (history.getReturnTime() != null ? history.getReturnTime() : "Active"));
-            System.out.println("----------");
+        if (histories.isEmpty()) {
+            System.out.println("No travel history found between " + from.toLocalDate() + " and " + to.toLocalDate() + ".");
+            return;
+        }
+
+        System.out.println("\nTravel History from " + from.toLocalDate() + " to " + to.toLocalDate() + ":");
+        for (TravelHistory history : histories) {
+            printTravelHistory(history, customerServices);
         }
     }
 
+    private void printTravelHistory(TravelHistory history, CustomerServices customerServices) {
+        Customer customer = customerServices.getCustomerByPhone(history.getCustomerId());
+        Car car = getCarById(history.getCarId());
+
+        System.out.println("Customer: " + (customer != null ? customer.getName() : "Unknown"));
+        System.out.println("Phone: " + history.getCustomerId());
+        System.out.println("Car: " + (car != null ? car.getModel() : "Unknown") + " (ID: " + history.getCarId() + ")");
+        System.out.println("Rent Time: " + history.getRentTime());
+        System.out.println("Return Time: " + (history.getReturnTime() != null ? history.getReturnTime() : "Active"));
+        System.out.println("----------");
+    }
+
     public void viewTravelHistoryOfCustomer(String phoneNumber) {
         CustomerServices customerServices = CustomerServices.getInstance();
-        Customer customer = null;
-
-        for (Customer c : customerServices.getCustomers()) {
-            if (c.getPhoneNumber().equals(phoneNumber)) {
-                customer = c;
-                break;
-            }
-        }
+        Customer customer = customerServices.getCustomerByPhone(phoneNumber);
 
         if (customer == null) {
             System.out.println("Customer not found with phone number: " + phoneNumber);
@@ -216,48 +229,177 @@ public class CarServices {
         }
     }
 
-    public void returnCar(String carId) {
+    // The lock to hold while checking and changing a car's rental state
+    public Lock carLock(String carId) {
+        return carLocks.get(carId);
+    }
+
+    /**
+     * Hold a car for a customer while they finish renting it, so no other session can take it in the
+     * meantime. The hold lapses after a few minutes if the customer walks away; holding again renews it.
+     * Only compares-and-sets the car's reservation word, no lock is taken. False if the car is rented
+     * or held by someone else.
+     */
+    public boolean tryReserve(String carId, String customerId) {
+        Car car = getCarById(carId);
+        return car != null && car.tryHold(customerId, System.currentTimeMillis(), HOLD_MILLIS) != null;
+    }
+
+    // Give up a hold taken with tryReserve
+    public void releaseReservation(String carId, String customerId) {
+        Car car = getCarById(carId);
+        if (car != null) {
+            car.releaseHold(customerId);
+        }
+    }
+
+    // Rent a car with an advance payment if it is still available and not held by someone else;
+    // null if it is gone, rented or held
+    public Billing rentCar(Customer customer, String carId, Money advancePayment) {
+        Lock lock = carLock(carId);
+        lock.lock();
+        try {
+            Car car = getCarById(carId);
+            if (!claim(car, customer)) {
+                return null;
+            }
+
+            // Create billing record
+            Billing billing = new Billing(customer.getPhoneNumber(), carId, car.getHourlyRate(), advancePayment);
+            BillingService.getInstance().addBilling(billing);
+
+            startRental(customer, car);
+            return billing;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Rent a car without billing if it is still available and not held by someone else; null if not
+    public TravelHistory rentCar(Customer customer, String carId) {
+        Lock lock = carLock(carId);
+        lock.lock();
+        try {
+            Car car = getCarById(carId);
+            if (!claim(car, customer)) {
+                return null;
+            }
+            return startRental(customer, car);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Called with the car's lock held; takes over the customer's own hold or an expired one
+    private static boolean claim(Car car, Customer customer) {
+        return car != null && car.isAvailable()
+                && car.claimForRental(customer.getPhoneNumber(), System.currentTimeMillis());
+    }
+
+    // Called with the car's lock held
+    private TravelHistory startRental(Customer customer, Car car) {
+        // Create travel history
+        TravelHistory travelHistory = new TravelHistory(customer.getPhoneNumber(), car.getCarId());
+        customer.addTravelHistory(travelHistory);
+
+        // Counted before the car changes, so listeners re-indexing it already see the new count
+        rentalCounts().computeIfAbsent(car.getCarId(), id -> new AtomicInteger()).incrementAndGet();
+
+        // Mark car as unavailable
+        car.setAvailability(false);
+
+        // Save changes
+        CustomerServices.getInstance().saveRental(travelHistory);
+        return travelHistory;
+    }
+
+    // How often a car has been rented
+    public int getRentalCount(String carId) {
+        AtomicInteger count = rentalCounts().get(carId);
+        return count != null ? count.get() : 0;
+    }
+
+    private Map<String, AtomicInteger> rentalCounts() {
+        Map<String, AtomicInteger> result = rentalCounts;
+        if (result == null) {
+            synchronized (this) {
+                result = rentalCounts;
+                if (result == null) {
+                    result = new ConcurrentHashMap<>();
+                    for (Map.Entry<String, Integer> entry : CustomerServices.getInstance().getRentalCountsByCar().entrySet()) {
+                        result.put(entry.getKey(), new AtomicInteger(entry.getValue()));
+                    }
+                    rentalCounts = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    public ReturnStatus returnCar(String carId) {
+        Lock lock = carLock(carId);
+        lock.lock();
+        try {
+            return returnCarLocked(carId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ReturnStatus returnCarLocked(String carId) {
         Car car = getCarById(carId);
         if (car == null) {
-            System.out.println("Car not found with ID: " + carId);
-            return;
+            return ReturnStatus.CAR_NOT_FOUND;
         }
 
         if (car.isAvailable()) {
-            System.out.println("This car is not currently rented.");
-            return;
+            return ReturnStatus.NOT_RENTED;
         }
 
         // Find active travel history for this car
         CustomerServices customerServices = CustomerServices.getInstance();
-        for (Customer customer : customerServices.getCustomers()) {
-            for (TravelHistory history : customer.getTravelHistories()) {
-                if (history.getCarId().equals(carId) && history.isActive()) {
-                    // Mark car as returned
-                    car.setAvailability(true);
-                    history.setReturnTime(LocalDateTime.now());
-
-                    // Save changes
-                    saveCarsToFile();
-                    customerServices.saveCustomersToFile();
-
-                    System.out.println("Car successfully returned by " + customer.getName());
-                    return;
-                }
-            }
+        ActiveRentalIndex.Rental rental = customerServices.getActiveRental(carId);
+        if (rental == null) {
+            return ReturnStatus.NO_ACTIVE_RENTAL;
         }
-
-        System.out.println("No active rental found for this car.");
+        TravelHistory history = rental.getHistory();
+
+        // Mark car as returned
+        car.setAvailability(true);
+        history.setReturnTime(LocalDateTime.now());
+        customerServices.endRental(carId);
+
+        // Save changes
+        if (csvFileService.isJournalMode()) {
+            csvFileService.journalCarReturned(history);
+            checkpointIfDue();
+        } else {
+            carRepository.save(car);
+            Repositories.getInstance().travelHistories().save(history);
+        }
+        return ReturnStatus.RETURNED;
     }
 
+    // Written by the persistence thread, changes within the max staleness are coalesced
     public void saveCarsToFile() {
-        csvFileService.saveCars(cars);
+        persistenceScheduler.markDirty(PersistenceScheduler.Target.CARS);
+    }
+
+    // In journal mode, fold the journal back into the CSV files once it has grown past the threshold
+    public void checkpointIfDue() {
+        if (csvFileService.isCheckpointDue()) {
+            saveCarsToFile();
+            CustomerServices.getInstance().saveCustomersToFile();
+            BillingService.getInstance().saveBillingsToFile();
+        }
     }
 
     public void makeExit() {
-        saveCarsToFile();
-        CustomerServices.getInstance().saveCustomersToFile();
-        System.out.println("All data saved to CSV sheets");
+        if (Repositories.getInstance().flush()) {
+            System.out.println("All data saved to CSV sheets");
+        } else {
+            System.err.println("Some data could not be saved, see the errors above");
+        }
     }
 
     public List<Car> getCars() {
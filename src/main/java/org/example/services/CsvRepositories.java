@@ -0,0 +1,263 @@
+package org.example.services;
+
+import org.example.models.Billing;
+import org.example.models.Car;
+import org.example.models.Customer;
+import org.example.models.TravelHistory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Repositories over the CSV files.
+ * A CSV file can only be written as a whole, so each repository keeps the list it loaded and
+ * save() marks that list dirty for the PersistenceScheduler, which rewrites the file.
+ * Travel history is stored with the customers.
+ * The lists are shared by every session: cars are few and copy-on-write, customers and billings are
+ * synchronized lists, and the files are written from a copy.
+ * Services insert by adding to the list from findAll() and then calling save(). Each repository also
+ * keeps its records by id, so saving a record it already knows costs no scan and takes no list lock;
+ * only an unknown record is looked for in the list, from the end, where a new one was just added.
+ */
+class CsvRepositories extends Repositories {
+    private final CSVFileService csvFileService = CSVFileService.getInstance();
+    private final PersistenceScheduler persistenceScheduler = PersistenceScheduler.getInstance();
+    private final CsvCarRepository cars = new CsvCarRepository();
+    private final CsvCustomerRepository customers = new CsvCustomerRepository();
+    private final CsvTravelHistoryRepository travelHistories = new CsvTravelHistoryRepository();
+    private final CsvBillingRepository billings = new CsvBillingRepository();
+
+    @Override
+    public CarRepository cars() {
+        return cars;
+    }
+
+    @Override
+    public CustomerRepository customers() {
+        return customers;
+    }
+
+    @Override
+    public TravelHistoryRepository travelHistories() {
+        return travelHistories;
+    }
+
+    @Override
+    public BillingRepository billings() {
+        return billings;
+    }
+
+    @Override
+    public boolean flush() {
+        for (PersistenceScheduler.Target target : PersistenceScheduler.Target.values()) {
+            persistenceScheduler.markDirty(target);
+        }
+        if (!persistenceScheduler.flush()) {
+            return false; // a snapshot now would not match the files
+        }
+
+        // Binary snapshot for fast startup, written last so it is newer than every CSV file
+        if (cars.cars != null && customers.customers != null && billings.billings != null) {
+            csvFileService.saveSnapshot(CSVFileService.snapshot(cars.cars), CSVFileService.snapshot(customers.customers),
+                    CSVFileService.snapshot(billings.billings));
+        }
+        return true;
+    }
+
+    private class CsvCarRepository implements CarRepository {
+        private volatile List<Car> cars;
+        private final Map<String, Car> carsById = new ConcurrentHashMap<>();
+
+        @Override
+        public List<Car> findAll() {
+            List<Car> result = cars;
+            if (result == null) {
+                synchronized (this) {
+                    if (cars == null) {
+                        List<Car> loaded = new CopyOnWriteArrayList<>(csvFileService.loadCars());
+                        for (Car car : loaded) {
+                            carsById.putIfAbsent(car.getCarId(), car);
+                        }
+                        persistenceScheduler.register(PersistenceScheduler.Target.CARS, () -> csvFileService.saveCars(loaded));
+                        cars = loaded;
+                    }
+                    result = cars;
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public Car findById(String carId) {
+            Car known = carsById.get(carId);
+            if (known != null) {
+                return known;
+            }
+            for (Car car : findAll()) {
+                if (car.getCarId().equals(carId)) {
+                    return car;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public void save(Car car) {
+            List<Car> all = findAll();
+            if (carsById.get(car.getCarId()) != car) {
+                // New records are usually the last ones added, so search from the end
+                synchronized (all) {
+                    if (all.lastIndexOf(car) < 0) {
+                        all.add(car);
+                    }
+                }
+                carsById.put(car.getCarId(), car);
+            }
+            persistenceScheduler.markDirty(PersistenceScheduler.Target.CARS);
+        }
+
+        @Override
+        public void saveAll(List<Car> cars) {
+            csvFileService.saveCars(cars);
+        }
+    }
+
+    private class CsvCustomerRepository implements CustomerRepository {
+        private volatile List<Customer> customers;
+        private final Map<String, Customer> customersByPhone = new ConcurrentHashMap<>();
+
+        @Override
+        public List<Customer> findAll() {
+            List<Customer> result = customers;
+            if (result == null) {
+                synchronized (this) {
+                    if (customers == null) {
+                        List<Customer> loaded = Collections.synchronizedList(csvFileService.loadCustomers());
+                        for (Customer customer : loaded) {
+                            customersByPhone.putIfAbsent(customer.getPhoneNumber(), customer);
+                        }
+                        persistenceScheduler.register(PersistenceScheduler.Target.CUSTOMERS,
+                                () -> csvFileService.saveCustomers(loaded));
+                        customers = loaded;
+                    }
+                    result = customers;
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public Customer findByPhoneNumber(String phoneNumber) {
+            List<Customer> all = findAll();
+            Customer known = customersByPhone.get(phoneNumber);
+            if (known != null) {
+                return known;
+            }
+            synchronized (all) {
+                for (Customer customer : all) {
+                    if (customer.getPhoneNumber().equals(phoneNumber)) {
+                        return customer;
+                    }
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public void save(Customer customer) {
+            List<Customer> all = findAll();
+            if (customersByPhone.get(customer.getPhoneNumber()) != customer) {
+                synchronized (all) {
+                    if (all.lastIndexOf(customer) < 0) {
+                        all.add(customer);
+                    }
+                }
+                customersByPhone.put(customer.getPhoneNumber(), customer);
+            }
+            persistenceScheduler.markDirty(PersistenceScheduler.Target.CUSTOMERS);
+        }
+
+        @Override
+        public void saveAll(List<Customer> customers) {
+            csvFileService.saveCustomers(customers);
+        }
+    }
+
+    private class CsvTravelHistoryRepository implements TravelHistoryRepository {
+        @Override
+        public List<TravelHistory> findByCustomer(String customerId) {
+            Customer customer = customers.findByPhoneNumber(customerId);
+            return customer != null ? customer.getTravelHistories() : List.of();
+        }
+
+        // The history is already in its customer's list, the customer file is rewritten with it
+        @Override
+        public void save(TravelHistory history) {
+            persistenceScheduler.markDirty(PersistenceScheduler.Target.CUSTOMERS);
+        }
+    }
+
+    private class CsvBillingRepository implements BillingRepository {
+        private volatile List<Billing> billings;
+        private final Map<String, Billing> billingsById = new ConcurrentHashMap<>();
+
+        @Override
+        public List<Billing> findAll() {
+            List<Billing> result = billings;
+            if (result == null) {
+                synchronized (this) {
+                    if (billings == null) {
+                        List<Billing> loaded = Collections.synchronizedList(csvFileService.loadBillings());
+                        for (Billing billing : loaded) {
+                            billingsById.putIfAbsent(billing.getBillId(), billing);
+                        }
+                        persistenceScheduler.register(PersistenceScheduler.Target.BILLINGS,
+                                () -> csvFileService.saveBillings(loaded));
+                        billings = loaded;
+                    }
+                    result = billings;
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public Billing findById(String billId) {
+            List<Billing> all = findAll();
+            Billing known = billingsById.get(billId);
+            if (known != null) {
+                return known;
+            }
+            synchronized (all) {
+                for (Billing billing : all) {
+                    if (billing.getBillId().equals(billId)) {
+                        return billing;
+                    }
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public void save(Billing billing) {
+            List<Billing> all = findAll();
+            if (billingsById.get(billing.getBillId()) != billing) {
+                synchronized (all) {
+                    if (all.lastIndexOf(billing) < 0) {
+                        all.add(billing);
+                    }
+                }
+                billingsById.put(billing.getBillId(), billing);
+            }
+            persistenceScheduler.markDirty(PersistenceScheduler.Target.BILLINGS);
+        }
+
+        @Override
+        public void saveAll(List<Billing> billings) {
+            csvFileService.saveBillings(billings);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package org.example.services;
+
+import org.example.models.Customer;
+
+import java.util.List;
+
+// Storage of customers; customers are returned with their travel history attached
+public interface CustomerRepository {
+    List<Customer> findAll();
+
+    Customer findByPhoneNumber(String phoneNumber);
+
+    // Insert or update one customer record; history is saved through TravelHistoryRepository
+    void save(Customer customer);
+
+    // Replace every stored customer, including their travel history
+    void saveAll(List<Customer> customers);
+}
@@ -4,105 +4,225 @@ package org.example.services;
 import org.example.models.Car;
 import org.example.models.Customer;
 import org.example.models.TravelHistory;
+import org.example.structures.ActiveRentalIndex;
+import org.example.structures.BloomFilter;
+import org.example.structures.CarRegistry;
+import org.example.structures.RentalIntervalIndex;
 
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
 
 public class CustomerServices {
-    private static CustomerServices instance;
+    private static volatile CustomerServices instance;
     private final List<Customer> customers;
     private final CarServices carServices;
     private final CSVFileService csvFileService;
     private final AuthServices authServices;
-    private Customer currentCustomer;
+    private final CustomerRepository customerRepository;
+    private final Map<String, Customer> customersByPhone = new ConcurrentHashMap<>();
+    // Every registered phone number; a miss proves a number is new without probing the map.
+    // Only used under registrationLock
+    private BloomFilter knownPhoneNumbers;
+    private final Object registrationLock = new Object();
+    private final ActiveRentalIndex activeRentals = new ActiveRentalIndex();
+    private final RentalIntervalIndex rentalPeriods = new RentalIntervalIndex();
+    private final SessionManager sessionManager;
+    private static final int MAX_PHONE_DIGITS = 15;
+    private static final int MAX_NAME_LENGTH = 100;
 
     private CustomerServices() {
         csvFileService = CSVFileService.getInstance();
-        customers = csvFileService.loadCustomers();
+        customerRepository = Repositories.getInstance().customers();
+        customers = customerRepository.findAll();
+        rebuildPhoneIndex();
+        rebuildActiveRentals();
+        rebuildRentalPeriods();
         carServices = CarServices.getInstance();
         authServices = AuthServices.getInstance();
+        sessionManager = SessionManager.getInstance();
     }
 
     public static CustomerServices getInstance() {
-        if (instance == null) {
-            instance = new CustomerServices();
+        CustomerServices result = instance;
+        if (result == null) {
+            synchronized (CustomerServices.class) {
+                result = instance;
+                if (result == null) {
+                    instance = result = new CustomerServices();
+                }
+            }
         }
-        return instance;
+        return result;
     }
 
-    public String login(String phoneNumber, String password) {
-        for (Customer customer : customers) {
-            System.out.println("password : "+password);
-            if (customer.getPhoneNumber().equals(phoneNumber) && AuthServices.getInstance().verifyHash(password, customer.getPassword())) {
-                currentCustomer = customer;
-                System.out.println("Login successful. Welcome, " + customer.getName() + "!");
-                return customer.getName();
-            }
+    // Returns the new session, or null if the credentials are wrong
+    public SessionManager.Session login(String phoneNumber, String password) {
+        Customer customer;
+        try {
+            customer = authenticate(phoneNumber, password);
+        } catch (RejectedExecutionException e) {
+            System.out.println("Too many logins at the moment. Please try again shortly.");
+            return null;
+        }
+        if (customer != null) {
+            System.out.println("Login successful. Welcome, " + customer.getName() + "!");
+            return sessionManager.create(customer);
         }
         System.out.println("Invalid credentials. Please try again or register.");
-        return "";
+        return null;
+    }
+
+    // The customer with these credentials, or null; unlike login it does not start a session.
+    // Throws RejectedExecutionException when password checks are backed up
+    public Customer authenticate(String phoneNumber, String password) {
+        Customer customer = customersByPhone.get(phoneNumber);
+        if (customer == null) {
+            return null;
+        }
+        String passwordHash = customer.getPassword();
+        if (!authServices.verifyHash(password, passwordHash)) {
+            return null;
+        }
+        // The BCrypt cost was changed since this hash was made
+        if (authServices.needsRehash(passwordHash)) {
+            authServices.rehashLater(password, newHash -> updatePasswordHash(customer, passwordHash, newHash));
+        }
+        return customer;
     }
 
+    // Store a new hash of the same password, unless the password was changed in the meantime
+    private void updatePasswordHash(Customer customer, String oldHash, String newHash) {
+        synchronized (customer) {
+            if (!customer.getPassword().equals(oldHash)) {
+                return;
+            }
+            customer.setPassword(newHash);
+        }
+        if (csvFileService.isJournalMode()) {
+            csvFileService.journalPasswordChanged(customer);
+            carServices.checkpointIfDue();
+        } else {
+            customerRepository.save(customer);
+        }
+    }
+
+    // Why a phone number and name can't be registered, or null if they can. Phone numbers are digits
+    // only; a name may hold commas and quotes, which the CSV files quote, but no line breaks
+    public static String checkRegistration(String phoneNumber, String name) {
+        if (phoneNumber == null || phoneNumber.isEmpty() || phoneNumber.length() > MAX_PHONE_DIGITS) {
+            return "Phone number must have 1 to " + MAX_PHONE_DIGITS + " digits";
+        }
+        for (int i = 0; i < phoneNumber.length(); i++) {
+            if (phoneNumber.charAt(i) < '0' || phoneNumber.charAt(i) > '9') {
+                return "Phone number may only contain digits";
+            }
+        }
+        if (name == null || name.isBlank() || name.length() > MAX_NAME_LENGTH) {
+            return "Name must have 1 to " + MAX_NAME_LENGTH + " characters";
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (Character.isISOControl(name.charAt(i))) {
+                return "Name may not contain line breaks or control characters";
+            }
+        }
+        return null;
+    }
+
+    // False if the phone number is already registered; throws IllegalArgumentException if
+    // checkRegistration rejects the phone number or name
     public boolean register(String phoneNumber, String name, String password) {
-        // Check if user already exists
-        for (Customer customer : customers) {
-            if (customer.getPhoneNumber().equals(phoneNumber)) {
+        String problem = checkRegistration(phoneNumber, name);
+        if (problem != null) {
+            throw new IllegalArgumentException(problem);
+        }
+        Customer newCustomer;
+        synchronized (registrationLock) {
+            // Check if user already exists; only a Bloom filter hit needs the map
+            if (knownPhoneNumbers.mightContain(phoneNumber) && customersByPhone.containsKey(phoneNumber)) {
                 return false;
             }
-        }
 
-        // Create new customer
-        Customer newCustomer = new Customer(phoneNumber, name, password);
-        customers.add(newCustomer);
-        currentCustomer = newCustomer;
-        saveCustomersToFile();
+            // Create new customer
+            newCustomer = new Customer(phoneNumber, name, password);
+            customers.add(newCustomer);
+            indexCustomer(newCustomer);
+        }
+        if (csvFileService.isJournalMode()) {
+            csvFileService.journalCustomerRegistered(newCustomer);
+            carServices.checkpointIfDue();
+        } else {
+            customerRepository.save(newCustomer);
+        }
         return true;
     }
 
     //add priority for the customers
-    public boolean rentCar(String customerName) {
-        if (currentCustomer == null || !currentCustomer.getName().equals(customerName)) {
+    public boolean rentCar(SessionManager.Session session) {
+        Customer currentCustomer = sessionManager.customerOf(session);
+        if (currentCustomer == null) {
             System.out.println("Please login first.");
             return false;
         }
 
         // Display available cars
-        List<Car> availableCars = carServices.getAvailableCars();
+        CarRegistry.View availableCars = carServices.getAvailableCars();
         if (availableCars.isEmpty()) {
             System.out.println("No cars available for rent.");
             return false;
         }
 
         System.out.println("\nAvailable Cars:");
-        for (int i = 0; i < availableCars.size(); i++) {
-            System.out.println((i + 1) + ". " + availableCars.get(i).getModel() + " (ID: " + availableCars.get(i).getCarId() + ")");
+        int shown = 0;
+        for (Car car : availableCars) {
+            System.out.println(++shown + ". " + car.getModel() + " (ID: " + car.getCarId() + ")");
         }
 
         // Get user selection
         Scanner scanner = new Scanner(System.in);
-        System.out.print("Select a car (1-" + availableCars.size() + "): ");
+        System.out.print("Select a car (1-" + shown + "): ");
         int selection = scanner.nextInt();
 
-        if (selection < 1 || selection > availableCars.size()) {
+        if (selection < 1 || selection > shown) {
             System.out.println("Invalid selection.");
             return false;
         }
 
-        // Rent the car
+        // Rent the car, unless another session got it first
         Car selectedCar = availableCars.get(selection - 1);
-        TravelHistory travelHistory = new TravelHistory(currentCustomer.getPhoneNumber(), selectedCar.getCarId());
-        currentCustomer.addTravelHistory(travelHistory);
-
-        selectedCar.setAvailability(false);
-
-        // Save changes
-        saveCustomersToFile();
-        carServices.saveCarsToFile();
+        if (selectedCar == null || carServices.rentCar(currentCustomer, selectedCar.getCarId()) == null) {
+            System.out.println("That car is no longer available.");
+            return false;
+        }
 
         return true;
     }
 
-    public void viewTravelHistory() {
+    // Persist a new rental: one journal record in journal mode, otherwise save the rental and the car
+    public void saveRental(TravelHistory travelHistory) {
+        Customer customer = customersByPhone.get(travelHistory.getCustomerId());
+        if (customer != null) {
+            activeRentals.put(customer, travelHistory);
+        }
+        rentalPeriods.add(travelHistory.getCustomerId(), travelHistory.getCarId(), travelHistory.getRentTime(), null);
+
+        if (csvFileService.isJournalMode()) {
+            csvFileService.journalCarRented(travelHistory);
+            carServices.checkpointIfDue();
+        } else {
+            Repositories repositories = Repositories.getInstance();
+            repositories.travelHistories().save(travelHistory);
+            Car car = carServices.getCarById(travelHistory.getCarId());
+            if (car != null) {
+                repositories.cars().save(car);
+            }
+        }
+    }
+
+    public void viewTravelHistory(SessionManager.Session session) {
+        Customer currentCustomer = sessionManager.customerOf(session);
         if (currentCustomer == null) {
             System.out.println("Please login first.");
             return;
@@ -127,6 +247,7 @@ public class CustomerServices {
     }
 
     public void viewAllCustomers() {
+        List<Customer> customers = getCustomers();
         if (customers.isEmpty()) {
             System.out.println("No customers registered.");
             return;
@@ -142,53 +263,172 @@ public class CustomerServices {
     }
 
     public void viewCustomerByPhoneNumber(String phoneNumber) {
-        for (Customer customer : customers) {
-            if (customer.getPhoneNumber().equals(phoneNumber)) {
-                System.out.println("\nCustomer Details:");
-                System.out.println("Name: " + customer.getName());
-                System.out.println("Phone: " + customer.getPhoneNumber());
-
-                List<TravelHistory> histories = customer.getTravelHistories();
-                System.out.println("Travel History Count: " + histories.size());
-
-                if (!histories.isEmpty()) {
-                    System.out.println("\nTravel History:");
-                    for (TravelHistory history : histories) {
-                        Car car = carServices.getCarById(history.getCarId());
-                        String carModel = car != null ? car.getModel() : "Unknown";
-
-                        System.out.println("Car: " + carModel + " (ID: " + history.getCarId() + ")");
-                        System.out.println("Rent Time: " + history.getRentTime());
-                        System.out.println("Return Time: " + (history.getReturnTime() != null ? history.getReturnTime() : "Active"));
-                        System.out.println("----------");
-                    }
-                }
+        Customer customer = customersByPhone.get(phoneNumber);
+        if (customer == null) {
+            System.out.println("Customer not found with phone number: " + phoneNumber);
+            return;
+        }
 
-                return;
+        System.out.println("\nCustomer Details:");
+        System.out.println("Name: " + customer.getName());
+        System.out.println("Phone: " + customer.getPhoneNumber());
+
+        List<TravelHistory> histories = customer.getTravelHistories();
+        System.out.println("Travel History Count: " + histories.size());
+
+        if (!histories.isEmpty()) {
+            System.out.println("\nTravel History:");
+            for (TravelHistory history : histories) {
+                Car car = carServices.getCarById(history.getCarId());
+                String carModel = car != null ? car.getModel() : "Unknown";
+
+                System.out.println("Car: " + carModel + " (ID: " + history.getCarId() + ")");
+                System.out.println("Rent Time: " + history.getRentTime());
+                System.out.println("Return Time: " + (history.getReturnTime() != null ? history.getReturnTime() : "Active"));
+                System.out.println("----------");
             }
         }
-
-        System.out.println("Customer not found with phone number: " + phoneNumber);
     }
 
+    // Written by the persistence thread, changes within the max staleness are coalesced
     public void saveCustomersToFile() {
-        csvFileService.saveCustomers(customers);
+        PersistenceScheduler.getInstance().markDirty(PersistenceScheduler.Target.CUSTOMERS);
     }
 
+    // A copy, so it can be walked while other sessions register
     public List<Customer> getCustomers() {
-        return customers;
+        synchronized (customers) {
+            return new ArrayList<>(customers);
+        }
+    }
+
+    // The open rental of a car, or null if it is not rented
+    public ActiveRentalIndex.Rental getActiveRental(String carId) {
+        return activeRentals.get(carId);
+    }
+
+    // Called once a rental's return time is set
+    public void endRental(String carId) {
+        ActiveRentalIndex.Rental rental = activeRentals.remove(carId);
+        if (rental != null && rental.getHistory().getReturnTime() != null) {
+            TravelHistory history = rental.getHistory();
+            rentalPeriods.close(carId, history.getRentTime(), history.getReturnTime());
+        }
+    }
+
+    // Rentals under way at the given time, e.g. which cars were out at 18:00 last Friday
+    public List<RentalIntervalIndex.Period> getRentalsAt(LocalDateTime time) {
+        return rentalPeriods.at(time);
+    }
+
+    // Rentals that overlap [from, to)
+    public List<RentalIntervalIndex.Period> getRentalsBetween(LocalDateTime from, LocalDateTime to) {
+        return rentalPeriods.between(from, to);
+    }
+
+    // Travel history rented in [from, to), oldest first. Every unsaved row is in a customer's list in
+    // memory, so those lists are used as they are; only the customers whose history is not loaded
+    // (lazy history) are read from the saved segments overlapping the range
+    public List<TravelHistory> getTravelHistoriesBetween(LocalDateTime from, LocalDateTime to) {
+        Map<String, List<TravelHistory>> inMemory = new HashMap<>();
+        List<Customer> all = getCustomers();
+        for (Customer customer : all) {
+            List<TravelHistory> histories;
+            synchronized (customer) {
+                histories = customer.getLoadedTravelHistories();
+                histories = histories != null ? new ArrayList<>(histories) : null;
+            }
+            if (histories != null) {
+                inMemory.put(customer.getPhoneNumber(), histories);
+            }
+        }
+
+        List<TravelHistory> result = new ArrayList<>();
+        if (inMemory.size() < all.size()) {
+            for (TravelHistory history : csvFileService.loadTravelHistoriesBetween(null, from, to)) {
+                String customerId = history.getCustomerId();
+                if (!inMemory.containsKey(customerId) && customersByPhone.containsKey(customerId)) {
+                    result.add(history);
+                }
+            }
+        }
+        for (List<TravelHistory> histories : inMemory.values()) {
+            for (TravelHistory history : histories) {
+                if (!history.getRentTime().isBefore(from) && history.getRentTime().isBefore(to)) {
+                    result.add(history);
+                }
+            }
+        }
+        result.sort(Comparator.comparing(TravelHistory::getRentTime));
+        return result;
     }
 
-    public Customer getCurrentCustomer() {
-        return currentCustomer;
+    // Rentals per car so far, from the same rows as the rental periods
+    public Map<String, Integer> getRentalCountsByCar() {
+        return rentalPeriods.countsByCar();
+    }
+
+    // Who had a car during [from, to)
+    public List<RentalIntervalIndex.Period> getRentalsOfCarBetween(String carId, LocalDateTime from, LocalDateTime to) {
+        return rentalPeriods.ofCarBetween(carId, from, to);
+    }
+
+    public Customer getCustomerByPhone(String phoneNumber) {
+        return customersByPhone.get(phoneNumber);
     }
 
     public String getCustomerNameByPhone(String customerId) {
+        Customer customer = customersByPhone.get(customerId);
+        return customer != null ? customer.getName() : "Unknown";
+    }
+
+    // The map is only added to, so logins on other sessions keep finding everyone while it is rebuilt
+    private void rebuildPhoneIndex() {
+        synchronized (customers) {
+            // Room to double before the filter is rebuilt
+            BloomFilter filter = new BloomFilter(Math.max(1024, customers.size() * 2), 0.01);
+            for (Customer customer : customers) {
+                customersByPhone.putIfAbsent(customer.getPhoneNumber(), customer);
+                filter.add(customer.getPhoneNumber());
+            }
+            knownPhoneNumbers = filter;
+        }
+    }
+
+    // With lazy history only the customers known to have an open rental are loaded.
+    // If older data left several open rows for one car, the first customer's wins as returns always did
+    private void rebuildActiveRentals() {
+        activeRentals.clear();
+        Set<String> candidates = csvFileService.getCustomersWithActiveRentals();
         for (Customer customer : customers) {
-            if (customer.getPhoneNumber().equals(customerId)) {
-                return customer.getName();
+            if (candidates != null && !candidates.contains(customer.getPhoneNumber())) {
+                continue;
+            }
+            for (TravelHistory history : customer.getTravelHistories()) {
+                if (history.isActive()) {
+                    activeRentals.putIfAbsent(customer, history);
+                }
             }
         }
-        return "Unknown";
+    }
+
+    // With lazy history the rows are streamed from the segments instead of loading every customer
+    private void rebuildRentalPeriods() {
+        Consumer<TravelHistory> addPeriod = history ->
+                rentalPeriods.add(history.getCustomerId(), history.getCarId(), history.getRentTime(), history.getReturnTime());
+        if (!csvFileService.forEachStoredTravelHistory(addPeriod)) {
+            for (Customer customer : customers) {
+                customer.getTravelHistories().forEach(addPeriod);
+            }
+        }
+        rentalPeriods.sort();
+    }
+
+    private void indexCustomer(Customer customer) {
+        customersByPhone.putIfAbsent(customer.getPhoneNumber(), customer);
+        knownPhoneNumbers.add(customer.getPhoneNumber());
+        if (knownPhoneNumbers.isOverCapacity()) {
+            rebuildPhoneIndex();
+        }
     }
 }
@@ -0,0 +1,318 @@
+package org.example.services;
+
+import org.example.models.Customer;
+import org.example.models.TravelHistory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Lazy travel history on top of the monthly history segments.
+ * At startup only an offset index is built: per customer, one packed long per row holding the
+ * segment month and the row's byte offset. A customer's list is read from the segments on first
+ * access (see Customer.setHistoryLoader) and can be dropped again under memory pressure.
+ * Saving merges the in-memory lists into the open segments, keeping the rows of customers whose
+ * history is not loaded exactly as they are on disk.
+ */
+class LazyTravelHistoryStore {
+    private static final int OFFSET_BITS = 44; // up to 16 TB per segment
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+
+    private final SegmentStore store;
+    private final Function<TravelHistory, String> formatRow;
+    private final Map<String, long[]> offsetsByCustomer = new HashMap<>();
+    private Set<String> customersWithActiveRentals = new HashSet<>(); // as of attach()
+    // Segments are rewritten under the write lock; loads hold the read lock
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    LazyTravelHistoryStore(SegmentStore store, Function<TravelHistory, String> formatRow) {
+        this.store = store;
+        this.formatRow = formatRow;
+    }
+
+    // Index every segment and switch the customers to lazy loading
+    void attach(List<Customer> customers) {
+        lock.writeLock().lock();
+        try {
+            offsetsByCustomer.clear();
+            customersWithActiveRentals = index(store.segments());
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        for (Customer customer : customers) {
+            customer.setHistoryLoader(c -> load(c.getPhoneNumber()));
+        }
+    }
+
+    // Customers that had an active rental when the segments were indexed, so callers looking for
+    // active rentals only need to load these histories
+    Set<String> getCustomersWithActiveRentals() {
+        return customersWithActiveRentals;
+    }
+
+    // Read one customer's rows, in month then file order
+    List<TravelHistory> load(String customerId) {
+        List<TravelHistory> histories = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            long[] offsets = offsetsByCustomer.get(customerId);
+            if (offsets == null) {
+                return histories;
+            }
+
+            Map<YearMonth, SegmentStore.Segment> segments = new HashMap<>();
+            for (SegmentStore.Segment segment : store.segments()) {
+                segments.put(segment.month, segment);
+            }
+
+            MappedCsvReader reader = null;
+            YearMonth readerMonth = null;
+            try {
+                for (long packed : offsets) {
+                    YearMonth month = monthOf(packed);
+                    if (!month.equals(readerMonth)) {
+                        if (reader != null) {
+                            reader.close();
+                        }
+                        reader = store.openReader(segments.get(month));
+                        readerMonth = month;
+                    }
+
+                    reader.seek(packed & OFFSET_MASK);
+                    if (reader.nextRow() && reader.fieldCount() >= 4) {
+                        histories.add(new TravelHistory(customerId, reader.getString(1), reader.getDateTime(2),
+                                reader.fieldEquals(3, "Active") ? null : reader.getDateTime(3)));
+                    }
+                }
+            } finally {
+                if (reader != null) {
+                    reader.close();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error loading travel history for " + customerId, e);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return histories;
+    }
+
+    // Read every stored row in month order without attaching it to a customer
+    void forEachRow(Consumer<TravelHistory> action) {
+        lock.readLock().lock();
+        try {
+            for (SegmentStore.Segment segment : store.segments()) {
+                try (MappedCsvReader reader = store.openReader(segment)) {
+                    // Skip header line
+                    reader.skipLine();
+                    while (reader.nextRow()) {
+                        if (reader.fieldCount() >= 4) {
+                            action.accept(new TravelHistory(reader.getString(0), reader.getString(1), reader.getDateTime(2),
+                                    reader.fieldEquals(3, "Active") ? null : reader.getDateTime(3)));
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading travel history", e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Write the in-memory lists into the open segments and re-index the months that were rewritten
+    void save(List<Customer> customers) throws IOException {
+        // Take the loaded lists once so they cannot be dropped while they are written
+        Map<String, List<TravelHistory>> loaded = new HashMap<>();
+        Map<Customer, Integer> settledSizes = new HashMap<>();
+        for (Customer customer : customers) {
+            List<TravelHistory> histories = customer.getLoadedTravelHistories();
+            if (histories != null) {
+                loaded.put(customer.getPhoneNumber(), histories);
+                if (histories.stream().noneMatch(TravelHistory::isActive)) {
+                    settledSizes.put(customer, histories.size());
+                }
+            }
+        }
+
+        // Months to rewrite: every open segment plus the months of the loaded rows
+        Map<YearMonth, List<TravelHistory>> loadedByMonth = new TreeMap<>();
+        for (SegmentStore.Segment segment : store.segments()) {
+            if (!segment.closed) {
+                loadedByMonth.put(segment.month, new ArrayList<>());
+            }
+        }
+        for (List<TravelHistory> histories : loaded.values()) {
+            for (TravelHistory history : histories) {
+                YearMonth month = YearMonth.from(history.getRentTime());
+                if (!store.isClosed(month)) {
+                    loadedByMonth.computeIfAbsent(month, m -> new ArrayList<>()).add(history);
+                }
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            Map<YearMonth, SegmentStore.Segment> segments = new HashMap<>();
+            for (SegmentStore.Segment segment : store.segments()) {
+                segments.put(segment.month, segment);
+            }
+
+            YearMonth currentMonth = YearMonth.now();
+            List<YearMonth> rewritten = new ArrayList<>();
+            for (Map.Entry<YearMonth, List<TravelHistory>> entry : loadedByMonth.entrySet()) {
+                YearMonth month = entry.getKey();
+                List<String> rows = new ArrayList<>();
+                LocalDateTime[] range = new LocalDateTime[2];
+                boolean settled = true;
+
+                // Rows of customers whose history is not in memory are kept verbatim
+                SegmentStore.Segment segment = segments.get(month);
+                if (segment != null) {
+                    try (MappedCsvReader reader = store.openReader(segment)) {
+                        // Skip header line
+                        reader.skipLine();
+                        while (reader.nextRow()) {
+                            if (reader.fieldCount() >= 4 && !loaded.containsKey(reader.getString(0))) {
+                                rows.add(reader.currentLine());
+                                widen(range, reader.getDateTime(2));
+                                settled &= !reader.fieldEquals(3, "Active");
+                            }
+                        }
+                    }
+                }
+
+                for (TravelHistory history : entry.getValue()) {
+                    rows.add(formatRow.apply(history));
+                    widen(range, history.getRentTime());
+                    settled &= !history.isActive();
+                }
+
+                if (rows.isEmpty()) {
+                    continue;
+                }
+                store.writeSegment(month, rows, range[0], range[1]);
+                if (settled && month.isBefore(currentMonth)) {
+                    store.closeSegment(month);
+                }
+                rewritten.add(month);
+            }
+            store.saveIndex();
+            reindex(rewritten);
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        // Lists that were saved without active rentals may be dropped again
+        for (Map.Entry<Customer, Integer> entry : settledSizes.entrySet()) {
+            entry.getKey().releaseTravelHistories(entry.getValue());
+        }
+    }
+
+    // Replace the offsets of the given months with a fresh scan of their segments
+    private void reindex(List<YearMonth> months) throws IOException {
+        Set<YearMonth> monthSet = new HashSet<>(months);
+        for (Map.Entry<String, long[]> entry : offsetsByCustomer.entrySet()) {
+            entry.setValue(Arrays.stream(entry.getValue())
+                    .filter(packed -> !monthSet.contains(monthOf(packed)))
+                    .toArray());
+        }
+
+        index(store.segments().stream()
+                .filter(segment -> monthSet.contains(segment.month))
+                .collect(Collectors.toList()));
+    }
+
+    // Scan segments in parallel and merge their offsets into the index, keeping month then file order.
+    // Returns the customers with an active rental in these segments.
+    private Set<String> index(List<SegmentStore.Segment> segments) {
+        List<SegmentScan> scanned = segments.parallelStream()
+                .map(this::scanSegment)
+                .collect(Collectors.toList());
+
+        Set<String> activeCustomers = new HashSet<>();
+        for (SegmentScan scan : scanned) {
+            for (Map.Entry<String, long[]> entry : scan.offsets.entrySet()) {
+                offsetsByCustomer.merge(entry.getKey(), entry.getValue(), LazyTravelHistoryStore::concat);
+            }
+            activeCustomers.addAll(scan.activeCustomers);
+        }
+        for (Map.Entry<String, long[]> entry : offsetsByCustomer.entrySet()) {
+            Arrays.sort(entry.getValue()); // month in the high bits, so this is month then file order
+        }
+        return activeCustomers;
+    }
+
+    private static class SegmentScan {
+        final Map<String, long[]> offsets = new HashMap<>();
+        final Set<String> activeCustomers = new HashSet<>();
+    }
+
+    private SegmentScan scanSegment(SegmentStore.Segment segment) {
+        SegmentScan scan = new SegmentScan();
+        Map<String, long[]> offsets = scan.offsets;
+        Map<String, Integer> counts = new HashMap<>();
+        long monthBits = (long) monthNumber(segment.month) << OFFSET_BITS;
+
+        try (MappedCsvReader reader = store.openReader(segment)) {
+            // Skip header line
+            reader.skipLine();
+            while (reader.nextRow()) {
+                if (reader.fieldCount() >= 4) {
+                    String customerId = reader.getString(0);
+                    long[] customerOffsets = offsets.get(customerId);
+                    int count = counts.getOrDefault(customerId, 0);
+                    if (customerOffsets == null || count == customerOffsets.length) {
+                        customerOffsets = customerOffsets == null ? new long[4]
+                                : Arrays.copyOf(customerOffsets, count * 2);
+                        offsets.put(customerId, customerOffsets);
+                    }
+                    customerOffsets[count] = monthBits | reader.rowOffset();
+                    counts.put(customerId, count + 1);
+                    if (reader.fieldEquals(3, "Active")) {
+                        scan.activeCustomers.add(customerId);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        for (Map.Entry<String, long[]> entry : offsets.entrySet()) {
+            entry.setValue(Arrays.copyOf(entry.getValue(), counts.get(entry.getKey())));
+        }
+        return scan;
+    }
+
+    private static void widen(LocalDateTime[] range, LocalDateTime time) {
+        if (range[0] == null || time.isBefore(range[0])) {
+            range[0] = time;
+        }
+        if (range[1] == null || time.isAfter(range[1])) {
+            range[1] = time;
+        }
+    }
+
+    private static long[] concat(long[] first, long[] second) {
+        long[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    private static int monthNumber(YearMonth month) {
+        return month.getYear() * 12 + month.getMonthValue() - 1;
+    }
+
+    private static YearMonth monthOf(long packed) {
+        int monthNumber = (int) (packed >>> OFFSET_BITS);
+        return YearMonth.of(monthNumber / 12, monthNumber % 12 + 1);
+    }
+}
@@ -0,0 +1,310 @@
+package org.example.services;
+
+import org.example.models.Money;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+
+/**
+ * Row reader over a memory-mapped CSV file.
+ * Rows are scanned byte by byte and only field offsets are recorded, so numbers, booleans
+ * and "yyyy-MM-dd HH:mm:ss" timestamps are parsed straight from the mapped bytes without
+ * building a line String or splitting it. Quoting follows escapeCsv: a field wrapped in
+ * double quotes may contain commas, newlines and doubled quotes.
+ */
+class MappedCsvReader implements Closeable {
+    private static final long MAX_WINDOW = 1L << 30; // map at most 1 GB at a time
+
+    private final FileChannel channel;
+    private final boolean ownsChannel;
+    private final long end;
+
+    private ByteBuffer window;
+    private long windowStart;
+    private long position;
+
+    // Field offsets of the current row, relative to the window
+    private int[] fieldStart = new int[16];
+    private int[] fieldEnd = new int[16];
+    private boolean[] fieldQuoted = new boolean[16];
+    private int fieldCount;
+    private long rowStart; // absolute position of the current row
+    private byte[] scratch = new byte[64];
+    private final FieldChars fieldChars = new FieldChars();
+
+    // Read a whole file
+    static MappedCsvReader open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        return new MappedCsvReader(channel, 0, channel.size(), true);
+    }
+
+    // Read the rows in [start, end) of an already open file; start must be at a row boundary
+    MappedCsvReader(FileChannel channel, long start, long end) throws IOException {
+        this(channel, start, end, false);
+    }
+
+    // Read rows from bytes already in memory, such as an inflated gzip segment
+    MappedCsvReader(ByteBuffer buffer) {
+        this.channel = null;
+        this.ownsChannel = false;
+        this.end = buffer.limit();
+        this.window = buffer;
+    }
+
+    private MappedCsvReader(FileChannel channel, long start, long end, boolean ownsChannel) throws IOException {
+        this.channel = channel;
+        this.ownsChannel = ownsChannel;
+        this.end = end;
+        this.position = start;
+        mapWindow(start);
+    }
+
+    // Skip the header row
+    void skipLine() throws IOException {
+        nextRow();
+    }
+
+    // Advance to the next non-empty row, returns false at the end of the range
+    boolean nextRow() throws IOException {
+        while (position < end) {
+            if (scanRow()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Byte position of the current row, usable with seek
+    long rowOffset() {
+        return rowStart;
+    }
+
+    // Continue reading at a row boundary returned by rowOffset
+    void seek(long position) throws IOException {
+        if (position < windowStart || position >= windowStart + window.limit()) {
+            mapWindow(position);
+        }
+        this.position = position;
+    }
+
+    int fieldCount() {
+        return fieldCount;
+    }
+
+    String getString(int field) {
+        int start = fieldStart[field];
+        int length = fieldEnd[field] - start;
+        if (!fieldQuoted[field]) {
+            return decode(start, length);
+        }
+
+        // Quoted field: drop the surrounding quotes and collapse doubled quotes
+        ensureScratch(length);
+        int n = 0;
+        for (int i = start + 1; i < fieldEnd[field] - 1; i++) {
+            byte b = window.get(i);
+            scratch[n++] = b;
+            if (b == '"') {
+                i++;
+            }
+        }
+        return new String(scratch, 0, n, StandardCharsets.UTF_8);
+    }
+
+    boolean getBoolean(int field) {
+        int start = fieldStart[field];
+        return fieldEnd[field] - start == 4
+                && (window.get(start) | 0x20) == 't'
+                && (window.get(start + 1) | 0x20) == 'r'
+                && (window.get(start + 2) | 0x20) == 'u'
+                && (window.get(start + 3) | 0x20) == 'e';
+    }
+
+    // Amounts are parsed in place through a reusable view of the field's bytes
+    Money getMoney(int field) {
+        fieldChars.start = fieldStart[field];
+        fieldChars.end = fieldEnd[field];
+        return Money.ofCents(Money.parseCents(fieldChars, 0, fieldChars.length()));
+    }
+
+    // Parse a fixed "yyyy-MM-dd HH:mm:ss" timestamp
+    LocalDateTime getDateTime(int field) {
+        int i = fieldStart[field];
+        if (fieldEnd[field] - i != 19
+                || window.get(i + 4) != '-' || window.get(i + 7) != '-' || window.get(i + 10) != ' '
+                || window.get(i + 13) != ':' || window.get(i + 16) != ':') {
+            throw new DateTimeParseException("Invalid timestamp", getString(field), 0);
+        }
+        return LocalDateTime.of(
+                digits(i, 4), digits(i + 5, 2), digits(i + 8, 2),
+                digits(i + 11, 2), digits(i + 14, 2), digits(i + 17, 2));
+    }
+
+    // True if the field equals the given ASCII text, without creating a String
+    boolean fieldEquals(int field, String text) {
+        int start = fieldStart[field];
+        if (fieldEnd[field] - start != text.length()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (window.get(start + i) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Raw text of the current row, used for error messages
+    String currentLine() {
+        if (fieldCount == 0) {
+            return "";
+        }
+        return decode(fieldStart[0], fieldEnd[fieldCount - 1] - fieldStart[0]);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (ownsChannel) {
+            channel.close();
+        }
+    }
+
+    // Scan one row starting at position; returns false for blank lines
+    private boolean scanRow() throws IOException {
+        long rowStart = position;
+        this.rowStart = rowStart;
+        int i = (int) (rowStart - windowStart);
+        int limit = window.limit();
+        fieldCount = 0;
+        int start = i;
+        boolean quoted = false;
+        boolean inQuotes = false;
+
+        while (true) {
+            if (i >= limit) {
+                if (windowStart + limit >= end) {
+                    break; // last row without a trailing newline
+                }
+                // Row crosses the mapped window: remap from the row start and rescan
+                if (rowStart == windowStart) {
+                    throw new IOException("CSV row longer than " + MAX_WINDOW + " bytes");
+                }
+                mapWindow(rowStart);
+                return scanRow();
+            }
+
+            byte b = window.get(i);
+            if (inQuotes) {
+                if (b == '"') {
+                    if (i + 1 < limit && window.get(i + 1) == '"') {
+                        i++; // escaped quote
+                    } else {
+                        inQuotes = false;
+                    }
+                }
+            } else if (b == '"' && i == start) {
+                inQuotes = true;
+                quoted = true;
+            } else if (b == ',') {
+                addField(start, i, quoted);
+                start = i + 1;
+                quoted = false;
+            } else if (b == '\n') {
+                break;
+            }
+            i++;
+        }
+
+        int lineEnd = i;
+        if (lineEnd > start && window.get(lineEnd - 1) == '\r') {
+            lineEnd--;
+        }
+        position = windowStart + Math.min(i + 1, limit);
+
+        if (fieldCount == 0 && lineEnd == start) {
+            return false; // blank line
+        }
+        addField(start, lineEnd, quoted);
+        return true;
+    }
+
+    private void addField(int start, int stop, boolean quoted) {
+        if (fieldCount == fieldStart.length) {
+            fieldStart = Arrays.copyOf(fieldStart, fieldCount * 2);
+            fieldEnd = Arrays.copyOf(fieldEnd, fieldCount * 2);
+            fieldQuoted = Arrays.copyOf(fieldQuoted, fieldCount * 2);
+        }
+        fieldStart[fieldCount] = start;
+        fieldEnd[fieldCount] = stop;
+        fieldQuoted[fieldCount] = quoted;
+        fieldCount++;
+    }
+
+    private void mapWindow(long start) throws IOException {
+        long size = Math.min(MAX_WINDOW, end - start);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.max(0, size));
+        windowStart = start;
+    }
+
+    private String decode(int start, int length) {
+        ensureScratch(length);
+        window.get(start, scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private int digits(int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int d = window.get(i) - '0';
+            if (d < 0 || d > 9) {
+                throw new DateTimeParseException("Invalid timestamp", decode(start, count), 0);
+            }
+            value = value * 10 + d;
+        }
+        return value;
+    }
+
+    private void ensureScratch(int length) {
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+    }
+
+    // ASCII bytes of one field as a CharSequence, without copying
+    private class FieldChars implements CharSequence {
+        private int start;
+        private int end;
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (window.get(start + index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return toString().substring(from, to);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder(length());
+            for (int i = start; i < end; i++) {
+                text.append((char) (window.get(i) & 0xFF));
+            }
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,411 @@
+package org.example.services;
+
+import org.example.models.Billing;
+import org.example.models.Car;
+import org.example.models.Customer;
+import org.example.models.Money;
+import org.example.models.TravelHistory;
+import org.example.structures.BPlusTree;
+import org.example.structures.PageFile;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Repositories over the embedded page store in data/store.db.
+ * Each entity type is a B+tree in the same page file: cars by id, customers by phone number,
+ * billings by bill id, and travel history by customer id, rent time and car id, so one customer's
+ * rentals are a contiguous key range in rent time order. Values are encoded with DataOutput,
+ * timestamps as epoch seconds and money as cents.
+ */
+class PageStoreRepositories extends Repositories {
+    private static final String DATA_DIRECTORY = "data";
+    private static final String STORE_FILE = "store.db";
+    private static final int CARS_ROOT = 0;
+    private static final int CUSTOMERS_ROOT = 1;
+    private static final int TRAVEL_HISTORY_ROOT = 2;
+    private static final int BILLINGS_ROOT = 3;
+    private static final long ACTIVE = Long.MIN_VALUE; // return time of an active rental
+
+    private final PageFile pages;
+    private final BPlusTree carTree;
+    private final BPlusTree customerTree;
+    private final BPlusTree historyTree;
+    private final BPlusTree billingTree;
+    private final CarRepository cars = new PageCarRepository();
+    private final CustomerRepository customers = new PageCustomerRepository();
+    private final TravelHistoryRepository travelHistories = new PageTravelHistoryRepository();
+    private final BillingRepository billings = new PageBillingRepository();
+
+    PageStoreRepositories() {
+        Path storeFile = Paths.get(DATA_DIRECTORY, STORE_FILE);
+        try {
+            Files.createDirectories(storeFile.getParent());
+            pages = new PageFile(storeFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error opening page store " + storeFile, e);
+        }
+        carTree = new BPlusTree(pages, CARS_ROOT);
+        customerTree = new BPlusTree(pages, CUSTOMERS_ROOT);
+        historyTree = new BPlusTree(pages, TRAVEL_HISTORY_ROOT);
+        billingTree = new BPlusTree(pages, BILLINGS_ROOT);
+
+        if (pages.getPageCount() == 1) {
+            importCsvFiles();
+        }
+    }
+
+    @Override
+    public CarRepository cars() {
+        return cars;
+    }
+
+    @Override
+    public CustomerRepository customers() {
+        return customers;
+    }
+
+    @Override
+    public TravelHistoryRepository travelHistories() {
+        return travelHistories;
+    }
+
+    @Override
+    public BillingRepository billings() {
+        return billings;
+    }
+
+    @Override
+    public boolean flush() {
+        try {
+            pages.sync();
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error syncing page store: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // First start on a new store: copy everything in from the CSV files
+    private void importCsvFiles() {
+        CSVFileService csvFileService = CSVFileService.getInstance();
+        cars.saveAll(csvFileService.loadCars());
+        customers.saveAll(csvFileService.loadCustomers());
+        billings.saveAll(csvFileService.loadBillings());
+        flush();
+        System.out.println("Imported CSV data into " + STORE_FILE);
+    }
+
+    private class PageCarRepository implements CarRepository {
+        @Override
+        public List<Car> findAll() {
+            List<Car> all = new ArrayList<>();
+            scanAll(carTree, value -> all.add(decodeCar(value)));
+            return new CopyOnWriteArrayList<>(all);
+        }
+
+        @Override
+        public Car findById(String carId) {
+            byte[] value = get(carTree, key(carId));
+            return value != null ? decodeCar(value) : null;
+        }
+
+        @Override
+        public void save(Car car) {
+            put(carTree, key(car.getCarId()), encodeCar(car));
+        }
+
+        @Override
+        public void saveAll(List<Car> cars) {
+            clear(carTree);
+            for (Car car : cars) {
+                save(car);
+            }
+        }
+    }
+
+    private class PageCustomerRepository implements CustomerRepository {
+        @Override
+        public List<Customer> findAll() {
+            Map<String, Customer> all = new LinkedHashMap<>();
+            scanAll(customerTree, value -> {
+                Customer customer = decodeCustomer(value);
+                all.put(customer.getPhoneNumber(), customer);
+            });
+
+            // One pass over the history tree; keys group each customer's rentals together
+            Map<String, List<TravelHistory>> histories = new HashMap<>();
+            scanAll(historyTree, value -> {
+                TravelHistory history = decodeTravelHistory(value);
+                histories.computeIfAbsent(history.getCustomerId(), id -> new ArrayList<>()).add(history);
+            });
+            for (Map.Entry<String, List<TravelHistory>> entry : histories.entrySet()) {
+                Customer customer = all.get(entry.getKey());
+                if (customer != null) {
+                    customer.addTravelHistories(entry.getValue());
+                }
+            }
+            return Collections.synchronizedList(new ArrayList<>(all.values()));
+        }
+
+        @Override
+        public Customer findByPhoneNumber(String phoneNumber) {
+            byte[] value = get(customerTree, key(phoneNumber));
+            if (value == null) {
+                return null;
+            }
+            Customer customer = decodeCustomer(value);
+            customer.addTravelHistories(travelHistories.findByCustomer(phoneNumber));
+            return customer;
+        }
+
+        @Override
+        public void save(Customer customer) {
+            put(customerTree, key(customer.getPhoneNumber()), encodeCustomer(customer));
+        }
+
+        @Override
+        public void saveAll(List<Customer> customers) {
+            clear(customerTree);
+            clear(historyTree);
+            for (Customer customer : customers) {
+                save(customer);
+                for (TravelHistory history : customer.getTravelHistories()) {
+                    travelHistories.save(history);
+                }
+            }
+        }
+    }
+
+    private class PageTravelHistoryRepository implements TravelHistoryRepository {
+        @Override
+        public List<TravelHistory> findByCustomer(String customerId) {
+            byte[] prefix = historyPrefix(customerId);
+            List<TravelHistory> histories = new ArrayList<>();
+            try {
+                historyTree.scan(prefix, (key, value) -> {
+                    if (!startsWith(key, prefix)) {
+                        return false;
+                    }
+                    histories.add(decodeTravelHistory(value));
+                    return true;
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error reading travel history for " + customerId, e);
+            }
+            return histories;
+        }
+
+        @Override
+        public void save(TravelHistory history) {
+            put(historyTree, historyKey(history), encodeTravelHistory(history));
+        }
+    }
+
+    private class PageBillingRepository implements BillingRepository {
+        @Override
+        public List<Billing> findAll() {
+            List<Billing> all = new ArrayList<>();
+            scanAll(billingTree, value -> all.add(decodeBilling(value)));
+            // Keep the CSV order, oldest billing first
+            all.sort(Comparator.comparing(Billing::getBillingTime));
+            return Collections.synchronizedList(all);
+        }
+
+        @Override
+        public Billing findById(String billId) {
+            byte[] value = get(billingTree, key(billId));
+            return value != null ? decodeBilling(value) : null;
+        }
+
+        @Override
+        public void save(Billing billing) {
+            put(billingTree, key(billing.getBillId()), encodeBilling(billing));
+        }
+
+        @Override
+        public void saveAll(List<Billing> billings) {
+            clear(billingTree);
+            for (Billing billing : billings) {
+                save(billing);
+            }
+        }
+    }
+
+    // Tree access, I/O errors are rethrown unchecked
+
+    private static byte[] get(BPlusTree tree, byte[] key) {
+        try {
+            return tree.get(key);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading page store", e);
+        }
+    }
+
+    private static void put(BPlusTree tree, byte[] key, byte[] value) {
+        try {
+            tree.put(key, value);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error writing page store", e);
+        }
+    }
+
+    private static void clear(BPlusTree tree) {
+        try {
+            tree.clear();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error clearing page store", e);
+        }
+    }
+
+    private static void scanAll(BPlusTree tree, Consumer<byte[]> consumer) {
+        try {
+            tree.scan(new byte[0], (key, value) -> {
+                consumer.accept(value);
+                return true;
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading page store", e);
+        }
+    }
+
+    // Keys
+
+    private static byte[] key(String id) {
+        return id.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // customerId, a 0 byte, then the rest of the key, so a prefix never matches a longer id
+    private static byte[] historyPrefix(String customerId) {
+        byte[] id = key(customerId);
+        return Arrays.copyOf(id, id.length + 1);
+    }
+
+    // Prefix, rent time as big-endian epoch seconds with the sign bit flipped so it sorts, car id
+    private static byte[] historyKey(TravelHistory history) {
+        byte[] prefix = historyPrefix(history.getCustomerId());
+        byte[] carId = key(history.getCarId());
+        byte[] key = Arrays.copyOf(prefix, prefix.length + 8 + carId.length);
+        long rentSecond = toEpochSecond(history.getRentTime()) ^ Long.MIN_VALUE;
+        for (int i = 0; i < 8; i++) {
+            key[prefix.length + i] = (byte) (rentSecond >>> (56 - 8 * i));
+        }
+        System.arraycopy(carId, 0, key, prefix.length + 8, carId.length);
+        return key;
+    }
+
+    private static boolean startsWith(byte[] key, byte[] prefix) {
+        return key.length >= prefix.length
+                && Arrays.equals(key, 0, prefix.length, prefix, 0, prefix.length);
+    }
+
+    // Values
+
+    private static byte[] encodeCar(Car car) {
+        return encode(out -> {
+            out.writeUTF(car.getCarId());
+            out.writeUTF(car.getModel());
+            out.writeBoolean(car.isAvailable());
+            out.writeLong(car.getHourlyRate().getCents());
+            out.writeUTF(car.getCategory());
+        });
+    }
+
+    private static Car decodeCar(byte[] value) {
+        return decode(value, in -> new Car(in.readUTF(), in.readUTF(), in.readBoolean(),
+                Money.ofCents(in.readLong()), in.readUTF()));
+    }
+
+    private static byte[] encodeCustomer(Customer customer) {
+        return encode(out -> {
+            out.writeUTF(customer.getPhoneNumber());
+            out.writeUTF(customer.getName());
+            out.writeUTF(customer.getPassword());
+        });
+    }
+
+    private static Customer decodeCustomer(byte[] value) {
+        return decode(value, in -> new Customer(in.readUTF(), in.readUTF(), in.readUTF()));
+    }
+
+    private static byte[] encodeTravelHistory(TravelHistory history) {
+        return encode(out -> {
+            out.writeUTF(history.getCustomerId());
+            out.writeUTF(history.getCarId());
+            out.writeLong(toEpochSecond(history.getRentTime()));
+            out.writeLong(history.getReturnTime() != null ? toEpochSecond(history.getReturnTime()) : ACTIVE);
+        });
+    }
+
+    private static TravelHistory decodeTravelHistory(byte[] value) {
+        return decode(value, in -> {
+            String customerId = in.readUTF();
+            String carId = in.readUTF();
+            LocalDateTime rentTime = fromEpochSecond(in.readLong());
+            long returnSecond = in.readLong();
+            return new TravelHistory(customerId, carId, rentTime,
+                    returnSecond == ACTIVE ? null : fromEpochSecond(returnSecond));
+        });
+    }
+
+    private static byte[] encodeBilling(Billing billing) {
+        return encode(out -> {
+            out.writeUTF(billing.getBillId());
+            out.writeUTF(billing.getCustomerId());
+            out.writeUTF(billing.getCarId());
+            out.writeLong(billing.getHourlyRate().getCents());
+            out.writeLong(billing.getAdvancePayment().getCents());
+            out.writeLong(billing.getFinalAmount().getCents());
+            out.writeLong(toEpochSecond(billing.getBillingTime()));
+            out.writeBoolean(billing.isPaid());
+        });
+    }
+
+    private static Billing decodeBilling(byte[] value) {
+        return decode(value, in -> new Billing(in.readUTF(), in.readUTF(), in.readUTF(),
+                Money.ofCents(in.readLong()), Money.ofCents(in.readLong()), Money.ofCents(in.readLong()),
+                fromEpochSecond(in.readLong()), in.readBoolean()));
+    }
+
+    private interface Encoder {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private interface Decoder<T> {
+        T read(DataInputStream in) throws IOException;
+    }
+
+    private static byte[] encode(Encoder encoder) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            encoder.write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // in-memory stream
+        }
+        return bytes.toByteArray();
+    }
+
+    private static <T> T decode(byte[] value, Decoder<T> decoder) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(value))) {
+            return decoder.read(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Corrupt record in page store", e);
+        }
+    }
+
+    private static long toEpochSecond(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static LocalDateTime fromEpochSecond(long second) {
+        return LocalDateTime.ofEpochSecond(second, 0, ZoneOffset.UTC);
+    }
+}
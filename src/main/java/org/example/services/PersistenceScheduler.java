@@ -0,0 +1,139 @@
+package org.example.services;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Writes entity files from a background thread.
+ * Services mark their entity set dirty instead of saving on the interactive thread; the first mark
+ * schedules a flush after the max staleness, and every further mark in that window is folded into
+ * the same write, so a burst of changes costs one write per file. A target whose write fails stays
+ * dirty and is tried again later, and flush() reports it if it still cannot be written.
+ * The max staleness can be set with -Dcarrental.persistence.maxStalenessMs (default 200).
+ */
+public class PersistenceScheduler {
+    public enum Target { CARS, CUSTOMERS, BILLINGS }
+
+    private static final int MAX_FLUSH_ATTEMPTS = 3;
+    // Delay before a failed background write is tried again
+    private static final long RETRY_DELAY_MS = 5000;
+
+    private static PersistenceScheduler instance;
+
+    private final ScheduledExecutorService executor;
+    private final Map<Target, BooleanSupplier> writers = new EnumMap<>(Target.class);
+    private final Set<Target> dirty = EnumSet.noneOf(Target.class);
+    private boolean flushScheduled;
+    private long maxStalenessMs = Long.getLong("carrental.persistence.maxStalenessMs", 200);
+
+    private PersistenceScheduler() {
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "persistence-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // Never lose a pending write when the JVM exits without an explicit flush
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "persistence-shutdown"));
+    }
+
+    public static synchronized PersistenceScheduler getInstance() {
+        if (instance == null) {
+            instance = new PersistenceScheduler();
+        }
+        return instance;
+    }
+
+    // Register how a target is written, returning false if it could not be; called once by the owning service
+    public synchronized void register(Target target, BooleanSupplier writer) {
+        writers.put(target, writer);
+    }
+
+    public synchronized void setMaxStalenessMs(long maxStalenessMs) {
+        this.maxStalenessMs = maxStalenessMs;
+    }
+
+    // Mark a target as changed; it is written at most maxStalenessMs later
+    public synchronized void markDirty(Target target) {
+        markDirty(target, maxStalenessMs);
+    }
+
+    private synchronized void markDirty(Target target, long delayMs) {
+        dirty.add(target);
+        if (!flushScheduled) {
+            flushScheduled = true;
+            executor.schedule(this::writeDirty, delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Write everything that is dirty and wait for it; used on shutdown.
+    // False if something could not be written, which then stays dirty and is retried in the background.
+    public boolean flush() {
+        Set<Target> failed = EnumSet.noneOf(Target.class);
+        for (int attempt = 0; attempt < MAX_FLUSH_ATTEMPTS; attempt++) {
+            try {
+                failed = executor.submit(this::writeDirty).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ExecutionException e) {
+                System.err.println("Error flushing data: " + e.getCause().getMessage());
+                return false;
+            }
+
+            synchronized (this) {
+                if (dirty.isEmpty()) {
+                    return true;
+                }
+            }
+        }
+        if (!failed.isEmpty()) {
+            System.err.println("Could not write " + failed + " after " + MAX_FLUSH_ATTEMPTS + " attempts");
+            return false;
+        }
+        // Only changes made while flushing are left; they are written in the background
+        return true;
+    }
+
+    // Runs on the writer thread only; returns the targets that could not be written
+    private Set<Target> writeDirty() {
+        Set<Target> failed = EnumSet.noneOf(Target.class);
+        Set<Target> toWrite;
+        synchronized (this) {
+            toWrite = EnumSet.copyOf(dirty);
+            dirty.clear();
+            flushScheduled = false;
+        }
+
+        for (Target target : toWrite) {
+            BooleanSupplier writer;
+            synchronized (this) {
+                writer = writers.get(target);
+            }
+            if (writer == null) {
+                continue;
+            }
+
+            boolean written;
+            try {
+                written = writer.getAsBoolean();
+            } catch (RuntimeException e) {
+                System.err.println("Error writing " + target + ": " + e);
+                written = false;
+            }
+            if (!written) {
+                // Keep the changes pending; a later flush or the retry writes them
+                failed.add(target);
+                markDirty(target, RETRY_DELAY_MS);
+            }
+        }
+        return failed;
+    }
+}
@@ -0,0 +1,43 @@
+package org.example.services;
+
+/**
+ * Entry point to entity storage.
+ * The default stores everything in the CSV files through CSVFileService. With
+ * -Dcarrental.storage=pages, entities live in a single page file (data/store.db) with one B+tree
+ * per entity type, so saving one record costs O(log n) page writes instead of a file rewrite.
+ * The page file is filled from the CSV files the first time it is opened.
+ */
+public abstract class Repositories {
+    private static final boolean PAGE_STORE = "pages".equals(System.getProperty("carrental.storage"));
+
+    private static volatile Repositories instance;
+
+    public static Repositories getInstance() {
+        Repositories result = instance;
+        if (result == null) {
+            synchronized (Repositories.class) {
+                result = instance;
+                if (result == null) {
+                    instance = result = PAGE_STORE ? new PageStoreRepositories() : new CsvRepositories();
+                }
+            }
+        }
+        return result;
+    }
+
+    // The journal and snapshot only apply to the CSV files
+    static boolean usesPageStore() {
+        return PAGE_STORE;
+    }
+
+    public abstract CarRepository cars();
+
+    public abstract CustomerRepository customers();
+
+    public abstract TravelHistoryRepository travelHistories();
+
+    public abstract BillingRepository billings();
+
+    // Make every saved change durable; called on exit. False if some of it could not be written.
+    public abstract boolean flush();
+}
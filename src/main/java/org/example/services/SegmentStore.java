@@ -0,0 +1,201 @@
+package org.example.services;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Monthly segment files for one time-ordered CSV data set (travel history or billings).
+ * Every month is its own CSV file with the usual header; segments.idx records each month's
+ * time range, row count and state. A month is closed once it is over and none of its rows can
+ * change any more; closed segments are never rewritten and are gzip-compressed when enabled.
+ */
+class SegmentStore {
+    private static final String INDEX_FILE = "segments.idx";
+    private static final String INDEX_HEADER = "Month,MinTime,MaxTime,Rows,Closed,Compressed";
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    static class Segment {
+        final YearMonth month;
+        LocalDateTime minTime;
+        LocalDateTime maxTime;
+        int rows;
+        boolean closed;
+        boolean compressed;
+
+        Segment(YearMonth month) {
+            this.month = month;
+        }
+
+        // True if any row of this segment can fall in [from, to)
+        boolean overlaps(LocalDateTime from, LocalDateTime to) {
+            return rows > 0 && maxTime.compareTo(from) >= 0 && minTime.isBefore(to);
+        }
+    }
+
+    private final Path directory;
+    private final String header;
+    private final boolean compressClosed;
+    private final Map<YearMonth, Segment> segments = new TreeMap<>();
+
+    SegmentStore(Path directory, String header, boolean compressClosed) {
+        this.directory = directory;
+        this.header = header;
+        this.compressClosed = compressClosed;
+        readIndex();
+    }
+
+    // True once the data set has been written as segments
+    boolean exists() {
+        return Files.exists(directory.resolve(INDEX_FILE));
+    }
+
+    // All segments, oldest month first
+    List<Segment> segments() {
+        return new ArrayList<>(segments.values());
+    }
+
+    List<Segment> segmentsOverlapping(LocalDateTime from, LocalDateTime to) {
+        List<Segment> overlapping = new ArrayList<>();
+        for (Segment segment : segments.values()) {
+            if (segment.overlaps(from, to)) {
+                overlapping.add(segment);
+            }
+        }
+        return overlapping;
+    }
+
+    boolean isClosed(YearMonth month) {
+        Segment segment = segments.get(month);
+        return segment != null && segment.closed;
+    }
+
+    Path path(Segment segment) {
+        return directory.resolve(segment.month + (segment.compressed ? ".csv.gz" : ".csv"));
+    }
+
+    // Index and segment files, in a stable order
+    List<Path> files() {
+        List<Path> files = new ArrayList<>();
+        if (exists()) {
+            files.add(directory.resolve(INDEX_FILE));
+        }
+        for (Segment segment : segments.values()) {
+            files.add(path(segment));
+        }
+        return files;
+    }
+
+    // Rewrite an open month; rows are already formatted CSV lines
+    void writeSegment(YearMonth month, List<String> rows, LocalDateTime minTime, LocalDateTime maxTime) throws IOException {
+        Segment segment = segments.computeIfAbsent(month, Segment::new);
+        if (segment.closed) {
+            throw new IllegalStateException("Segment " + month + " is closed");
+        }
+
+        Files.createDirectories(directory);
+        Path tempFile = directory.resolve(month + ".csv.tmp");
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(tempFile))) {
+            writer.println(header);
+            for (String row : rows) {
+                writer.println(row);
+            }
+        }
+        Files.move(tempFile, directory.resolve(month + ".csv"), StandardCopyOption.REPLACE_EXISTING);
+
+        segment.minTime = minTime;
+        segment.maxTime = maxTime;
+        segment.rows = rows.size();
+    }
+
+    // Make a month immutable, compressing it if enabled
+    void closeSegment(YearMonth month) throws IOException {
+        Segment segment = segments.get(month);
+        if (segment == null || segment.closed) {
+            return;
+        }
+
+        if (compressClosed) {
+            Path plainFile = path(segment);
+            Path gzipFile = directory.resolve(month + ".csv.gz");
+            Path tempFile = directory.resolve(month + ".csv.gz.tmp");
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tempFile))) {
+                Files.copy(plainFile, out);
+            }
+            Files.move(tempFile, gzipFile, StandardCopyOption.REPLACE_EXISTING);
+            Files.delete(plainFile);
+            segment.compressed = true;
+        }
+        segment.closed = true;
+    }
+
+    void saveIndex() throws IOException {
+        Files.createDirectories(directory);
+        Path tempFile = directory.resolve(INDEX_FILE + ".tmp");
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(tempFile))) {
+            writer.println(INDEX_HEADER);
+            for (Segment segment : segments.values()) {
+                if (segment.rows == 0) {
+                    continue;
+                }
+                writer.printf("%s,%s,%s,%d,%s,%s%n",
+                        segment.month,
+                        segment.minTime.format(DATE_FORMATTER),
+                        segment.maxTime.format(DATE_FORMATTER),
+                        segment.rows,
+                        segment.closed,
+                        segment.compressed);
+            }
+        }
+        Files.move(tempFile, directory.resolve(INDEX_FILE), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // Reader over one segment; compressed segments are inflated into memory first
+    MappedCsvReader openReader(Segment segment) throws IOException {
+        if (!segment.compressed) {
+            return MappedCsvReader.open(path(segment));
+        }
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(path(segment)))) {
+            return new MappedCsvReader(ByteBuffer.wrap(in.readAllBytes()));
+        }
+    }
+
+    private void readIndex() {
+        Path indexFile = directory.resolve(INDEX_FILE);
+        if (!Files.exists(indexFile)) {
+            return;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(indexFile)) {
+            // Skip header line
+            reader.readLine();
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(",");
+                if (parts.length >= 6) {
+                    Segment segment = new Segment(YearMonth.parse(parts[0]));
+                    segment.minTime = LocalDateTime.parse(parts[1], DATE_FORMATTER);
+                    segment.maxTime = LocalDateTime.parse(parts[2], DATE_FORMATTER);
+                    segment.rows = Integer.parseInt(parts[3]);
+                    segment.closed = Boolean.parseBoolean(parts[4]);
+                    segment.compressed = Boolean.parseBoolean(parts[5]);
+                    segments.put(segment.month, segment);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error reading segment index " + indexFile + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package org.example.services;
+
+import org.example.models.Customer;
+import org.example.structures.TimerWheel;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logged in sessions, each known by an opaque random token
+ * A session ends when it is logged out or after it has been idle for the idle timeout. Using a
+ * session only stamps its last access time; expiry is driven by a timer wheel that a background
+ * thread advances once a tick. When a session's timer fires after it was used again, it is
+ * rescheduled for its new deadline instead of being expired, so a busy session is looked at about
+ * once per timeout rather than on every request.
+ * The idle timeout can be set with -Dcarrental.session.idleTimeoutMs (default 30 minutes).
+ */
+public class SessionManager {
+    private static final long TICK_MILLIS = 1000;
+    private static final int TOKEN_BYTES = 24;
+
+    private static volatile SessionManager instance;
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    // Guarded by itself
+    private final TimerWheel<Session> expiries;
+    private final long idleTimeoutMillis;
+    private final long tickMillis;
+    private final SecureRandom random = new SecureRandom();
+    private final ScheduledExecutorService ticker;
+
+    // A customer's session, or the admin's when customer is null
+    public static final class Session extends TimerWheel.Entry {
+        private final String token;
+        private final Customer customer;
+        private volatile long lastAccessMillis;
+
+        private Session(String token, Customer customer, long now) {
+            this.token = token;
+            this.customer = customer;
+            this.lastAccessMillis = now;
+        }
+
+        public String getToken() {
+            return token;
+        }
+
+        public Customer getCustomer() {
+            return customer;
+        }
+
+        public boolean isAdmin() {
+            return customer == null;
+        }
+
+        public long getLastAccessMillis() {
+            return lastAccessMillis;
+        }
+    }
+
+    SessionManager(long idleTimeoutMillis, long tickMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.tickMillis = tickMillis;
+        long now = System.currentTimeMillis();
+        // One turn of the wheel covers the idle timeout, so a timer is only visited when it is due
+        int slots = (int) Math.min(1 << 16, Math.max(64, idleTimeoutMillis / tickMillis + 1));
+        expiries = new TimerWheel<>(slots, tickMillis, now);
+
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "session-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(() -> expireIdle(System.currentTimeMillis()), tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public static SessionManager getInstance() {
+        SessionManager result = instance;
+        if (result == null) {
+            synchronized (SessionManager.class) {
+                result = instance;
+                if (result == null) {
+                    instance = result = new SessionManager(
+                            Long.getLong("carrental.session.idleTimeoutMs", TimeUnit.MINUTES.toMillis(30)), TICK_MILLIS);
+                }
+            }
+        }
+        return result;
+    }
+
+    // Start a session for a customer, or for the admin when customer is null
+    public Session create(Customer customer) {
+        long now = System.currentTimeMillis();
+        Session session;
+        do {
+            session = new Session(newToken(), customer, now);
+        } while (sessions.putIfAbsent(session.token, session) != null);
+
+        synchronized (expiries) {
+            expiries.schedule(session, now + idleTimeoutMillis);
+        }
+        return session;
+    }
+
+    // The live session with this token, marked as used, or null if it is unknown or has expired
+    public Session get(String token) {
+        if (token == null) {
+            return null;
+        }
+        Session session = sessions.get(token);
+        return session != null && touch(session) ? session : null;
+    }
+
+    // The customer of a live customer session, marked as used; null for no session, an expired
+    // one or the admin's
+    public Customer customerOf(Session session) {
+        if (session == null || session.isAdmin() || sessions.get(session.token) != session || !touch(session)) {
+            return null;
+        }
+        return session.customer;
+    }
+
+    public void end(Session session) {
+        if (session != null && sessions.remove(session.token, session)) {
+            synchronized (expiries) {
+                expiries.cancel(session);
+            }
+        }
+    }
+
+    public int count() {
+        return sessions.size();
+    }
+
+    // Run by the ticker; also callable directly with a given clock
+    int expireIdle(long now) {
+        int[] expired = new int[1];
+        synchronized (expiries) {
+            expiries.advance(now, session -> {
+                long deadline = session.lastAccessMillis + idleTimeoutMillis;
+                if (deadline > now && sessions.get(session.token) == session) {
+                    expiries.schedule(session, deadline);
+                } else if (sessions.remove(session.token, session)) {
+                    expired[0]++;
+                }
+            });
+        }
+        return expired[0];
+    }
+
+    // Stamp a use of the session; false if it has been idle too long, even if its timer has not fired yet
+    private boolean touch(Session session) {
+        long now = System.currentTimeMillis();
+        long idle = now - session.lastAccessMillis;
+        if (idle >= idleTimeoutMillis) {
+            return false;
+        }
+        // The timer only works to the tick, so within one the stamp is left alone rather than
+        // written by every request
+        if (idle >= tickMillis) {
+            session.lastAccessMillis = now;
+        }
+        return true;
+    }
+
+    private String newToken() {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
@@ -0,0 +1,13 @@
+package org.example.services;
+
+import org.example.models.TravelHistory;
+
+import java.util.List;
+
+// Storage of rentals, keyed by customer, rent time and car
+public interface TravelHistoryRepository {
+    List<TravelHistory> findByCustomer(String customerId);
+
+    // Insert a new rental or update a returned one
+    void save(TravelHistory history);
+}
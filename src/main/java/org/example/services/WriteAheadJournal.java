@@ -0,0 +1,146 @@
+package org.example.services;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only journal file used by CSVFileService in journal mode.
+ * Appenders hand their record to a background committer thread and wait until it is on disk.
+ * Records that arrive while a write is in progress are written and fsynced together (group commit),
+ * so a burst of mutations costs one force() instead of one per record.
+ */
+class WriteAheadJournal {
+    private static final long IDLE_WAIT_MS = 1000;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final StringBuilder pending = new StringBuilder();
+    private long appendedSeq;   // records handed to the journal
+    private long committedSeq;  // records known to be on disk
+    private IOException commitError;
+
+    WriteAheadJournal(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+        // Existing records count as committed, the sequence keeps growing from there
+        appendedSeq = readRecords().size();
+        committedSeq = appendedSeq;
+
+        Thread committer = new Thread(this::commitLoop, "journal-committer");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    // Append one record and block until its group has been fsynced
+    long append(String record) throws IOException {
+        long seq;
+        synchronized (this) {
+            pending.append(record).append('\n');
+            seq = ++appendedSeq;
+            notifyAll();
+
+            while (committedSeq < seq && commitError == null) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for journal commit", e);
+                }
+            }
+            if (commitError != null) {
+                throw commitError;
+            }
+        }
+        return seq;
+    }
+
+    // Sequence number of the last record appended since the last truncation
+    synchronized long lastSeq() {
+        return appendedSeq;
+    }
+
+    // Read every record currently on disk, in append order
+    List<String> readRecords() throws IOException {
+        if (!Files.exists(path)) {
+            return new ArrayList<>();
+        }
+        List<String> records = new ArrayList<>();
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            if (!line.isEmpty()) {
+                records.add(line);
+            }
+        }
+        return records;
+    }
+
+    // Drop all records if none arrived after checkpointedSeq, the last one the CSV files contain;
+    // false if records are still in flight or newer than the checkpoint
+    synchronized boolean truncateAt(long checkpointedSeq) throws IOException {
+        if (appendedSeq != checkpointedSeq) {
+            return false;
+        }
+        truncate();
+        return committedSeq == 0;
+    }
+
+    // Drop all records once the CSV files contain them; only called with nothing in flight
+    synchronized void truncate() throws IOException {
+        if (committedSeq != appendedSeq) {
+            return; // a group is still being written, try again at the next checkpoint
+        }
+        channel.truncate(0);
+        channel.force(true);
+        appendedSeq = 0;
+        committedSeq = 0;
+    }
+
+    private void commitLoop() {
+        while (true) {
+            String batch;
+            long batchSeq;
+            synchronized (this) {
+                while (pending.length() == 0) {
+                    try {
+                        wait(IDLE_WAIT_MS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                batch = pending.toString();
+                batchSeq = appendedSeq;
+                pending.setLength(0);
+            }
+
+            // Write and fsync outside the lock so new records can queue up for the next group
+            IOException error = null;
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(batch.getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                error = e;
+            }
+
+            synchronized (this) {
+                if (error != null) {
+                    commitError = error;
+                    System.err.println("Error writing journal: " + error.getMessage());
+                } else {
+                    committedSeq = batchSeq;
+                }
+                notifyAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.example.structures;
+
+import org.example.models.Customer;
+import org.example.models.TravelHistory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Index of the open rental of every rented car, keyed by carId
+ * Updated when a car is rented and returned, so a return finds its travel history and customer
+ * without walking every customer's history.
+ */
+public class ActiveRentalIndex {
+    private final Map<String, Rental> rentalsByCarId = new HashMap<>();
+
+    // An open rental and the customer who holds it
+    public static class Rental {
+        private final Customer customer;
+        private final TravelHistory history;
+
+        public Rental(Customer customer, TravelHistory history) {
+            this.customer = customer;
+            this.history = history;
+        }
+
+        public Customer getCustomer() {
+            return customer;
+        }
+
+        public TravelHistory getHistory() {
+            return history;
+        }
+    }
+
+    // Record a new rental of a car, replacing any stale rental still indexed for it
+    public synchronized void put(Customer customer, TravelHistory history) {
+        rentalsByCarId.put(history.getCarId(), new Rental(customer, history));
+    }
+
+    // Record a rental unless the car already has one; false if it was kept
+    public synchronized boolean putIfAbsent(Customer customer, TravelHistory history) {
+        return rentalsByCarId.putIfAbsent(history.getCarId(), new Rental(customer, history)) == null;
+    }
+
+    public synchronized Rental get(String carId) {
+        return rentalsByCarId.get(carId);
+    }
+
+    public synchronized Rental remove(String carId) {
+        return rentalsByCarId.remove(carId);
+    }
+
+    public synchronized int size() {
+        return rentalsByCarId.size();
+    }
+
+    public synchronized void clear() {
+        rentalsByCarId.clear();
+    }
+}
@@ -0,0 +1,314 @@
+package org.example.structures;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiPredicate;
+
+/**
+ * B+tree of byte[] keys to byte[] values stored in a PageFile, one node per page
+ * Keys are ordered as unsigned bytes. Leaves hold the values and are chained left to right for
+ * range scans; internal nodes hold separator keys. A get, put or delete reads one page per level
+ * and writes only the pages it changes.
+ * Deletes do not rebalance, so the pages of a shrinking tree are only given back by clear().
+ */
+public class BPlusTree {
+    public static final int MAX_KEY_BYTES = 256;
+    public static final int MAX_VALUE_BYTES = 1024;
+
+    private static final byte LEAF = 1;
+    private static final byte INTERNAL = 2;
+    private static final int NODE_HEADER = 7; // type, entry count, next leaf or leftmost child
+
+    private final PageFile pages;
+    private final int rootSlot;
+
+    // Node of the tree as read from its page
+    private static class Node {
+        final int page;
+        final boolean leaf;
+        final List<byte[]> keys = new ArrayList<>();
+        final List<byte[]> values = new ArrayList<>();    // leaf only
+        final List<Integer> children = new ArrayList<>(); // internal only, one more than keys
+        int next = PageFile.NO_PAGE;                      // leaf only
+
+        Node(int page, boolean leaf) {
+            this.page = page;
+            this.leaf = leaf;
+        }
+
+        int size() {
+            int size = NODE_HEADER;
+            for (int i = 0; i < keys.size(); i++) {
+                size += 2 + keys.get(i).length + (leaf ? 2 + values.get(i).length : 4);
+            }
+            return size;
+        }
+    }
+
+    // Result of an insert that split a node: the separator and the new right sibling
+    private static class Split {
+        final byte[] key;
+        final int rightPage;
+
+        Split(byte[] key, int rightPage) {
+            this.key = key;
+            this.rightPage = rightPage;
+        }
+    }
+
+    public BPlusTree(PageFile pages, int rootSlot) {
+        this.pages = pages;
+        this.rootSlot = rootSlot;
+    }
+
+    public synchronized byte[] get(byte[] key) throws IOException {
+        int page = pages.getRoot(rootSlot);
+        if (page == PageFile.NO_PAGE) {
+            return null;
+        }
+
+        Node node = readNode(page);
+        while (!node.leaf) {
+            node = readNode(node.children.get(childIndex(node, key)));
+        }
+        int index = search(node.keys, key);
+        return index >= 0 ? node.values.get(index) : null;
+    }
+
+    // Insert or replace
+    public synchronized void put(byte[] key, byte[] value) throws IOException {
+        if (key.length > MAX_KEY_BYTES || value.length > MAX_VALUE_BYTES) {
+            throw new IllegalArgumentException("Entry too large: key " + key.length + " bytes, value " + value.length + " bytes");
+        }
+
+        int root = pages.getRoot(rootSlot);
+        if (root == PageFile.NO_PAGE) {
+            Node leaf = new Node(pages.allocate(), true);
+            leaf.keys.add(key);
+            leaf.values.add(value);
+            writeNode(leaf);
+            pages.setRoot(rootSlot, leaf.page);
+            return;
+        }
+
+        Split split = insert(readNode(root), key, value);
+        if (split != null) {
+            // The root split, grow the tree by one level
+            Node newRoot = new Node(pages.allocate(), false);
+            newRoot.children.add(root);
+            newRoot.keys.add(split.key);
+            newRoot.children.add(split.rightPage);
+            writeNode(newRoot);
+            pages.setRoot(rootSlot, newRoot.page);
+        }
+    }
+
+    public synchronized boolean delete(byte[] key) throws IOException {
+        int page = pages.getRoot(rootSlot);
+        if (page == PageFile.NO_PAGE) {
+            return false;
+        }
+
+        Node node = readNode(page);
+        while (!node.leaf) {
+            node = readNode(node.children.get(childIndex(node, key)));
+        }
+        int index = search(node.keys, key);
+        if (index < 0) {
+            return false;
+        }
+        node.keys.remove(index);
+        node.values.remove(index);
+        writeNode(node);
+        return true;
+    }
+
+    // Visit entries in key order starting at the first key >= from, until the visitor returns false
+    public synchronized void scan(byte[] from, BiPredicate<byte[], byte[]> visitor) throws IOException {
+        int page = pages.getRoot(rootSlot);
+        if (page == PageFile.NO_PAGE) {
+            return;
+        }
+
+        Node node = readNode(page);
+        while (!node.leaf) {
+            node = readNode(node.children.get(childIndex(node, from)));
+        }
+
+        int index = search(node.keys, from);
+        index = index >= 0 ? index : -index - 1;
+        while (true) {
+            for (; index < node.keys.size(); index++) {
+                if (!visitor.test(node.keys.get(index), node.values.get(index))) {
+                    return;
+                }
+            }
+            if (node.next == PageFile.NO_PAGE) {
+                return;
+            }
+            node = readNode(node.next);
+            index = 0;
+        }
+    }
+
+    // Remove every entry and return all pages to the free-list
+    public synchronized void clear() throws IOException {
+        int root = pages.getRoot(rootSlot);
+        if (root != PageFile.NO_PAGE) {
+            pages.setRoot(rootSlot, PageFile.NO_PAGE);
+            freeSubtree(root);
+        }
+    }
+
+    private Split insert(Node node, byte[] key, byte[] value) throws IOException {
+        if (node.leaf) {
+            int index = search(node.keys, key);
+            if (index >= 0) {
+                node.values.set(index, value);
+            } else {
+                node.keys.add(-index - 1, key);
+                node.values.add(-index - 1, value);
+            }
+            return writeOrSplit(node);
+        }
+
+        int childIndex = childIndex(node, key);
+        Split split = insert(readNode(node.children.get(childIndex)), key, value);
+        if (split == null) {
+            return null;
+        }
+        node.keys.add(childIndex, split.key);
+        node.children.add(childIndex + 1, split.rightPage);
+        return writeOrSplit(node);
+    }
+
+    // Write the node back, splitting it in two by size if it no longer fits its page
+    private Split writeOrSplit(Node node) throws IOException {
+        if (node.size() <= PageFile.PAGE_SIZE) {
+            writeNode(node);
+            return null;
+        }
+
+        int middle = splitPoint(node);
+        Node right = new Node(pages.allocate(), node.leaf);
+        byte[] separator;
+        if (node.leaf) {
+            right.keys.addAll(node.keys.subList(middle, node.keys.size()));
+            right.values.addAll(node.values.subList(middle, node.values.size()));
+            node.keys.subList(middle, node.keys.size()).clear();
+            node.values.subList(middle, node.values.size()).clear();
+            right.next = node.next;
+            node.next = right.page;
+            separator = right.keys.get(0);
+        } else {
+            // The middle key moves up, its right child becomes the new node's leftmost child
+            separator = node.keys.get(middle);
+            right.keys.addAll(node.keys.subList(middle + 1, node.keys.size()));
+            right.children.addAll(node.children.subList(middle + 1, node.children.size()));
+            node.keys.subList(middle, node.keys.size()).clear();
+            node.children.subList(middle + 1, node.children.size()).clear();
+        }
+
+        writeNode(right);
+        writeNode(node);
+        return new Split(separator, right.page);
+    }
+
+    // Index of the first entry past half of the node's bytes, keeping both halves non-empty
+    private static int splitPoint(Node node) {
+        int half = node.size() / 2;
+        int size = NODE_HEADER;
+        for (int i = 0; i < node.keys.size(); i++) {
+            size += 2 + node.keys.get(i).length + (node.leaf ? 2 + node.values.get(i).length : 4);
+            if (size >= half) {
+                return Math.max(1, Math.min(i + 1, node.keys.size() - 1));
+            }
+        }
+        return node.keys.size() / 2;
+    }
+
+    // Child to descend into: keys equal to a separator live in its right subtree
+    private static int childIndex(Node node, byte[] key) {
+        int index = search(node.keys, key);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    private static int search(List<byte[]> keys, byte[] key) {
+        int low = 0;
+        int high = keys.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int cmp = Arrays.compareUnsigned(keys.get(middle), key);
+            if (cmp < 0) {
+                low = middle + 1;
+            } else if (cmp > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private void freeSubtree(int page) throws IOException {
+        Node node = readNode(page);
+        if (!node.leaf) {
+            for (int child : node.children) {
+                freeSubtree(child);
+            }
+        }
+        pages.free(page);
+    }
+
+    private Node readNode(int page) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(PageFile.PAGE_SIZE);
+        pages.read(page, buffer);
+
+        Node node = new Node(page, buffer.get() == LEAF);
+        int count = buffer.getShort() & 0xFFFF;
+        int link = buffer.getInt();
+        if (node.leaf) {
+            node.next = link;
+        } else {
+            node.children.add(link);
+        }
+
+        for (int i = 0; i < count; i++) {
+            byte[] key = new byte[buffer.getShort() & 0xFFFF];
+            buffer.get(key);
+            node.keys.add(key);
+            if (node.leaf) {
+                byte[] value = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(value);
+                node.values.add(value);
+            } else {
+                node.children.add(buffer.getInt());
+            }
+        }
+        return node;
+    }
+
+    private void writeNode(Node node) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(PageFile.PAGE_SIZE);
+        buffer.put(node.leaf ? LEAF : INTERNAL);
+        buffer.putShort((short) node.keys.size());
+        buffer.putInt(node.leaf ? node.next : node.children.get(0));
+
+        for (int i = 0; i < node.keys.size(); i++) {
+            byte[] key = node.keys.get(i);
+            buffer.putShort((short) key.length);
+            buffer.put(key);
+            if (node.leaf) {
+                byte[] value = node.values.get(i);
+                buffer.putShort((short) value.length);
+                buffer.put(value);
+            } else {
+                buffer.putInt(node.children.get(i + 1));
+            }
+        }
+        pages.write(node.page, buffer);
+    }
+}
@@ -0,0 +1,66 @@
+package org.example.structures;
+
+import org.example.models.Billing;
+
+import java.util.*;
+
+/**
+ * Indexes over the billing records: the unpaid billings of each car and all billings of each customer.
+ * A car's unpaid billings are kept oldest first, so the bill settled on return is the same one a scan
+ * of the billing list would find. A customer's billings are kept in the order they were added.
+ */
+public class BillingIndex {
+    private final Map<String, ArrayDeque<Billing>> unpaidByCarId = new HashMap<>();
+    private final Map<String, ArrayList<Billing>> byCustomerId = new HashMap<>();
+
+    public synchronized void add(Billing billing) {
+        byCustomerId.computeIfAbsent(billing.getCustomerId(), c -> new ArrayList<>()).add(billing);
+        if (!billing.isPaid()) {
+            unpaidByCarId.computeIfAbsent(billing.getCarId(), c -> new ArrayDeque<>()).addLast(billing);
+        }
+    }
+
+    // The oldest unpaid billing of a car, or null
+    public synchronized Billing getUnpaid(String carId) {
+        ArrayDeque<Billing> unpaid = unpaidByCarId.get(carId);
+        return unpaid != null ? unpaid.peekFirst() : null;
+    }
+
+    // Called once a billing has been marked as paid
+    public synchronized void paid(Billing billing) {
+        ArrayDeque<Billing> unpaid = unpaidByCarId.get(billing.getCarId());
+        if (unpaid != null && unpaid.remove(billing) && unpaid.isEmpty()) {
+            unpaidByCarId.remove(billing.getCarId());
+        }
+    }
+
+    public synchronized List<Billing> getByCustomer(String customerId) {
+        ArrayList<Billing> billings = byCustomerId.get(customerId);
+        return billings != null ? new ArrayList<>(billings) : new ArrayList<>();
+    }
+
+    // One page of a customer's billings, newest first; only the page itself is copied
+    public synchronized List<Billing> getByCustomerNewestFirst(String customerId, int offset, int limit) {
+        ArrayList<Billing> billings = byCustomerId.get(customerId);
+        if (billings == null || offset < 0 || limit <= 0 || offset >= billings.size()) {
+            return new ArrayList<>();
+        }
+        int from = billings.size() - 1 - offset;
+        int to = Math.max(-1, from - limit);
+        List<Billing> page = new ArrayList<>(from - to);
+        for (int i = from; i > to; i--) {
+            page.add(billings.get(i));
+        }
+        return page;
+    }
+
+    public synchronized int countByCustomer(String customerId) {
+        ArrayList<Billing> billings = byCustomerId.get(customerId);
+        return billings != null ? billings.size() : 0;
+    }
+
+    public synchronized void clear() {
+        unpaidByCarId.clear();
+        byCustomerId.clear();
+    }
+}
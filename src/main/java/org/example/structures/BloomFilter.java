@@ -0,0 +1,70 @@
+package org.example.structures;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Bloom filter over strings
+ * mightContain() never returns false for an added key; it returns true for a key that was never
+ * added with roughly the false positive rate the filter was sized for. Uses double hashing of
+ * two 64-bit FNV-1a style hashes to derive the bit positions.
+ */
+public class BloomFilter {
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashCount;
+    private final int capacity;
+    private int size;
+
+    // Sized for the expected number of keys at the given false positive rate
+    public BloomFilter(int expectedKeys, double falsePositiveRate) {
+        capacity = Math.max(1, expectedKeys);
+        long m = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        bitCount = Math.max(64, m);
+        bits = new long[(int) ((bitCount + 63) / 64)];
+        hashCount = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+    }
+
+    public void add(String key) {
+        long h1 = hash(key, 0xcbf29ce484222325L);
+        long h2 = hash(key, 0x84222325cbf29ce4L) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+        size++;
+    }
+
+    public boolean mightContain(String key) {
+        long h1 = hash(key, 0xcbf29ce484222325L);
+        long h2 = hash(key, 0x84222325cbf29ce4L) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // True once more keys were added than the filter was sized for and its error rate climbs
+    public boolean isOverCapacity() {
+        return size > capacity;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private static long hash(String key, long seed) {
+        long hash = seed;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        // Final mix so short keys spread over all bits
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,75 @@
+package org.example.structures;
+
+import java.util.Arrays;
+
+/**
+ * Growable bitmap over car ordinals, one bit per car
+ * Exposes its 64-bit words so several bitmaps can be intersected a word at a time without
+ * materialising the result. A summary with one bit per non-empty word lets an intersection skip
+ * to the next word its sparsest bitmap has cars in instead of walking every word.
+ */
+public class CarBitmap {
+    private long[] words = new long[1];
+    private long[] summary = new long[1];
+    private int cardinality;
+
+    public void set(int ordinal) {
+        int word = ordinal >>> 6;
+        if (word >= words.length) {
+            words = Arrays.copyOf(words, Math.max(word + 1, words.length * 2));
+            summary = Arrays.copyOf(summary, (words.length + 63) >>> 6);
+        }
+        long bit = 1L << ordinal;
+        if ((words[word] & bit) == 0) {
+            words[word] |= bit;
+            summary[word >>> 6] |= 1L << word;
+            cardinality++;
+        }
+    }
+
+    public void clear(int ordinal) {
+        int word = ordinal >>> 6;
+        long bit = 1L << ordinal;
+        if (word < words.length && (words[word] & bit) != 0) {
+            words[word] &= ~bit;
+            if (words[word] == 0) {
+                summary[word >>> 6] &= ~(1L << word);
+            }
+            cardinality--;
+        }
+    }
+
+    public boolean get(int ordinal) {
+        int word = ordinal >>> 6;
+        return word < words.length && (words[word] & (1L << ordinal)) != 0;
+    }
+
+    // The word holding ordinals [index * 64, index * 64 + 63]; zero past the end
+    public long word(int index) {
+        return index < words.length ? words[index] : 0L;
+    }
+
+    // Index of the first non-zero word at or after index, or -1 if there is none
+    public int nextWord(int index) {
+        int at = index >>> 6;
+        if (at >= summary.length) {
+            return -1;
+        }
+        long bits = summary[at] & (-1L << index);
+        while (bits == 0) {
+            if (++at == summary.length) {
+                return -1;
+            }
+            bits = summary[at];
+        }
+        return (at << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    public int cardinality() {
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return cardinality == 0;
+    }
+}
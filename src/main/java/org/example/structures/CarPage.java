@@ -0,0 +1,32 @@
+package org.example.structures;
+
+import org.example.models.Car;
+
+import java.util.List;
+
+/**
+ * One page of a car listing and the opaque cursor that continues it
+ * The cursor is null on the last page. A search page may hold fewer cars than asked for while
+ * its cursor is not null, when the search stopped at its scan limit; keep following the cursor.
+ */
+public class CarPage {
+    private final List<Car> cars;
+    private final String nextCursor;
+
+    public CarPage(List<Car> cars, String nextCursor) {
+        this.cars = cars;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Car> getCars() {
+        return cars;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+}
@@ -0,0 +1,610 @@
+package org.example.structures;
+
+import org.example.models.Car;
+import org.example.models.Money;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Registry of all cars with a primary hash index on carId and bitmap indexes by availability,
+ * category and hourly rate band. Every registered car gets a dense ordinal in registration order
+ * and reports changes to its indexed fields back to the registry, which moves its bit between
+ * bitmaps using the keys it was last indexed under. Listings are {@link View}s that intersect
+ * the bitmaps a word at a time while iterating, so they keep the fleet's original order and never
+ * copy it. Available cars are also kept per category in ordered search indexes by hourly rate and,
+ * per rate band, by model, which {@link #search} merges to produce cursor-paged results. The whole
+ * fleet is kept in a model-ordered catalogue that can be listed without taking the registry's lock.
+ */
+public class CarRegistry implements Car.ChangeListener {
+    // Lower bounds in cents of the hourly rate bands after the first, which starts at zero
+    private static final long[] RATE_BAND_BOUNDS = {2500, 5000, 7500, 10000, 15000, 20000, 30000, 50000};
+    // Most index entries one search call looks at, so a narrow rate range in model order stays cheap
+    private static final int SEARCH_SCAN_LIMIT = 2048;
+
+    // Written under the registry's lock, read without it, so looking a car up never waits
+    private final Map<String, Car> byId = new ConcurrentHashMap<>();
+    private final List<Car> byOrdinal = new ArrayList<>();
+    private final CarBitmap registered = new CarBitmap();
+    private final CarBitmap available = new CarBitmap();
+    private final Map<String, CarBitmap> byCategory = new HashMap<>();
+    private final CarBitmap[] byRateBand = new CarBitmap[RATE_BAND_BOUNDS.length + 1];
+    // Available cars of each category in rate order, and in model order split by rate band
+    private final Map<String, TreeMap<SearchKey, Car>> availableByRate = new HashMap<>();
+    private final Map<String, List<TreeMap<SearchKey, Car>>> availableByModel = new HashMap<>();
+    // Every car in (lower-cased model, carId) order; written under the registry's lock, read without it
+    private final ConcurrentSkipListMap<CatalogueKey, Car> catalogue = new ConcurrentSkipListMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    // Keys each car is currently indexed under
+    private final Map<Car, IndexedKeys> indexed = new IdentityHashMap<>();
+    private int availableCount;
+
+    private final View all = new View(null, null, -1);
+    private final View availableView = new View(Boolean.TRUE, null, -1);
+    private final View rentedView = new View(Boolean.FALSE, null, -1);
+
+    // Told, under the registry's lock, after a car is added or re-indexed and after it is removed
+    public interface Listener {
+        void carIndexed(Car car);
+
+        void carRemoved(Car car);
+    }
+
+    public enum SortOrder {
+        RATE, MODEL
+    }
+
+    // Position of an available car in the search indexes; the ordinal breaks ties
+    private static final class SearchKey {
+        final long rateCents;
+        final String model;
+        final int ordinal;
+
+        SearchKey(long rateCents, String model, int ordinal) {
+            this.rateCents = rateCents;
+            this.model = model;
+            this.ordinal = ordinal;
+        }
+    }
+
+    private static final Comparator<SearchKey> BY_RATE =
+            Comparator.<SearchKey>comparingLong(k -> k.rateCents).thenComparingInt(k -> k.ordinal);
+    private static final Comparator<SearchKey> BY_MODEL =
+            Comparator.<SearchKey, String>comparing(k -> k.model).thenComparingInt(k -> k.ordinal);
+
+    private static final class CatalogueKey implements Comparable<CatalogueKey> {
+        final String model;
+        final String carId;
+
+        CatalogueKey(String model, String carId) {
+            this.model = model;
+            this.carId = carId;
+        }
+
+        @Override
+        public int compareTo(CatalogueKey other) {
+            int byModel = model.compareTo(other.model);
+            return byModel != 0 ? byModel : carId.compareTo(other.carId);
+        }
+    }
+
+    private static class IndexedKeys {
+        final int ordinal;
+        String carId;
+        String category;
+        boolean available;
+        int rateBand;
+        SearchKey searchKey; // null while the car is rented
+        CatalogueKey catalogueKey;
+
+        IndexedKeys(int ordinal) {
+            this.ordinal = ordinal;
+        }
+    }
+
+    public CarRegistry() {
+        for (int band = 0; band < byRateBand.length; band++) {
+            byRateBand[band] = new CarBitmap();
+        }
+    }
+
+    // Register a car; false if another car already has its id
+    public synchronized boolean add(Car car) {
+        if (byId.containsKey(car.getCarId())) {
+            return false;
+        }
+        IndexedKeys keys = new IndexedKeys(byOrdinal.size());
+        byOrdinal.add(car);
+        registered.set(keys.ordinal);
+        indexed.put(car, keys);
+        index(car, keys);
+        byId.put(keys.carId, car);
+        car.setChangeListener(this);
+        for (Listener listener : listeners) {
+            listener.carIndexed(car);
+        }
+        return true;
+    }
+
+    // The ordinal of a removed car is not reused
+    public synchronized Car remove(String carId) {
+        Car car = byId.get(carId);
+        if (car != null) {
+            IndexedKeys keys = indexed.remove(car);
+            unindex(car, keys);
+            byId.remove(keys.carId, car);
+            registered.clear(keys.ordinal);
+            byOrdinal.set(keys.ordinal, null);
+            car.setChangeListener(null);
+            for (Listener listener : listeners) {
+                listener.carRemoved(car);
+            }
+        }
+        return car;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    // Takes no lock, so holding and renting cars don't queue behind searches and re-indexing
+    public Car get(String carId) {
+        return byId.get(carId);
+    }
+
+    public boolean contains(String carId) {
+        return byId.containsKey(carId);
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    public View getAll() {
+        return all;
+    }
+
+    public View getAvailable() {
+        return availableView;
+    }
+
+    public View getRented() {
+        return rentedView;
+    }
+
+    public synchronized int countAvailable() {
+        return availableCount;
+    }
+
+    // Live, unmodifiable view of every car ordered by model then carId; iterating it takes no lock
+    public Collection<Car> getCatalogue() {
+        return Collections.unmodifiableCollection(catalogue.values());
+    }
+
+    // One page of the catalogue in model order, continued from the cursor of the previous page
+    public CarPage listByModel(String cursor, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        NavigableMap<CatalogueKey, Car> rest = cursor != null ? catalogue.tailMap(decodeCatalogueCursor(cursor), false) : catalogue;
+        List<Car> page = new ArrayList<>(pageSize);
+        CatalogueKey last = null;
+        for (Map.Entry<CatalogueKey, Car> entry : rest.entrySet()) {
+            if (page.size() == pageSize) {
+                return new CarPage(page, encodeCatalogueCursor(last));
+            }
+            page.add(entry.getValue());
+            last = entry.getKey();
+        }
+        return new CarPage(page, null);
+    }
+
+    public View getByCategory(String category) {
+        return all.inCategory(category);
+    }
+
+    // Categories with at least one car
+    public synchronized Set<String> getCategories() {
+        return new TreeSet<>(byCategory.keySet());
+    }
+
+    // Re-index a car after one of its indexed fields changed
+    @Override
+    public synchronized void carChanged(Car car) {
+        IndexedKeys keys = indexed.get(car);
+        if (keys == null) {
+            return;
+        }
+        unindex(car, keys);
+        // Only a new id touches the id map, so lookups never miss a car whose other fields change
+        if (!car.getCarId().equals(keys.carId)) {
+            if (byId.containsKey(car.getCarId())) {
+                // Renamed onto an id that is already taken: keep the car under its old id
+                System.err.println("Car ID " + car.getCarId() + " already exists, keeping " + keys.carId);
+                car.setChangeListener(null);
+                car.setCarId(keys.carId);
+                car.setChangeListener(this);
+            } else {
+                byId.remove(keys.carId, car);
+                byId.put(car.getCarId(), car);
+            }
+        }
+        index(car, keys);
+        for (Listener listener : listeners) {
+            listener.carIndexed(car);
+        }
+    }
+
+    private void index(Car car, IndexedKeys keys) {
+        keys.carId = car.getCarId();
+        keys.category = car.getCategory();
+        keys.available = car.isAvailable();
+        keys.rateBand = rateBand(car.getHourlyRate().getCents());
+
+        byCategory.computeIfAbsent(keys.category, c -> new CarBitmap()).set(keys.ordinal);
+        byRateBand[keys.rateBand].set(keys.ordinal);
+        keys.catalogueKey = new CatalogueKey(car.getModel().toLowerCase(Locale.ROOT), keys.carId);
+        catalogue.put(keys.catalogueKey, car);
+        if (keys.available) {
+            available.set(keys.ordinal);
+            availableCount++;
+            keys.searchKey = new SearchKey(car.getHourlyRate().getCents(), car.getModel().toLowerCase(Locale.ROOT), keys.ordinal);
+            availableByRate.computeIfAbsent(keys.category, c -> new TreeMap<>(BY_RATE)).put(keys.searchKey, car);
+            availableByModel.computeIfAbsent(keys.category, c -> newModelBands()).get(keys.rateBand).put(keys.searchKey, car);
+        }
+    }
+
+    private void unindex(Car car, IndexedKeys keys) {
+        CarBitmap categoryCars = byCategory.get(keys.category);
+        if (categoryCars != null) {
+            categoryCars.clear(keys.ordinal);
+            if (categoryCars.isEmpty()) {
+                byCategory.remove(keys.category);
+            }
+        }
+        byRateBand[keys.rateBand].clear(keys.ordinal);
+        catalogue.remove(keys.catalogueKey, car);
+        if (keys.available) {
+            available.clear(keys.ordinal);
+            availableCount--;
+            TreeMap<SearchKey, Car> byRate = availableByRate.get(keys.category);
+            if (byRate != null) {
+                byRate.remove(keys.searchKey);
+                if (byRate.isEmpty()) {
+                    availableByRate.remove(keys.category);
+                }
+            }
+            List<TreeMap<SearchKey, Car>> byModel = availableByModel.get(keys.category);
+            if (byModel != null) {
+                byModel.get(keys.rateBand).remove(keys.searchKey);
+                if (byModel.stream().allMatch(TreeMap::isEmpty)) {
+                    availableByModel.remove(keys.category);
+                }
+            }
+            keys.searchKey = null;
+        }
+    }
+
+    private static List<TreeMap<SearchKey, Car>> newModelBands() {
+        List<TreeMap<SearchKey, Car>> bands = new ArrayList<>(RATE_BAND_BOUNDS.length + 1);
+        for (int band = 0; band <= RATE_BAND_BOUNDS.length; band++) {
+            bands.add(new TreeMap<>(BY_MODEL));
+        }
+        return bands;
+    }
+
+    /**
+     * One page of the available cars in the given categories (all when null) whose hourly rate lies in
+     * [minRateCents, maxRateCents], sorted by rate or by model and continued from a cursor of the previous
+     * page. The categories' indexes are merged, so a rate-ordered page costs O(categories * log n + pageSize
+     * * log categories) whatever the fleet size. In model order only the rate bands overlapping the range
+     * are merged, and cars in the two edge bands are checked against it one by one.
+     * The cursor is null once no matching car is left. A call looks at no more than a fixed number of
+     * index entries; if it stops there, the page can be short or even empty and its cursor continues
+     * the search after the cars it looked at.
+     */
+    public synchronized CarPage search(Collection<String> categories, long minRateCents, long maxRateCents,
+                                       SortOrder order, String cursor, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        Comparator<SearchKey> comparator = order == SortOrder.RATE ? BY_RATE : BY_MODEL;
+        SearchKey after = cursor != null ? decodeCursor(cursor, order) : null;
+
+        // Merge the matching ranges of the categories' indexes, smallest current key first
+        PriorityQueue<MergeSource> sources = new PriorityQueue<>((a, b) -> comparator.compare(a.current.getKey(), b.current.getKey()));
+        if (categories == null) {
+            categories = order == SortOrder.RATE ? availableByRate.keySet() : availableByModel.keySet();
+        }
+        for (String category : categories) {
+            if (order == SortOrder.RATE) {
+                NavigableMap<SearchKey, Car> range = availableByRate.get(category);
+                if (range != null) {
+                    addSource(sources, range.subMap(new SearchKey(minRateCents, "", Integer.MIN_VALUE), true,
+                            new SearchKey(maxRateCents, "", Integer.MAX_VALUE), true), after);
+                }
+            } else {
+                List<TreeMap<SearchKey, Car>> bands = availableByModel.get(category);
+                if (bands != null && minRateCents <= maxRateCents) {
+                    for (int band = rateBand(minRateCents); band <= rateBand(maxRateCents); band++) {
+                        addSource(sources, bands.get(band), after);
+                    }
+                }
+            }
+        }
+
+        // Stop before a match that does not fit the page, so a cursor is only handed out while one is left
+        List<Car> page = new ArrayList<>(pageSize);
+        SearchKey last = null;
+        int scanLimit = Math.max(SEARCH_SCAN_LIMIT, pageSize * 2);
+        for (int scanned = 0; scanned < scanLimit && !sources.isEmpty(); scanned++) {
+            MergeSource source = sources.peek();
+            SearchKey key = source.current.getKey();
+            boolean matches = key.rateCents >= minRateCents && key.rateCents <= maxRateCents;
+            if (matches && page.size() == pageSize) {
+                break;
+            }
+            sources.poll();
+            if (matches) {
+                page.add(source.current.getValue());
+            }
+            last = key;
+            if (source.advance()) {
+                sources.add(source);
+            }
+        }
+        return new CarPage(page, sources.isEmpty() ? null : encodeCursor(order, last));
+    }
+
+    private static void addSource(PriorityQueue<MergeSource> sources, NavigableMap<SearchKey, Car> range, SearchKey after) {
+        if (after != null) {
+            range = range.tailMap(after, false);
+        }
+        MergeSource source = new MergeSource(range.entrySet().iterator());
+        if (source.advance()) {
+            sources.add(source);
+        }
+    }
+
+    private static final class MergeSource {
+        final Iterator<Map.Entry<SearchKey, Car>> entries;
+        Map.Entry<SearchKey, Car> current;
+
+        MergeSource(Iterator<Map.Entry<SearchKey, Car>> entries) {
+            this.entries = entries;
+        }
+
+        boolean advance() {
+            current = entries.hasNext() ? entries.next() : null;
+            return current != null;
+        }
+    }
+
+    // The cursor names the sort order and the last key returned, so it stays valid while cars change
+    private static String encodeCursor(SortOrder order, SearchKey key) {
+        String cursor = order.name() + "\n" + key.rateCents + "\n" + key.ordinal + "\n" + key.model;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String encodeCatalogueCursor(CatalogueKey key) {
+        String cursor = key.carId + "\n" + key.model;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static CatalogueKey decodeCatalogueCursor(String cursor) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\n", 2);
+            if (parts.length == 2) {
+                return new CatalogueKey(parts[1], parts[0]);
+            }
+        } catch (IllegalArgumentException e) {
+            // Not base64; reported below
+        }
+        throw new IllegalArgumentException("Invalid cursor: " + cursor);
+    }
+
+    private static SearchKey decodeCursor(String cursor, SortOrder order) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\n", 4);
+            if (parts.length == 4 && parts[0].equals(order.name())) {
+                return new SearchKey(Long.parseLong(parts[1]), parts[3], Integer.parseInt(parts[2]));
+            }
+        } catch (IllegalArgumentException e) {
+            // Not base64 or not a number; reported below
+        }
+        throw new IllegalArgumentException("Invalid cursor: " + cursor);
+    }
+
+    private static int rateBand(long cents) {
+        int band = 0;
+        while (band < RATE_BAND_BOUNDS.length && cents >= RATE_BAND_BOUNDS[band]) {
+            band++;
+        }
+        return band;
+    }
+
+    // Ordinals in word index that match the view; cars in the band holding the rate limit are checked one by one
+    private long matchingWord(View view, CarBitmap category, int index) {
+        long word = registered.word(index);
+        if (view.available != null) {
+            word &= view.available ? available.word(index) : ~available.word(index);
+        }
+        if (view.category != null) {
+            word &= category != null ? category.word(index) : 0L;
+        }
+        if (view.maxRateCents >= 0 && word != 0) {
+            int limitBand = rateBand(view.maxRateCents);
+            long belowLimit = 0;
+            for (int band = 0; band < limitBand; band++) {
+                belowLimit |= byRateBand[band].word(index);
+            }
+            long inLimitBand = word & byRateBand[limitBand].word(index);
+            word &= belowLimit;
+            while (inLimitBand != 0) {
+                int bit = Long.numberOfTrailingZeros(inLimitBand);
+                if (byOrdinal.get((index << 6) + bit).getHourlyRate().getCents() <= view.maxRateCents) {
+                    word |= 1L << bit;
+                }
+                inLimitBand &= inLimitBand - 1;
+            }
+        }
+        return word;
+    }
+
+    // Next word index at or after index that can hold a match, or -1. Only the words of the
+    // sparsest bitmap every match must be in are visited, so narrow views skip the rest of the fleet
+    private int nextCandidateWord(View view, CarBitmap category, int index) {
+        CarBitmap driving = registered;
+        if (view.category != null) {
+            if (category == null) {
+                return -1;
+            }
+            driving = category;
+        }
+        if (Boolean.TRUE.equals(view.available) && available.cardinality() < driving.cardinality()) {
+            driving = available;
+        }
+        return driving.nextWord(index);
+    }
+
+    // First ordinal at or after from that matches the view, or -1
+    private int nextMatch(View view, int from) {
+        CarBitmap category = view.category != null ? byCategory.get(view.category) : null;
+        for (int index = nextCandidateWord(view, category, from >>> 6); index >= 0;
+             index = nextCandidateWord(view, category, index + 1)) {
+            long word = matchingWord(view, category, index);
+            if (index == from >>> 6) {
+                word &= -1L << from;
+            }
+            if (word != 0) {
+                return (index << 6) + Long.numberOfTrailingZeros(word);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Live, reusable listing of the cars matching an availability, category and rate filter.
+     * Iteration reflects the registry as it changes; it takes the registry's lock once per 64
+     * ordinals, so a car changed mid-iteration is seen either before or after the change.
+     */
+    public final class View implements Iterable<Car> {
+        private final Boolean available;
+        private final String category;
+        private final long maxRateCents;
+
+        private View(Boolean available, String category, long maxRateCents) {
+            this.available = available;
+            this.category = category;
+            this.maxRateCents = maxRateCents;
+        }
+
+        // Narrow to one category
+        public View inCategory(String category) {
+            return new View(available, category, maxRateCents);
+        }
+
+        // Narrow to cars whose hourly rate is at most maxRate
+        public View withMaxRate(Money maxRate) {
+            return new View(available, category, maxRate.getCents());
+        }
+
+        public int size() {
+            synchronized (CarRegistry.this) {
+                if (category == null && maxRateCents < 0) {
+                    return available == null ? byId.size() : available ? availableCount : byId.size() - availableCount;
+                }
+                CarBitmap categoryCars = category != null ? byCategory.get(category) : null;
+                int count = 0;
+                for (int index = nextCandidateWord(this, categoryCars, 0); index >= 0;
+                     index = nextCandidateWord(this, categoryCars, index + 1)) {
+                    count += Long.bitCount(matchingWord(this, categoryCars, index));
+                }
+                return count;
+            }
+        }
+
+        public boolean isEmpty() {
+            synchronized (CarRegistry.this) {
+                return nextMatch(this, 0) < 0;
+            }
+        }
+
+        // The car at a position of the listing, or null past its end
+        public Car get(int position) {
+            if (position < 0) {
+                return null;
+            }
+            synchronized (CarRegistry.this) {
+                CarBitmap categoryCars = category != null ? byCategory.get(category) : null;
+                for (int index = nextCandidateWord(this, categoryCars, 0); index >= 0;
+                     index = nextCandidateWord(this, categoryCars, index + 1)) {
+                    long word = matchingWord(this, categoryCars, index);
+                    int count = Long.bitCount(word);
+                    if (position < count) {
+                        for (int i = 0; i < position; i++) {
+                            word &= word - 1;
+                        }
+                        return byOrdinal.get((index << 6) + Long.numberOfTrailingZeros(word));
+                    }
+                    position -= count;
+                }
+                return null;
+            }
+        }
+
+        // Cars are fetched a word (64 ordinals) at a time under the lock and handed out from a buffer
+        @Override
+        public Iterator<Car> iterator() {
+            return new Iterator<>() {
+                private final Car[] buffer = new Car[64];
+                private int buffered;
+                private int position;
+                private int nextWord;
+
+                @Override
+                public boolean hasNext() {
+                    while (position == buffered) {
+                        if (!fill()) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+
+                @Override
+                public Car next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    Car car = buffer[position];
+                    buffer[position++] = null;
+                    return car;
+                }
+
+                // Buffer the matches of the next word that can have any; false once past the last one
+                private boolean fill() {
+                    synchronized (CarRegistry.this) {
+                        CarBitmap categoryCars = category != null ? byCategory.get(category) : null;
+                        int index = nextCandidateWord(View.this, categoryCars, nextWord);
+                        if (index < 0) {
+                            return false;
+                        }
+                        buffered = 0;
+                        position = 0;
+                        long word = matchingWord(View.this, categoryCars, index);
+                        while (word != 0) {
+                            buffer[buffered++] = byOrdinal.get((index << 6) + Long.numberOfTrailingZeros(word));
+                            word &= word - 1;
+                        }
+                        nextWord = index + 1;
+                        return true;
+                    }
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package org.example.structures;
+
+import org.example.models.Car;
+
+import java.util.*;
+import java.util.function.ToIntFunction;
+
+/**
+ * Type-ahead index over the words of each car's model and category
+ * Words are lower-cased and kept in a trie, each word holding the sorted ordinals of the cars that
+ * contain it. Every query word is matched as a prefix, so "toy cor" finds "Toyota Corolla".
+ * Results are ranked available first, then by popularity, then by insertion order. All cars are
+ * also kept in that rank order, so a query with many matches walks the ranking until it has
+ * enough results, while a query with few matches ranks just those matches.
+ */
+public class CarSearchIndex implements CarRegistry.Listener {
+    private final ToIntFunction<String> popularity;
+    private final TrieNode root = new TrieNode();
+    private final Map<Car, Entry> entries = new IdentityHashMap<>();
+    private final List<Entry> byOrdinal = new ArrayList<>();
+    private final TreeSet<Entry> ranked = new TreeSet<>(CarSearchIndex::compareRank);
+
+    // popularity maps a carId to a score, higher ranks first
+    public CarSearchIndex(ToIntFunction<String> popularity) {
+        this.popularity = popularity;
+    }
+
+    private static final class Entry {
+        final Car car;
+        final int ordinal;
+        String[] words = new String[0];
+        boolean available;
+        int popularity;
+
+        Entry(Car car, int ordinal) {
+            this.car = car;
+            this.ordinal = ordinal;
+        }
+
+        // True if one of the car's words starts with the term
+        boolean matches(String term) {
+            for (String word : words) {
+                if (word.startsWith(term)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class TrieNode {
+        final Map<Character, TrieNode> children = new HashMap<>();
+        Postings postings; // cars containing the word ending here, or null
+    }
+
+    // Sorted, growable list of ordinals
+    private static final class Postings {
+        int[] ordinals = new int[4];
+        int size;
+
+        void add(int ordinal) {
+            int at = size > 0 && ordinals[size - 1] < ordinal ? size : Arrays.binarySearch(ordinals, 0, size, ordinal);
+            if (at < 0) {
+                at = -at - 1;
+            } else if (at < size) {
+                return; // already present
+            }
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+            }
+            System.arraycopy(ordinals, at, ordinals, at + 1, size - at);
+            ordinals[at] = ordinal;
+            size++;
+        }
+
+        void remove(int ordinal) {
+            int at = Arrays.binarySearch(ordinals, 0, size, ordinal);
+            if (at >= 0) {
+                System.arraycopy(ordinals, at + 1, ordinals, at, size - at - 1);
+                size--;
+            }
+        }
+    }
+
+    private static int compareRank(Entry a, Entry b) {
+        if (a.available != b.available) {
+            return a.available ? -1 : 1;
+        }
+        if (a.popularity != b.popularity) {
+            return Integer.compare(b.popularity, a.popularity);
+        }
+        return Integer.compare(a.ordinal, b.ordinal);
+    }
+
+    // Add a car, or re-read its words, availability and popularity
+    @Override
+    public synchronized void carIndexed(Car car) {
+        Entry entry = entries.get(car);
+        if (entry == null) {
+            entry = new Entry(car, byOrdinal.size());
+            entries.put(car, entry);
+            byOrdinal.add(entry);
+        } else {
+            ranked.remove(entry);
+        }
+
+        String[] words = words(car.getModel() + " " + car.getCategory());
+        if (!Arrays.equals(words, entry.words)) {
+            for (String word : entry.words) {
+                TrieNode node = find(word);
+                if (node != null && node.postings != null) {
+                    node.postings.remove(entry.ordinal);
+                }
+            }
+            for (String word : words) {
+                TrieNode node = root;
+                for (int i = 0; i < word.length(); i++) {
+                    node = node.children.computeIfAbsent(word.charAt(i), c -> new TrieNode());
+                }
+                if (node.postings == null) {
+                    node.postings = new Postings();
+                }
+                node.postings.add(entry.ordinal);
+            }
+            entry.words = words;
+        }
+        entry.available = car.isAvailable();
+        entry.popularity = popularity.applyAsInt(car.getCarId());
+        ranked.add(entry);
+    }
+
+    @Override
+    public synchronized void carRemoved(Car car) {
+        Entry entry = entries.remove(car);
+        if (entry != null) {
+            ranked.remove(entry);
+            for (String word : entry.words) {
+                TrieNode node = find(word);
+                if (node != null && node.postings != null) {
+                    node.postings.remove(entry.ordinal);
+                }
+            }
+            byOrdinal.set(entry.ordinal, null);
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // The best ranked cars whose words start with every word of the query
+    public synchronized List<Car> search(String query, int limit) {
+        String[] terms = words(query);
+        List<Car> results = new ArrayList<>();
+        if (terms.length == 0 || limit <= 0 || entries.isEmpty()) {
+            return results;
+        }
+
+        // Postings of the words each term is a prefix of, narrowest term first
+        List<List<Postings>> termPostings = new ArrayList<>();
+        long[] counts = new long[terms.length];
+        for (String term : terms) {
+            List<Postings> postings = new ArrayList<>();
+            TrieNode node = find(term);
+            if (node != null) {
+                collect(node, postings);
+            }
+            if (count(postings) == 0) {
+                return results;
+            }
+            termPostings.add(postings);
+        }
+        termPostings.sort(Comparator.comparingLong(CarSearchIndex::count));
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = count(termPostings.get(i));
+        }
+
+        // Matches expected if the terms were independent. Walking the ranking costs about
+        // limit * size / matches steps and ranking the matches costs their count, so walk only when
+        // there are many; stop after as many steps as the narrowest term has cars, then rank instead
+        double expected = counts[0];
+        for (int i = 1; i < counts.length; i++) {
+            expected *= (double) counts[i] / entries.size();
+        }
+        if (expected * expected > (double) limit * entries.size()) {
+            long budget = counts[0];
+            for (Entry entry : ranked) {
+                if (budget-- == 0) {
+                    break;
+                }
+                if (matchesAll(entry, terms)) {
+                    results.add(entry.car);
+                    if (results.size() == limit) {
+                        return results;
+                    }
+                }
+            }
+            if (budget >= 0) {
+                return results; // fewer than limit matches in the whole ranking
+            }
+            results.clear();
+        }
+
+        // Intersect the terms' ordinals before touching any car
+        int[] matches = union(termPostings.get(0), (int) counts[0]);
+        int matchCount = matches.length;
+        for (int i = 1; i < termPostings.size() && matchCount > 0; i++) {
+            boolean[] keep = new boolean[matchCount];
+            for (Postings p : termPostings.get(i)) {
+                markPresent(matches, matchCount, p, keep);
+            }
+            int kept = 0;
+            for (int j = 0; j < matchCount; j++) {
+                if (keep[j]) {
+                    matches[kept++] = matches[j];
+                }
+            }
+            matchCount = kept;
+        }
+
+        PriorityQueue<Entry> best = new PriorityQueue<>(limit + 1, (a, b) -> compareRank(b, a));
+        for (int i = 0; i < matchCount; i++) {
+            best.add(byOrdinal.get(matches[i]));
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+        while (!best.isEmpty()) {
+            results.add(best.poll().car);
+        }
+        Collections.reverse(results);
+        return results;
+    }
+
+    private static long count(List<Postings> postings) {
+        long count = 0;
+        for (Postings p : postings) {
+            count += p.size;
+        }
+        return count;
+    }
+
+    // Sorted, distinct ordinals of several postings
+    private static int[] union(List<Postings> postings, int total) {
+        int[] ordinals = new int[total];
+        int count = 0;
+        for (Postings p : postings) {
+            System.arraycopy(p.ordinals, 0, ordinals, count, p.size);
+            count += p.size;
+        }
+        if (postings.size() == 1) {
+            return ordinals;
+        }
+        Arrays.sort(ordinals);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || ordinals[i] != ordinals[i - 1]) {
+                ordinals[distinct++] = ordinals[i];
+            }
+        }
+        return Arrays.copyOf(ordinals, distinct);
+    }
+
+    // Mark each of the sorted ordinals that is also in the postings: a merge when both are of similar
+    // size, otherwise galloping through the much longer postings
+    private static void markPresent(int[] ordinals, int count, Postings postings, boolean[] present) {
+        if (postings.size <= count * 8L) {
+            for (int i = 0, j = 0; i < count && j < postings.size; ) {
+                if (ordinals[i] < postings.ordinals[j]) {
+                    i++;
+                } else if (ordinals[i] > postings.ordinals[j]) {
+                    j++;
+                } else {
+                    present[i++] = true;
+                    j++;
+                }
+            }
+            return;
+        }
+        int from = 0;
+        for (int i = 0; i < count && from < postings.size; i++) {
+            int step = 1;
+            int to = from;
+            while (to < postings.size && postings.ordinals[to] < ordinals[i]) {
+                from = to + 1;
+                to = from + step;
+                step <<= 1;
+            }
+            int at = Arrays.binarySearch(postings.ordinals, from, Math.min(to + 1, postings.size), ordinals[i]);
+            if (at >= 0) {
+                present[i] = true;
+                from = at + 1;
+            } else {
+                from = -at - 1;
+            }
+        }
+    }
+
+    private static boolean matchesAll(Entry entry, String[] terms) {
+        for (String term : terms) {
+            if (!entry.matches(term)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private TrieNode find(String prefix) {
+        TrieNode node = root;
+        for (int i = 0; i < prefix.length() && node != null; i++) {
+            node = node.children.get(prefix.charAt(i));
+        }
+        return node;
+    }
+
+    // Postings of every word under a node
+    private static void collect(TrieNode node, List<Postings> postings) {
+        if (node.postings != null && node.postings.size > 0) {
+            postings.add(node.postings);
+        }
+        for (TrieNode child : node.children.values()) {
+            collect(child, postings);
+        }
+    }
+
+    // Distinct lower-cased words of letters and digits, in order of first appearance
+    private static String[] words(String text) {
+        LinkedHashSet<String> words = new LinkedHashSet<>();
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean wordChar = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                words.add(lower.substring(start, i));
+                start = -1;
+            }
+        }
+        return words.toArray(new String[0]);
+    }
+}
@@ -1,80 +1,306 @@
 package org.example.structures;
 
-import org.example.models.Car;
-import org.example.models.Customer;
-
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 
 /**
  * Cache implementation for frequently accessed car and customer data
- * Uses HashMap for O(1) lookups and LinkedList for LRU (Least Recently Used) functionality
+ * Keys are spread over a few segments, each a HashMap of nodes on a doubly linked list in
+ * LRU (Least Recently Used) order, so every operation is O(1). Each segment has its own lock and
+ * its own share of the capacity, so sessions working on keys in different segments don't wait for
+ * each other; the price is that eviction picks the least recently used key of one segment, not of
+ * the whole cache. Hits, misses, evictions and loads are counted, see {@link #getStats()}.
  */
 public class DataCache<K, V> {
+    // Smaller segments would make the per-segment LRU order too coarse
+    private static final int MIN_SEGMENT_CAPACITY = 16;
+    private static final int MAX_SEGMENTS = 16;
+
     private final int capacity;
-    private final Map<K, V> cache;
-    private final LinkedList<K> lruList;
+    private final Segment<K, V>[] segments;
+    private final int mask;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+
+    // Counters since the cache was created
+    public static class Stats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long loads;
+        private final long loadFailures;
+        private final long loadNanos;
+
+        Stats(long hits, long misses, long evictions, long loads, long loadFailures, long loadNanos) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.loads = loads;
+            this.loadFailures = loadFailures;
+            this.loadNanos = loadNanos;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        // Share of lookups that were hits, 0 before the first lookup
+        public double getHitRate() {
+            long lookups = hits + misses;
+            return lookups > 0 ? (double) hits / lookups : 0;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        // Calls to a loader, including those that failed
+        public long getLoads() {
+            return loads;
+        }
+
+        public long getLoadFailures() {
+            return loadFailures;
+        }
+
+        public long getTotalLoadNanos() {
+            return loadNanos;
+        }
+
+        public double getMeanLoadMillis() {
+            return loads > 0 ? loadNanos / 1e6 / loads : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hits=%d misses=%d hitRate=%.3f evictions=%d loads=%d loadFailures=%d meanLoadMs=%.3f",
+                    hits, misses, getHitRate(), evictions, loads, loadFailures, getMeanLoadMillis());
+        }
+    }
+
+    private static final class Node<K, V> {
+        final K key;
+        V value;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    // One share of the cache; every method is called holding the segment's lock
+    private static final class Segment<K, V> {
+        final int capacity;
+        final Map<K, Node<K, V>> nodes;
+        // head is the most recently used node, tail the next to be evicted
+        Node<K, V> head;
+        Node<K, V> tail;
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+            this.nodes = new HashMap<>(capacity * 4 / 3 + 1);
+        }
+
+        void moveToFront(Node<K, V> node) {
+            if (node != head) {
+                unlink(node);
+                linkFirst(node);
+            }
+        }
 
+        void linkFirst(Node<K, V> node) {
+            node.prev = null;
+            node.next = head;
+            if (head != null) {
+                head.prev = node;
+            } else {
+                tail = node;
+            }
+            head = node;
+        }
+
+        void unlink(Node<K, V> node) {
+            if (node.prev != null) {
+                node.prev.next = node.next;
+            } else {
+                head = node.next;
+            }
+            if (node.next != null) {
+                node.next.prev = node.prev;
+            } else {
+                tail = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+        }
+
+        void clear() {
+            nodes.clear();
+            head = null;
+            tail = null;
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
     public DataCache(int capacity) {
         this.capacity = capacity;
-        this.cache = new HashMap<>(capacity);
-        this.lruList = new LinkedList<>();
+        int count = 1;
+        while (count < MAX_SEGMENTS && capacity / (count * 2) >= MIN_SEGMENT_CAPACITY) {
+            count *= 2;
+        }
+        segments = new Segment[count];
+        // The segment capacities add up to exactly the cache's capacity
+        int base = Math.max(0, capacity) / count;
+        int extra = Math.max(0, capacity) % count;
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment<>(base + (i < extra ? 1 : 0));
+        }
+        mask = count - 1;
     }
 
     public V get(K key) {
-        if (!cache.containsKey(key)) {
-            return null;
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            Node<K, V> node = segment.nodes.get(key);
+            if (node == null) {
+                misses.increment();
+                return null;
+            }
+            segment.moveToFront(node);
+            hits.increment();
+            return node.value;
         }
-        // Update LRU list - move this key to the front (most recently used)
-        lruList.remove(key);
-        lruList.addFirst(key);
-        System.out.println("Returned through cached!");
-
-        return cache.get(key);
     }
 
-    public void put(K key, V value) {
-        if (cache.containsKey(key)) {
-            // Update existing entry
-            cache.put(key, value);
-            System.out.println("Cached!");
-
-            // Update LRU tracking
-            lruList.remove(key);
-            lruList.addFirst(key);
-            return;
+    // Read-through: the cached value, or else the loader's value, which is cached unless it is null.
+    // The loader runs outside the lock, so two sessions missing on the same key may both load it;
+    // the first value stored wins and is returned to both
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+
+        long start = System.nanoTime();
+        try {
+            value = loader.apply(key);
+        } catch (RuntimeException | Error e) {
+            loadFailures.increment();
+            throw e;
+        } finally {
+            loads.increment();
+            loadNanos.add(System.nanoTime() - start);
+        }
+        if (value == null) {
+            return null;
         }
 
-        // Check if cache is full
-        if (cache.size() >= capacity) {
-            // Remove least recently used item
-            K leastUsed = lruList.removeLast();
-            cache.remove(leastUsed);
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            Node<K, V> node = segment.nodes.get(key);
+            if (node != null) {
+                segment.moveToFront(node);
+                return node.value;
+            }
+            insert(segment, key, value);
         }
+        return value;
+    }
 
-        // Add new item
-        cache.put(key, value);
-        lruList.addFirst(key);
+    public void put(K key, V value) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            Node<K, V> node = segment.nodes.get(key);
+            if (node != null) {
+                // Update existing entry
+                node.value = value;
+                segment.moveToFront(node);
+                return;
+            }
+            insert(segment, key, value);
+        }
     }
 
     public void remove(K key) {
-        if (cache.containsKey(key)) {
-            cache.remove(key);
-            lruList.remove(key);
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            Node<K, V> node = segment.nodes.remove(key);
+            if (node != null) {
+                segment.unlink(node);
+            }
         }
     }
 
     public void clear() {
-        cache.clear();
-        lruList.clear();
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
     }
 
     public int size() {
-        return cache.size();
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.nodes.size();
+            }
+        }
+        return size;
     }
 
+    // Does not count as a use of the key
     public boolean containsKey(K key) {
-        return cache.containsKey(key);
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            return segment.nodes.containsKey(key);
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public Stats getStats() {
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), loads.sum(), loadFailures.sum(), loadNanos.sum());
+    }
+
+    // Called holding the segment's lock, for a key that is not in it
+    private void insert(Segment<K, V> segment, K key, V value) {
+        if (segment.capacity == 0) {
+            return;
+        }
+        // Check if the segment is full, and remove its least recently used item
+        if (segment.nodes.size() >= segment.capacity) {
+            Node<K, V> leastUsed = segment.tail;
+            segment.unlink(leastUsed);
+            segment.nodes.remove(leastUsed.key);
+            evictions.increment();
+        }
+        Node<K, V> node = new Node<>(key, value);
+        segment.nodes.put(key, node);
+        segment.linkFirst(node);
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        int hash = Objects.hashCode(key);
+        // Spread the high bits down, as StripedLock does
+        hash ^= (hash >>> 16);
+        hash *= 0x9E3779B1;
+        return segments[(hash ^ (hash >>> 15)) & mask];
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,133 @@
+package org.example.structures;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Single file of fixed-size pages with a free-list
+ * Page 0 is the header: magic, page size, page count, head of the free-list and a few
+ * root slots that trees stored in the file use to find their root page.
+ * Freed pages are chained through their first 4 bytes and reused before the file grows.
+ */
+public class PageFile implements Closeable {
+    public static final int PAGE_SIZE = 4096;
+    public static final int ROOT_SLOTS = 8;
+    public static final int NO_PAGE = 0; // page 0 is the header, so it never names a data page
+
+    private static final int MAGIC = 0x43525047; // "CRPG"
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_PAGE_SIZE = 4;
+    private static final int HEADER_PAGE_COUNT = 8;
+    private static final int HEADER_FREE_HEAD = 12;
+    private static final int HEADER_ROOTS = 16;
+
+    private final FileChannel channel;
+    private final ByteBuffer header = ByteBuffer.allocate(PAGE_SIZE);
+    private int pageCount;
+    private int freeHead;
+
+    public PageFile(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() == 0) {
+            pageCount = 1;
+            freeHead = NO_PAGE;
+            header.putInt(HEADER_MAGIC, MAGIC);
+            header.putInt(HEADER_PAGE_SIZE, PAGE_SIZE);
+            writeHeader();
+        } else {
+            readFully(header, 0);
+            if (header.getInt(HEADER_MAGIC) != MAGIC || header.getInt(HEADER_PAGE_SIZE) != PAGE_SIZE) {
+                channel.close();
+                throw new IOException("Not a page file: " + file);
+            }
+            pageCount = header.getInt(HEADER_PAGE_COUNT);
+            freeHead = header.getInt(HEADER_FREE_HEAD);
+        }
+    }
+
+    public synchronized int getRoot(int slot) {
+        return header.getInt(HEADER_ROOTS + slot * 4);
+    }
+
+    public synchronized void setRoot(int slot, int page) throws IOException {
+        header.putInt(HEADER_ROOTS + slot * 4, page);
+        writeHeader();
+    }
+
+    // A page from the free-list, or a new one at the end of the file
+    public synchronized int allocate() throws IOException {
+        int page;
+        if (freeHead != NO_PAGE) {
+            page = freeHead;
+            ByteBuffer link = ByteBuffer.allocate(4);
+            readFully(link, (long) page * PAGE_SIZE);
+            freeHead = link.getInt(0);
+        } else {
+            page = pageCount++;
+        }
+        writeHeader();
+        return page;
+    }
+
+    public synchronized void free(int page) throws IOException {
+        ByteBuffer link = ByteBuffer.allocate(PAGE_SIZE);
+        link.putInt(0, freeHead);
+        writeFully(link, (long) page * PAGE_SIZE);
+        freeHead = page;
+        writeHeader();
+    }
+
+    // Read a page into a PAGE_SIZE buffer
+    public void read(int page, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        readFully(buffer, (long) page * PAGE_SIZE);
+        buffer.flip();
+    }
+
+    public void write(int page, ByteBuffer buffer) throws IOException {
+        buffer.position(0).limit(PAGE_SIZE);
+        writeFully(buffer, (long) page * PAGE_SIZE);
+    }
+
+    public synchronized int getPageCount() {
+        return pageCount;
+    }
+
+    // Force every write so far to disk
+    public void sync() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void writeHeader() throws IOException {
+        header.putInt(HEADER_PAGE_COUNT, pageCount);
+        header.putInt(HEADER_FREE_HEAD, freeHead);
+        writeFully(header.duplicate().clear(), 0);
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                // Past the end of the file: the rest of the page is zeros
+                while (buffer.hasRemaining()) {
+                    buffer.put((byte) 0);
+                }
+            }
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+}
@@ -80,6 +80,12 @@ public class RentalGraph {
         return customers;
     }
 
+    // Number of rentals of a car
+    public int getRentalCount(String carId) {
+        List<RentalEdge> edges = carToCustomerEdges.get(carId);
+        return edges != null ? edges.size() : 0;
+    }
+
     // Find most popular cars (most frequently rented)
     public List<Map.Entry<String, Integer>> getMostPopularCars(int limit) {
         Map<String, Integer> carRentalCount = new HashMap<>();
@@ -0,0 +1,338 @@
+package org.example.structures;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+
+/**
+ * Index of rental periods for point-in-time and range queries
+ * Periods are kept in parallel arrays sorted by start, grouped into blocks of 32, with a tree of
+ * the latest end per block range on top. A query only descends into block ranges that start
+ * before its end and end after its start, so its cost follows the number of matches rather than
+ * the number of rentals. New rentals start now and are appended; a period added out of order marks the
+ * arrays for a re-sort before the next query. Times are epoch seconds in UTC, open rentals end
+ * at {@link #OPEN}.
+ */
+public class RentalIntervalIndex {
+    public static final long OPEN = Long.MAX_VALUE;
+    private static final int BLOCK = 32;
+
+    private long[] starts = new long[BLOCK];
+    private long[] ends = new long[BLOCK];
+    private int[] cars = new int[BLOCK];
+    private int[] customers = new int[BLOCK];
+    private int size;
+    private boolean sorted = true;
+
+    // Car and customer ids are stored once and referred to by number, each kind in its own
+    // dictionary so a customer's phone number is never taken for a car id
+    private final Names carNames = new Names();
+    private final Names customerNames = new Names();
+    // Positions of each car's periods, ascending
+    private final Map<Integer, int[]> positionsByCar = new HashMap<>();
+    private final Map<Integer, Integer> positionCounts = new HashMap<>();
+
+    // Latest end per block range; node 1 is the root and the leaves start at leafCount
+    private long[] maxEnds = {Long.MIN_VALUE, Long.MIN_VALUE};
+    private int leafCount = 1;
+
+    private static final class Names {
+        final List<String> names = new ArrayList<>();
+        final Map<String, Integer> ids = new HashMap<>();
+
+        int id(String name) {
+            Integer id = ids.get(name);
+            if (id == null) {
+                id = names.size();
+                names.add(name);
+                ids.put(name, id);
+            }
+            return id;
+        }
+    }
+
+    // A rental period as returned by queries
+    public static class Period {
+        private final String customerId;
+        private final String carId;
+        private final LocalDateTime rentTime;
+        private final LocalDateTime returnTime;
+
+        Period(String customerId, String carId, LocalDateTime rentTime, LocalDateTime returnTime) {
+            this.customerId = customerId;
+            this.carId = carId;
+            this.rentTime = rentTime;
+            this.returnTime = returnTime;
+        }
+
+        public String getCustomerId() {
+            return customerId;
+        }
+
+        public String getCarId() {
+            return carId;
+        }
+
+        public LocalDateTime getRentTime() {
+            return rentTime;
+        }
+
+        // null while the car is still out
+        public LocalDateTime getReturnTime() {
+            return returnTime;
+        }
+    }
+
+    public static long toEpochSecond(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    public synchronized void add(String customerId, String carId, LocalDateTime rentTime, LocalDateTime returnTime) {
+        long start = toEpochSecond(rentTime);
+        long end = returnTime != null ? toEpochSecond(returnTime) : OPEN;
+        if (size == starts.length) {
+            int capacity = size * 2;
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            cars = Arrays.copyOf(cars, capacity);
+            customers = Arrays.copyOf(customers, capacity);
+        }
+        if (size > 0 && start < starts[size - 1]) {
+            sorted = false;
+        }
+        starts[size] = start;
+        ends[size] = end;
+        cars[size] = carNames.id(carId);
+        customers[size] = customerNames.id(customerId);
+        size++;
+        if (sorted) {
+            addPosition(cars[size - 1], size - 1);
+            if ((size - 1) / BLOCK >= leafCount) {
+                rebuildTree();
+            } else {
+                raise((size - 1) / BLOCK, end);
+            }
+        }
+    }
+
+    // Record the return of a car's open rental that started at rentTime; false if there is none
+    public synchronized boolean close(String carId, LocalDateTime rentTime, LocalDateTime returnTime) {
+        ensureSorted();
+        Integer car = carNames.ids.get(carId);
+        if (car == null) {
+            return false;
+        }
+        long start = toEpochSecond(rentTime);
+        int[] positions = positionsByCar.get(car);
+        for (int i = positionCounts.getOrDefault(car, 0) - 1; i >= 0; i--) {
+            int position = positions[i];
+            if (starts[position] == start && ends[position] == OPEN) {
+                ends[position] = toEpochSecond(returnTime);
+                recompute(position / BLOCK);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Sort now instead of on the next query, e.g. after adding the loaded history in any order
+    public synchronized void sort() {
+        ensureSorted();
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // Number of rentals of each car
+    public synchronized Map<String, Integer> countsByCar() {
+        ensureSorted();
+        Map<String, Integer> counts = new HashMap<>();
+        for (Map.Entry<Integer, Integer> entry : positionCounts.entrySet()) {
+            counts.put(carNames.names.get(entry.getKey()), entry.getValue());
+        }
+        return counts;
+    }
+
+    // Rentals under way at the given time, in rent time order
+    public List<Period> at(LocalDateTime time) {
+        long second = toEpochSecond(time);
+        return overlapping(second, second + 1);
+    }
+
+    // Rentals that overlap [from, to), in rent time order
+    public List<Period> between(LocalDateTime from, LocalDateTime to) {
+        return overlapping(toEpochSecond(from), toEpochSecond(to));
+    }
+
+    // Rentals of one car that overlap [from, to), in rent time order
+    public synchronized List<Period> ofCarBetween(String carId, LocalDateTime from, LocalDateTime to) {
+        ensureSorted();
+        List<Period> periods = new ArrayList<>();
+        Integer car = carNames.ids.get(carId);
+        if (car == null) {
+            return periods;
+        }
+        long fromSecond = toEpochSecond(from);
+        long toSecond = toEpochSecond(to);
+        int[] positions = positionsByCar.get(car);
+        int count = positionCounts.getOrDefault(car, 0);
+        for (int i = 0; i < count && starts[positions[i]] < toSecond; i++) {
+            if (ends[positions[i]] > fromSecond) {
+                periods.add(period(positions[i]));
+            }
+        }
+        return periods;
+    }
+
+    private synchronized List<Period> overlapping(long from, long to) {
+        ensureSorted();
+        List<Period> periods = new ArrayList<>();
+        // Periods starting before to are a prefix of the arrays
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (starts[middle] < to) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        collect(1, 0, leafCount, low, from, periods);
+        return periods;
+    }
+
+    // Visit the blocks [firstBlock, firstBlock + blocks) under a node that hold periods ending after from
+    private void collect(int node, int firstBlock, int blocks, int limit, long from, List<Period> periods) {
+        if (maxEnds[node] <= from || firstBlock * BLOCK >= limit) {
+            return;
+        }
+        if (blocks == 1) {
+            for (int i = firstBlock * BLOCK; i < Math.min(limit, (firstBlock + 1) * BLOCK); i++) {
+                if (ends[i] > from) {
+                    periods.add(period(i));
+                }
+            }
+            return;
+        }
+        int half = blocks / 2;
+        collect(node * 2, firstBlock, half, limit, from, periods);
+        collect(node * 2 + 1, firstBlock + half, half, limit, from, periods);
+    }
+
+    private Period period(int position) {
+        return new Period(customerNames.names.get(customers[position]), carNames.names.get(cars[position]),
+                LocalDateTime.ofEpochSecond(starts[position], 0, ZoneOffset.UTC),
+                ends[position] == OPEN ? null : LocalDateTime.ofEpochSecond(ends[position], 0, ZoneOffset.UTC));
+    }
+
+    private void addPosition(int car, int position) {
+        int count = positionCounts.getOrDefault(car, 0);
+        int[] positions = positionsByCar.get(car);
+        if (positions == null || count == positions.length) {
+            positions = positions == null ? new int[4] : Arrays.copyOf(positions, count * 2);
+            positionsByCar.put(car, positions);
+        }
+        positions[count] = position;
+        positionCounts.put(car, count + 1);
+    }
+
+    private void raise(int block, long end) {
+        for (int node = leafCount + block; node >= 1 && maxEnds[node] < end; node /= 2) {
+            maxEnds[node] = end;
+        }
+    }
+
+    // Recompute a block's latest end after one of its periods ended earlier than before
+    private void recompute(int block) {
+        long latest = Long.MIN_VALUE;
+        for (int i = block * BLOCK; i < Math.min(size, (block + 1) * BLOCK); i++) {
+            latest = Math.max(latest, ends[i]);
+        }
+        int node = leafCount + block;
+        maxEnds[node] = latest;
+        for (node /= 2; node >= 1; node /= 2) {
+            maxEnds[node] = Math.max(maxEnds[node * 2], maxEnds[node * 2 + 1]);
+        }
+    }
+
+    private void rebuildTree() {
+        int blocks = Math.max(1, (size + BLOCK - 1) / BLOCK);
+        leafCount = Integer.highestOneBit(blocks);
+        if (leafCount < blocks) {
+            leafCount *= 2;
+        }
+        maxEnds = new long[leafCount * 2];
+        Arrays.fill(maxEnds, Long.MIN_VALUE);
+        for (int i = 0; i < size; i++) {
+            int node = leafCount + i / BLOCK;
+            maxEnds[node] = Math.max(maxEnds[node], ends[i]);
+        }
+        for (int node = leafCount - 1; node >= 1; node--) {
+            maxEnds[node] = Math.max(maxEnds[node * 2], maxEnds[node * 2 + 1]);
+        }
+    }
+
+    // Positions in start order; packs start and position into one long for a primitive sort when they fit
+    private int[] sortedOrder() {
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            min = Math.min(min, starts[i]);
+            max = Math.max(max, starts[i]);
+        }
+        int positionBits = 32 - Integer.numberOfLeadingZeros(size);
+        int[] order = new int[size];
+        if (max - min >= 0 && max - min < (1L << (63 - positionBits))) {
+            long[] keys = new long[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = ((starts[i] - min) << positionBits) | i;
+            }
+            Arrays.sort(keys);
+            for (int i = 0; i < size; i++) {
+                order[i] = (int) (keys[i] & ((1L << positionBits) - 1));
+            }
+        } else {
+            Integer[] boxed = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                boxed[i] = i;
+            }
+            Arrays.sort(boxed, Comparator.comparingLong(i -> starts[i]));
+            for (int i = 0; i < size; i++) {
+                order[i] = boxed[i];
+            }
+        }
+        return order;
+    }
+
+    // Sort by start after out-of-order adds, then rebuild the per-car positions and the tree
+    private void ensureSorted() {
+        if (sorted) {
+            return;
+        }
+        int[] order = sortedOrder();
+        long[] sortedStarts = new long[starts.length];
+        long[] sortedEnds = new long[ends.length];
+        int[] sortedCars = new int[cars.length];
+        int[] sortedCustomers = new int[customers.length];
+        for (int i = 0; i < size; i++) {
+            sortedStarts[i] = starts[order[i]];
+            sortedEnds[i] = ends[order[i]];
+            sortedCars[i] = cars[order[i]];
+            sortedCustomers[i] = customers[order[i]];
+        }
+        starts = sortedStarts;
+        ends = sortedEnds;
+        cars = sortedCars;
+        customers = sortedCustomers;
+
+        positionsByCar.clear();
+        positionCounts.clear();
+        for (int i = 0; i < size; i++) {
+            addPosition(cars[i], i);
+        }
+        rebuildTree();
+        sorted = true;
+    }
+}
@@ -0,0 +1,39 @@
+package org.example.structures;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of locks shared out by key
+ * Each key always maps to the same lock, so work on one key is serialized while work on keys
+ * that land on different stripes runs in parallel. Two keys may share a stripe; that only costs
+ * some waiting, never correctness. The locks are reentrant, so a holder may take its key's lock again.
+ */
+public class StripedLock {
+    private final ReentrantLock[] locks;
+    private final int mask;
+
+    // stripes is rounded up to a power of two
+    public StripedLock(int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, stripes));
+        if (size < stripes) {
+            size *= 2;
+        }
+        locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        mask = size - 1;
+    }
+
+    public ReentrantLock get(String key) {
+        int hash = key.hashCode();
+        // Spread the high bits down, ids that differ only at the end still land on different stripes
+        hash ^= (hash >>> 16);
+        hash *= 0x9E3779B1;
+        return locks[(hash ^ (hash >>> 15)) & mask];
+    }
+
+    public int size() {
+        return locks.length;
+    }
+}
@@ -0,0 +1,129 @@
+package org.example.structures;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timer wheel for many timeouts that are mostly cancelled or pushed back
+ * Time is cut into ticks and every entry sits in the bucket of the tick it is due in, so
+ * scheduling and cancelling are O(1) and advancing the clock only walks the buckets of the ticks
+ * that passed, never the whole set. A deadline more than one turn of the wheel away shares a bucket
+ * with nearer ones and is skipped until its own turn comes. Entries are linked into their bucket
+ * through fields of their own, so a scheduled timeout costs no allocation.
+ * Not thread safe; callers lock around it.
+ */
+public class TimerWheel<E extends TimerWheel.Entry> {
+    private final Entry[] buckets;
+    private final int mask;
+    private final long tickMillis;
+    // Last tick whose due entries have been taken out
+    private long currentTick;
+    private int size;
+
+    // Something that can be scheduled; an entry is in at most one bucket at a time
+    public abstract static class Entry {
+        private Entry prev;
+        private Entry next;
+        private long deadlineTick;
+        private boolean scheduled;
+
+        public boolean isScheduled() {
+            return scheduled;
+        }
+    }
+
+    // slots is rounded up to a power of two; ticks start counting at startMillis
+    public TimerWheel(int slots, long tickMillis, long startMillis) {
+        int size = Integer.highestOneBit(Math.max(1, slots));
+        if (size < slots) {
+            size *= 2;
+        }
+        this.buckets = new Entry[size];
+        this.mask = size - 1;
+        this.tickMillis = tickMillis;
+        this.currentTick = startMillis / tickMillis;
+    }
+
+    // Schedule an entry, or move it if it is already scheduled. It fires in the first advance()
+    // that reaches a tick ending at or after deadlineMillis, at the latest one tick late
+    public void schedule(E timeout, long deadlineMillis) {
+        Entry entry = timeout;
+        if (entry.scheduled) {
+            unlink(entry);
+        }
+        long tick = Math.max(currentTick + 1, (deadlineMillis + tickMillis - 1) / tickMillis);
+        entry.deadlineTick = tick;
+        link(entry, (int) (tick & mask));
+    }
+
+    // Returns false if the entry was not scheduled
+    public boolean cancel(E timeout) {
+        Entry entry = timeout;
+        if (!entry.scheduled) {
+            return false;
+        }
+        unlink(entry);
+        return true;
+    }
+
+    // Move the clock to nowMillis and hand every entry that is now due to expired, oldest tick
+    // first. The entries are unscheduled before expired sees them, so it may schedule them again
+    @SuppressWarnings("unchecked")
+    public int advance(long nowMillis, Consumer<? super E> expired) {
+        long nowTick = nowMillis / tickMillis;
+        if (nowTick <= currentTick) {
+            return 0;
+        }
+        // After a long pause one turn covers every bucket
+        long from = Math.max(currentTick + 1, nowTick - mask);
+        List<Entry> due = new ArrayList<>();
+        for (long tick = from; tick <= nowTick; tick++) {
+            Entry entry = buckets[(int) (tick & mask)];
+            while (entry != null) {
+                Entry next = entry.next;
+                if (entry.deadlineTick <= nowTick) {
+                    unlink(entry);
+                    due.add(entry);
+                }
+                entry = next;
+            }
+        }
+        currentTick = nowTick;
+        for (Entry entry : due) {
+            expired.accept((E) entry);
+        }
+        return due.size();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void link(Entry entry, int bucket) {
+        Entry head = buckets[bucket];
+        entry.prev = null;
+        entry.next = head;
+        if (head != null) {
+            head.prev = entry;
+        }
+        buckets[bucket] = entry;
+        entry.scheduled = true;
+        size++;
+    }
+
+    private void unlink(Entry entry) {
+        if (entry.prev != null) {
+            entry.prev.next = entry.next;
+        } else {
+            buckets[(int) (entry.deadlineTick & mask)] = entry.next;
+        }
+        if (entry.next != null) {
+            entry.next.prev = entry.prev;
+        }
+        entry.prev = null;
+        entry.next = null;
+        entry.scheduled = false;
+        size--;
+    }
+}